@@ -15,6 +15,9 @@ awk -F "," '{if ($6 == "null") {$6 = ""}; OFS = ","; print}' ${archive_name}/dat
 # For order table, replace o_carrier_id with -1 if it's null
 awk -F "," '{if ($5 == "null") {$5 = "-1"}; OFS=","; print}' ${archive_name}/data_files/order.csv > ${archive_name}/data_files/order-clean.csv
 
+# For undelivered_order, the orders that have no carrier
+awk -F "," '{if ($5 == "-1") {OFS=","; print $1, $2, $3, $4}}' ${archive_name}/data_files/order-clean.csv > ${archive_name}/data_files/undelivered-order.csv
+
 # For order_by_customer
 awk -F "," '{OFS=","; print $1, $2, $4, $3, $8, $5}' ${archive_name}/data_files/order-clean.csv > ${archive_name}/data_files/order-by-customer.csv
 
@@ -33,15 +33,14 @@ then
 fi
 
 mkdir -p $output_dir
-rm cmd*.sh
 
-currentId="$start_id"
-for i in {0..7}
+# All 8 clients of this node run in one JVM so that they share a single session and its connection pool.
+client_ids="$start_id"
+for i in {1..7}
 do
-	echo "java -jar Wholesale-Cassandra-1.0-SNAPSHOT-all.jar -t transaction -f xact_files_${workload_type}/${currentId}.txt -k ${keyspace} -l ${currentId}-out.log 1> ${output_dir}/${currentId}.out 2> ${output_dir}/${currentId}.err" > cmd${currentId}.sh
-	chmod u+x cmd${currentId}.sh
-	tmux new-session -d -s "client${currentId}" ./cmd${currentId}.sh
-	(( currentId += 5 ))
+	client_ids="${client_ids},$(( start_id + i * 5 ))"
 done
 
-
+echo "java -jar Wholesale-Cassandra-1.0-SNAPSHOT-all.jar -t clients -f xact_files_${workload_type} -r ${client_ids} -o ${output_dir} -k ${keyspace} -l ${start_id}-out.log 1> out/clients_${workload_type}-${start_id}.out 2> out/clients_${workload_type}-${start_id}.err" > cmd${start_id}.sh
+chmod u+x cmd${start_id}.sh
+tmux new-session -d -s "clients${start_id}" ./cmd${start_id}.sh
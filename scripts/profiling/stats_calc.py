@@ -71,6 +71,9 @@ if __name__ == "__main__":
 
             for i in range(11, len(lines), 8):
                 xact_name = lines[i]
+                # Response times of open loop runs follow the measurements of each transaction.
+                if xact_name not in client.dic:
+                    break
                 for offset in range(1,6):
                     client.dic[xact_name].append(re.findall("\d+", lines[i+offset])[0])
                 client.dic[xact_name].append(re.findall("\d+", lines[i+6])[1])
@@ -1,9 +1,11 @@
 package cs4224;
 
+import com.datastax.oss.driver.api.core.cql.Row;
 import com.google.inject.Inject;
 import com.opencsv.CSVWriter;
 import cs4224.dao.*;
 import cs4224.entities.*;
+import cs4224.utils.Money;
 
 import java.io.FileWriter;
 import java.io.IOException;
@@ -37,6 +39,18 @@ public class DBState {
         final Warehouse warehouse = Warehouse.map(this.warehouseDao.getState());
         final District district = District.map(this.districtDao.getState());
         final Customer customer = Customer.map(this.customerDao.getState());
+        // The counters hold what was added to the accumulated columns since the data was loaded.
+        final Row warehouseCounters = this.warehouseDao.getCounterState();
+        final Row districtCounters = this.districtDao.getCounterState();
+        final Row customerCounters = this.customerDao.getCounterState();
+        final BigDecimal warehouseYtd = warehouse.getAmountPaidYTD()
+                .add(Money.fromCents(warehouseCounters.getLong("W_YTD_CENTS")));
+        final BigDecimal districtYtd = district.getAmountPaidYTD()
+                .add(Money.fromCents(districtCounters.getLong("D_YTD_CENTS")));
+        final BigDecimal customerYtdPayment = new BigDecimal(customer.getPaymentYTD().toString())
+                .add(Money.fromCents(customerCounters.getLong("C_YTD_PAYMENT_CENTS")));
+        final long customerPaymentCount = customer.getNumPayments() + customerCounters.getLong("C_PAYMENT_CNT");
+        final long customerDeliveryCount = customer.getNumDeliveries() + customerCounters.getLong("C_DELIVERY_CNT");
         final Order order = Order.map(this.orderDao.getState());
 
         final List<Warehouse> warehouseList = this.warehouseDao.getAllWarehouseIDs().all().stream()
@@ -51,10 +65,14 @@ public class DBState {
             olTotal.setAmount(olTotal.getAmount().add(orderLine.getAmount()));
             olTotal.setQuantity(olTotal.getQuantity().add(orderLine.getQuantity()));
             final Stock stock = Stock.map(this.stockDao.getState(w.getId()));
+            final Row stockCounters = this.stockDao.getCounterState(w.getId());
             stockTotal.setQuantity(stockTotal.getQuantity().add(stock.getQuantity()));
-            stockTotal.setYtdQuantity(stockTotal.getYtdQuantity().add(stock.getYtdQuantity()));
-            stockTotal.setRemoteOrderCount(stockTotal.getRemoteOrderCount() + stock.getRemoteOrderCount());
-            stockTotal.setOrderCount(stockTotal.getOrderCount() + stock.getOrderCount());
+            stockTotal.setYtdQuantity(stockTotal.getYtdQuantity().add(stock.getYtdQuantity())
+                    .add(BigDecimal.valueOf(stockCounters.getLong("S_YTD"))));
+            stockTotal.setRemoteOrderCount(stockTotal.getRemoteOrderCount() + stock.getRemoteOrderCount()
+                    + Math.toIntExact(stockCounters.getLong("S_REMOTE_CNT")));
+            stockTotal.setOrderCount(stockTotal.getOrderCount() + stock.getOrderCount()
+                    + Math.toIntExact(stockCounters.getLong("S_ORDER_CNT")));
         });
 
         try {
@@ -62,13 +80,13 @@ public class DBState {
             CSVWriter writer = new CSVWriter(output, CSVWriter.DEFAULT_SEPARATOR, CSVWriter.NO_QUOTE_CHARACTER);
 
             writer.writeNext(new String[]{"Statistic", "Value"});
-            writer.writeNext(new String[]{"sum(W_YTD)", warehouse.getAmountPaidYTD().toString()});
-            writer.writeNext(new String[]{"sum(D_YTD)", district.getAmountPaidYTD().toString()});
+            writer.writeNext(new String[]{"sum(W_YTD)", warehouseYtd.toString()});
+            writer.writeNext(new String[]{"sum(D_YTD)", districtYtd.toString()});
             writer.writeNext(new String[]{"sum(D_NEXT_O_ID)", district.getNextOrderId().toString()});
             writer.writeNext(new String[]{"sum(C_BALANCE)", customer.getBalance().toString()});
-            writer.writeNext(new String[]{"sum(C_YTD_PAYMENT)", customer.getPaymentYTD().toString()});
-            writer.writeNext(new String[]{"sum(C_PAYMENT_CNT)", customer.getNumPayments().toString()});
-            writer.writeNext(new String[]{"sum(C_DELIVERY_CNT)", customer.getNumDeliveries().toString()});
+            writer.writeNext(new String[]{"sum(C_YTD_PAYMENT)", customerYtdPayment.toPlainString()});
+            writer.writeNext(new String[]{"sum(C_PAYMENT_CNT)", Long.toString(customerPaymentCount)});
+            writer.writeNext(new String[]{"sum(C_DELIVERY_CNT)", Long.toString(customerDeliveryCount)});
             writer.writeNext(new String[]{"max(O_ID)", order.getId().toString()});
             writer.writeNext(new String[]{"sum(O_OL_CNT)", order.getNumItems().toString()});
             writer.writeNext(new String[]{"sum(OL_AMOUNT)", olTotal.getAmount().toString()});
@@ -1,126 +1,325 @@
 package cs4224;
 
 import com.google.inject.Inject;
+import cs4224.output.BufferedOutputSink;
+import cs4224.output.OutputSink;
+import cs4224.requests.RequestPool;
+import cs4224.requests.TransactionRequest;
+import cs4224.requests.TransactionType;
+import cs4224.requests.XactFileReader;
 import cs4224.transactions.*;
+import cs4224.utils.ArrivalSchedule;
+import cs4224.utils.ConditionalUpdater;
+import cs4224.utils.IntervalReporter;
+import cs4224.utils.MeasurementWindow;
+import cs4224.utils.RunResult;
+import cs4224.utils.StatementMetrics;
 import cs4224.utils.Statistics;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Scanner;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class Driver {
-    public static long numQueries = 0;
+    // Number of transactions that may be waiting on each worker on top of the one being executed.
+    private static final int MAX_QUEUED_PER_WORKER = 4;
+    // Number of requests that may be read from the transaction file ahead of their execution.
+    private static final int READ_AHEAD = 1024;
+    // Intended start time of the transactions of a closed loop run, which start as soon as they can.
+    private static final long UNSCHEDULED = Long.MIN_VALUE;
+    private static final int DISTRICTS_PER_WAREHOUSE = 10;
 
-    private final NewOrderTransaction newOrderTransaction;
-    private final PaymentTransaction paymentTransaction;
-    private final DeliveryTransaction deliveryTransaction;
-    private final OrderStatusTransaction orderStatusTransaction;
-    private final StockLevelTransaction stockLevelTransaction;
-    private final PopularItemTransaction popularItemTransaction;
-    private final TopBalanceTransaction topBalanceTransaction;
-    private final RelatedCustomerTransaction relatedCustomerTransaction;
+    private final Map<TransactionType, BaseTransaction<? extends TransactionRequest>> transactions =
+            new EnumMap<>(TransactionType.class);
+    private final StatementMetrics statementMetrics;
+    private final ConditionalUpdater conditionalUpdater;
 
     @Inject
     public Driver(NewOrderTransaction newOrderTransaction, PaymentTransaction paymentTransaction,
                   DeliveryTransaction deliveryTransaction, OrderStatusTransaction orderStatusTransaction,
                   StockLevelTransaction stockLevelTransaction, PopularItemTransaction popularItemTransaction,
-                  TopBalanceTransaction topBalanceTransaction, RelatedCustomerTransaction relatedCustomerTransaction) {
-        this.newOrderTransaction = newOrderTransaction;
-        this.paymentTransaction = paymentTransaction;
-        this.deliveryTransaction = deliveryTransaction;
-        this.orderStatusTransaction = orderStatusTransaction;
-        this.stockLevelTransaction = stockLevelTransaction;
-        this.popularItemTransaction = popularItemTransaction;
-        this.topBalanceTransaction = topBalanceTransaction;
-        this.relatedCustomerTransaction = relatedCustomerTransaction;
+                  TopBalanceTransaction topBalanceTransaction, RelatedCustomerTransaction relatedCustomerTransaction,
+                  StatementMetrics statementMetrics, ConditionalUpdater conditionalUpdater) {
+        transactions.put(TransactionType.NEW_ORDER, newOrderTransaction);
+        transactions.put(TransactionType.PAYMENT, paymentTransaction);
+        transactions.put(TransactionType.DELIVERY, deliveryTransaction);
+        transactions.put(TransactionType.ORDER_STATUS, orderStatusTransaction);
+        transactions.put(TransactionType.STOCK_LEVEL, stockLevelTransaction);
+        transactions.put(TransactionType.POPULAR_ITEM, popularItemTransaction);
+        transactions.put(TransactionType.TOP_BALANCE, topBalanceTransaction);
+        transactions.put(TransactionType.RELATED_CUSTOMER, relatedCustomerTransaction);
+        this.statementMetrics = statementMetrics;
+        this.conditionalUpdater = conditionalUpdater;
     }
 
-    void runQueries(String queryFilename) throws Exception {
-        File queryTxt = new File(queryFilename);
+    /**
+     * Executes the transactions in the given file with up to {@code concurrency} transactions in flight.
+     *
+     * Every transaction is assigned to a worker based on its warehouse and district, and each worker executes its
+     * transactions one at a time in file order. Hence, transactions of the same district (and thus of the same
+     * customer) keep their relative order, while transactions of different districts may run at the same time. A
+     * transaction of a whole warehouse, i.e. Delivery, keeps its order on the workers of every district of the
+     * warehouse, which wait for it. Top Balance does not belong to any warehouse and is spread over the workers.
+     *
+     * The file may be either a text transaction file or a file compiled with the compile task.
+     *
+     * If the options set a target rate, the run is open loop: every transaction is given an intended start time from
+     * an {@link ArrivalSchedule}, and is not dispatched before it. The response time of a transaction is measured from
+     * its intended start time, so that it includes the time that the transaction waited behind slower ones, while its
+     * service time is measured from the time that it actually started.
+     *
+     * If the options set a report interval, the throughput and latencies of every interval are written to the
+     * interval log of the options while the transactions run, see {@link IntervalReporter}.
+     *
+     * If the options set a warm-up, the transactions that start during the warm-up are executed but left out of the
+     * statistics, and the throughput is computed from the end of the warm-up, see {@link MeasurementWindow}.
+     *
+     * If the options set a result file, the result of the run is written to it as well, see {@link RunResult}.
+     *
+     * The latencies and failures of every CQL statement executed by the run are written after the statistics, followed
+     * by the contention of the lightweight transactions, see {@link ConditionalUpdater}.
+     */
+    void runQueries(String queryFilename, RunOptions options) throws Exception {
+        try (OutputSink out = options.getOutputMode().createSink(System.out)) {
+            runQueries(queryFilename, options, out, System.err, new Statistics());
+        }
+        statementMetrics.printStatistics(System.err);
+        conditionalUpdater.printStatistics(System.err);
+    }
 
-        Scanner scanner = new Scanner(queryTxt);
-        BaseTransaction transaction;
+    /**
+     * Same as {@link #runQueries(String, RunOptions)}, but writes the output of the transactions to {@code out}, and
+     * the statistics of the run to {@code err} after recording them in {@code calculator}. Several runs can take place
+     * at the same time as long as each of them has its own output and statistics. The output mode of the options is
+     * left to the caller, which creates {@code out}.
+     *
+     * @return the result of the run
+     */
+    RunResult runQueries(String queryFilename, RunOptions options, OutputSink out, PrintStream err,
+                         Statistics calculator) throws Exception {
+        final int concurrency = options.getConcurrency();
+        long numQueries = 0;
 
-        Statistics calculator = Statistics.getStatisticsCalculator();
+        List<Long> failedTransactions = Collections.synchronizedList(new ArrayList<>());
 
-        List<Long> failedTransactions = new LinkedList<>();
+        final ExecutorService[] workers = new ExecutorService[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            workers[i] = Executors.newSingleThreadExecutor();
+        }
+        final int maxPendingTransactions = concurrency * (MAX_QUEUED_PER_WORKER + 1);
+        final Semaphore pendingTransactions = new Semaphore(maxPendingTransactions);
+        // Every request is either read ahead, pending or being handed over, so the pool never runs dry.
+        final RequestPool requestPool = new RequestPool(READ_AHEAD + maxPendingTransactions + 1);
 
-        long start, end, lStart, lEnd, lapse, totalLapse;
+        long start, end, totalLapse;
 
+        final long startTime = System.currentTimeMillis();
         start = System.nanoTime();
-        while (scanner.hasNext()) {
-            numQueries++;
-
-            String line = scanner.nextLine();
-            String[] parameters = line.split(",");
-            String[] lines = new String[0];
-
-            switch (parameters[0]) {
-                case "N":
-                    transaction = newOrderTransaction;
-                    int moreLines = Integer.parseInt(parameters[4]);
-                    lines = new String[moreLines];
-                    for (int i = 0; i < moreLines; i++) {
-                        lines[i] = scanner.nextLine();
-                    }
-                    break;
-                case "P":
-                    transaction = paymentTransaction;
-                    break;
-                case "D":
-                    transaction = deliveryTransaction;
-                    break;
-                case "O":
-                    transaction = orderStatusTransaction;
-                    break;
-                case "S":
-                    transaction = stockLevelTransaction;
-                    break;
-                case "I":
-                    transaction = popularItemTransaction;
-                    break;
-                case "T":
-                    transaction = topBalanceTransaction;
-                    break;
-                case "R":
-                    transaction = relatedCustomerTransaction;
-                    break;
-                default:
-                    numQueries--;
-                    // throw new Exception("Unknown transaction types");
-                    System.err.println("Unknown transaction types");
+        final IntervalReporter reporter = options.isReportingIntervals()
+                ? new IntervalReporter(calculator, options.getReportInterval(), openIntervalLog(options)) : null;
+        final MeasurementWindow window = new MeasurementWindow(options.getWarmUpTransactions(),
+                TimeUnit.SECONDS.toNanos(options.getWarmUpSeconds()), options.isDetectingSteadyState(), start);
+        final ArrivalSchedule schedule = options.isOpenLoop()
+                ? new ArrivalSchedule(options.getTargetRate(), options.getArrivals(), start) : null;
+        try (XactFileReader reader = new XactFileReader(queryFilename, requestPool, READ_AHEAD, err)) {
+            reader.start();
+
+            TransactionRequest request;
+            while ((request = reader.take()) != null) {
+                numQueries++;
+
+                final long transactionId = numQueries;
+                final long intendedStart = schedule != null ? waitUntil(schedule.next()) : UNSCHEDULED;
+
+                if (concurrency == 1) {
+                    runTransaction(request, transactionId, intendedStart, out, calculator, window,
+                            failedTransactions);
+                    requestPool.release(request);
                     continue;
+                }
+
+                final TransactionRequest pendingRequest = request;
+                pendingTransactions.acquire();
+                executeInOrder(workers, workersOf(request, transactionId, concurrency), () -> {
+                    try {
+                        runTransaction(pendingRequest, transactionId, intendedStart, out, calculator, window,
+                                failedTransactions);
+                    } finally {
+                        requestPool.release(pendingRequest);
+                        pendingTransactions.release();
+                    }
+                });
+            }
+        } finally {
+            for (ExecutorService executor : workers) {
+                executor.shutdown();
+            }
+            for (ExecutorService executor : workers) {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+            if (reporter != null) {
+                reporter.close();
+            }
+        }
+        end = System.nanoTime();
+        final long endTime = System.currentTimeMillis();
+        final long measuredFrom = window.getMeasuredFrom(end);
+        totalLapse = TimeUnit.SECONDS.convert(end - measuredFrom, TimeUnit.NANOSECONDS);
+
+        if (options.isOpenLoop()) {
+            err.printf("Target rate: %.2f per second (%s arrivals)\n", options.getTargetRate(),
+                    options.getArrivals().name().toLowerCase());
+        }
+        if (options.isWarmingUp()) {
+            err.printf("Warm-up: first %.2fs excluded from the measurements\n", (measuredFrom - start) / 1e9);
+        }
+        err.printf("Total Skipped Transactions: %d\n", failedTransactions.size());
+        String failedTransactionsString;
+        synchronized (failedTransactions) {
+            Collections.sort(failedTransactions);
+            failedTransactionsString =
+                    failedTransactions.stream().map(Object::toString).collect(Collectors.joining(","));
+        }
+        err.printf("Skipped transactions: %s\n", failedTransactionsString);
+
+        calculator.computeTimeStatistics(totalLapse, err);
+
+        final RunResult result = RunResult.of(queryFilename,
+                startTime + TimeUnit.NANOSECONDS.toMillis(measuredFrom - start), endTime, failedTransactions.size(),
+                calculator);
+        if (options.getResultFile() != null) {
+            result.write(new File(options.getResultFile()));
+        }
+        return result;
+    }
+
+    private static PrintStream openIntervalLog(RunOptions options) throws FileNotFoundException {
+        return new PrintStream(new BufferedOutputStream(new FileOutputStream(options.getIntervalLog())), false);
+    }
+
+    // The output of the transaction is written to sink at once when it ends, so that it does not interleave with the
+    // output of the transactions that run concurrently.
+    private void runTransaction(TransactionRequest request, long transactionId, long intendedStart, OutputSink sink,
+                                Statistics calculator, MeasurementWindow window, List<Long> failedTransactions) {
+        final BaseTransaction<? extends TransactionRequest> transaction = transactions.get(request.getType());
+        final BufferedOutputSink out = new BufferedOutputSink();
+        long lStart, lEnd, lapse;
+
+        lStart = System.nanoTime();
+        final boolean measured = window.isMeasured(transactionId, lStart);
+        out.println("\n======================================================================");
+        out.printf("Transaction ID: %d | Type: %s\n", transactionId, transaction.getType());
+        try {
+            execute(transaction, request, out);
+            lEnd = System.nanoTime();
+            lapse = TimeUnit.MILLISECONDS.convert(lEnd - lStart, TimeUnit.NANOSECONDS);
+            window.completed(lEnd);
+            if (measured) {
+                calculator.ingestTime(transaction.getType(), lEnd - lStart);
+                if (intendedStart != UNSCHEDULED) {
+                    calculator.ingestResponseTime(transaction.getType(), lEnd - intendedStart);
+                }
             }
+            out.printf("Time taken: %d\n", lapse);
+            out.summary("Transaction ID: %d | Type: %s | Time taken: %d\n", transactionId, transaction.getType(),
+                    lapse);
+        } catch (Exception ex) {
+            out.println(ex.toString());
+            out.println("Transaction Skipped!");
+            out.summary("Transaction ID: %d | Type: %s | Skipped: %s\n", transactionId, transaction.getType(), ex);
+            failedTransactions.add(transactionId);
+        }
+        out.println("======================================================================");
+        out.writeTo(sink);
+    }
+
+    // Workers that the transaction keeps its order on: the worker of its district, the workers of every district of
+    // its warehouse if it operates on the whole warehouse, or any worker if it is not tied to a warehouse.
+    private static int[] workersOf(TransactionRequest request, long transactionId, int concurrency) {
+        final int warehouseId = request.getWarehouseId();
+        if (warehouseId == TransactionRequest.NO_WAREHOUSE) {
+            return new int[] {(int) Math.floorMod(transactionId, (long) concurrency)};
+        }
+        if (request.getDistrictId() != TransactionRequest.NO_DISTRICT) {
+            return new int[] {workerOf(warehouseId, request.getDistrictId(), concurrency)};
+        }
+        return IntStream.rangeClosed(1, DISTRICTS_PER_WAREHOUSE)
+                .map(districtId -> workerOf(warehouseId, districtId, concurrency))
+                .distinct()
+                .toArray();
+    }
+
+    // The districts of a warehouse are assigned to consecutive workers.
+    private static int workerOf(int warehouseId, int districtId, int concurrency) {
+        return Math.floorMod(warehouseId * DISTRICTS_PER_WAREHOUSE + districtId - 1, concurrency);
+    }
 
-            lStart = System.nanoTime();
-            System.out.println("\n======================================================================");
-            System.out.printf("Transaction ID: %d | Type: %s\n", numQueries, transaction.getType());
+    // Executes the transaction on the first of the given workers once the others have executed the transactions
+    // submitted to them before it, and holds the others until it completes, so that it keeps its order on all of them.
+    // Transactions are submitted by a single thread, so every worker reaches the transactions held on several workers
+    // in the same order, and they do not wait for each other.
+    private static void executeInOrder(ExecutorService[] workers, int[] ordered, Runnable transaction) {
+        if (ordered.length == 1) {
+            workers[ordered[0]].execute(transaction);
+            return;
+        }
+        final CountDownLatch ready = new CountDownLatch(ordered.length - 1);
+        final CountDownLatch done = new CountDownLatch(1);
+        for (int i = 1; i < ordered.length; i++) {
+            workers[ordered[i]].execute(() -> {
+                ready.countDown();
+                awaitUninterruptibly(done);
+            });
+        }
+        workers[ordered[0]].execute(() -> {
+            try {
+                awaitUninterruptibly(ready);
+                transaction.run();
+            } finally {
+                done.countDown();
+            }
+        });
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
             try {
-                transaction.execute(lines, parameters);
-                lEnd = System.nanoTime();
-                lapse = TimeUnit.MILLISECONDS.convert(lEnd - lStart, TimeUnit.NANOSECONDS);
-                calculator.ingestTime(transaction.getType(), lapse);
-                System.out.printf("Time taken: %d\n", lapse);
-            } catch (Exception ex) {
-                System.out.println(ex);
-                System.out.println("Transaction Skipped!");
-                failedTransactions.add(numQueries);
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
             }
-           System.out.println("======================================================================");
         }
-        end = System.nanoTime();
-        totalLapse = TimeUnit.SECONDS.convert(end - start, TimeUnit.NANOSECONDS);
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        System.err.printf("Total Skipped Transactions: %d\n", failedTransactions.size());
-        String failedTransactionsString =
-                failedTransactions.stream().map(Object::toString).collect(Collectors.joining(","));
-        System.err.printf("Skipped transactions: %s\n", failedTransactionsString);
+    // Parks the calling thread until the given time from System.nanoTime(), and returns that time.
+    private static long waitUntil(long time) {
+        long remaining;
+        while ((remaining = time - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+        return time;
+    }
 
-        calculator.computeTimeStatistics(totalLapse);
-        scanner.close();
+    // Transactions are registered by the type of request that they accept, so the cast below always succeeds.
+    @SuppressWarnings("unchecked")
+    private static <R extends TransactionRequest> void execute(BaseTransaction<R> transaction,
+                                                               TransactionRequest request, OutputSink out) {
+        transaction.execute((R) request, out);
     }
 }
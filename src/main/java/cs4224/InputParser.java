@@ -9,12 +9,27 @@ public class InputParser {
     private HelpFormatter helpFormatter = new HelpFormatter();
 
     public InputParser() {
-        addOption("t", "task", "Type of task: transaction or dbstate", true, true);
-        addOption("k", "keyspace", "Keyspace name", true, true);
+        addOption("t", "task", "Type of task: transaction, clients, compile, aggregate or dbstate", true, true);
+        addOption("k", "keyspace", "Keyspace name", true, false);
         addOption("i", "ip", "IP address of cassandra cluster", true, false);
         addOption("p", "port", "Port of cassandra cluster", true, false);
-        addOption("f", "fileName", "Name of query file", true, false);
+        addOption("f", "fileName", "Name of query file, or directory of query files for clients and compile, "
+                + "or result files for aggregate", true, false);
         addOption("l", "logFileName", "Name of log file", true, false);
+        addOption("c", "concurrency", "Number of transactions executed concurrently", true, false);
+        addOption("r", "clientIds", "Ids of the clients to run, e.g. 0-7 or 0,5,10", true, false);
+        addOption("q", "rate", "Target number of transactions per second of each client (open loop)", true, false);
+        addOption("a", "arrivals", "Arrivals of an open loop run: fixed or poisson", true, false);
+        addOption("m", "outputMode", "Output of transactions: full, async, compact or null", true, false);
+        addOption("s", "reportInterval", "Seconds between two rows of the interval log, or 0 to disable it",
+                true, false);
+        addOption("g", "intervalLog", "Name of the interval log, ignored by clients (default intervals.csv)",
+                true, false);
+        addOption("w", "warmUp", "Warm-up excluded from the statistics: a number of transactions, or of seconds "
+                + "such as 30s", true, false);
+        addOption("d", "steadyState", "Wait for a steady throughput after the warm-up before measuring", false, false);
+        addOption("j", "resultFile", "Name of the JSON result file of the run, ignored by clients", true, false);
+        addOption("o", "outputDir", "Directory of the output of the clients, or output of compile", true, false);
     }
 
     private void addOption(String opt, String longOpt, String description, boolean hasArg, boolean isRequired) {
@@ -26,9 +41,15 @@ public class InputParser {
     public CommandLine parse(String[] args) {
         try {
             final CommandLine cli = parser.parse(options, args);
-            if (cli.getOptionValue("t").equalsIgnoreCase("transaction") && !cli.hasOption("f")) {
+            final String task = cli.getOptionValue("t");
+            if ((task.equalsIgnoreCase("transaction") || task.equalsIgnoreCase("clients")
+                    || task.equalsIgnoreCase("compile") || task.equalsIgnoreCase("aggregate")) && !cli.hasOption("f")) {
                 throw new MissingArgumentException("Missing argument for option: fileName");
             }
+            // Compiling transaction files and aggregating results do not connect to the cluster.
+            if (!task.equalsIgnoreCase("compile") && !task.equalsIgnoreCase("aggregate") && !cli.hasOption("k")) {
+                throw new MissingArgumentException("Missing argument for option: keyspace");
+            }
             return cli;
         } catch (ParseException e) {
             System.err.println(e.getMessage());
@@ -3,10 +3,12 @@ import com.datastax.oss.driver.api.core.CqlSession;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import cs4224.module.BaseModule;
+import cs4224.requests.XactFileCompiler;
+import cs4224.transactions.OrderIdAllocator;
 import org.apache.commons.cli.CommandLine;
 import org.apache.logging.log4j.LogManager;
 
-import java.util.concurrent.ExecutorService;
+import java.util.List;
 
 public class Main {
     public static void main(String[] args) {
@@ -30,6 +32,16 @@ public class Main {
         }
 
         String task = parsedArguments.getOptionValue("t");
+        if (task.equalsIgnoreCase("compile")) {
+            final XactFileCompiler compiler = new XactFileCompiler(System.out, System.err);
+            compiler.compile(parsedArguments.getOptionValue("f"), parsedArguments.getOptionValue("o"));
+            return;
+        }
+        if (task.equalsIgnoreCase("aggregate")) {
+            new ResultAggregator().aggregate(parsedArguments.getOptionValue("f"), System.out);
+            return;
+        }
+
         String keyspace = parsedArguments.getOptionValue("k");
         String ip = parsedArguments.hasOption("i") ? parsedArguments.getOptionValue("i") : "";
         int port = parsedArguments.hasOption("p") ? Integer.parseInt(parsedArguments.getOptionValue("p")) : -1;
@@ -41,7 +53,17 @@ public class Main {
                 setLogFileName(logFileName);
                 String fileName = parsedArguments.getOptionValue("f");
                 final Driver driver = injector.getInstance(Driver.class);
-                driver.runQueries(fileName);
+                driver.runQueries(fileName, RunOptions.fromCommandLine(parsedArguments));
+                break;
+            case "clients":
+                setLogFileName(parsedArguments.hasOption("l") ? parsedArguments.getOptionValue("l") : "");
+                String xactDirectory = parsedArguments.getOptionValue("f");
+                List<Integer> clientIds = parsedArguments.hasOption("r")
+                        ? MultiClientDriver.parseClientIds(parsedArguments.getOptionValue("r")) : null;
+                String outputDirectory = parsedArguments.hasOption("o") ? parsedArguments.getOptionValue("o") : "out";
+                final MultiClientDriver multiClientDriver = injector.getInstance(MultiClientDriver.class);
+                multiClientDriver.runClients(xactDirectory, clientIds, outputDirectory,
+                        RunOptions.fromCommandLine(parsedArguments));
                 break;
             case "dbstate":
                 final DBState dbState = injector.getInstance(DBState.class);
@@ -52,10 +74,10 @@ public class Main {
                 System.err.println("Unknown task type");
         }
 
+        // Skips the order ids that are leased but not used, so that the next order ids of the districts move past them.
+        injector.getInstance(OrderIdAllocator.class).close();
         final CqlSession cqlSession = injector.getInstance(CqlSession.class);
-        final ExecutorService executorService = injector.getInstance(ExecutorService.class);
         cqlSession.close();
-        executorService.shutdown();
     }
 
     private static void setLogFileName(String name) {
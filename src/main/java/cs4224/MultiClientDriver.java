@@ -0,0 +1,181 @@
+package cs4224;
+
+import com.google.inject.Inject;
+import cs4224.output.OutputSink;
+import cs4224.requests.XactFileCompiler;
+import cs4224.utils.RunResult;
+import cs4224.utils.ConditionalUpdater;
+import cs4224.utils.StatementMetrics;
+import cs4224.utils.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs several clients in one process. Every client executes its own transaction file on its own thread, while all
+ * of them share the session, the prepared statements and the transactions of the process.
+ */
+public class MultiClientDriver {
+    private static final Logger LOG = LoggerFactory.getLogger(MultiClientDriver.class);
+    private static final Pattern XACT_FILE_PATTERN = Pattern.compile("(\\d+)\\.(txt|bin)");
+
+    private final Driver driver;
+    private final StatementMetrics statementMetrics;
+    private final ConditionalUpdater conditionalUpdater;
+
+    @Inject
+    public MultiClientDriver(Driver driver, StatementMetrics statementMetrics, ConditionalUpdater conditionalUpdater) {
+        this.driver = driver;
+        this.statementMetrics = statementMetrics;
+        this.conditionalUpdater = conditionalUpdater;
+    }
+
+    /**
+     * Runs the transaction files {@code [client id].txt} of the given directory as independent clients. If a client
+     * also has a compiled file {@code [client id].bin}, the compiled file is run instead.
+     *
+     * The output and the statistics of each client are written to {@code [client id].out} and
+     * {@code [client id].err} in {@code outputDirectory}, in the same format as a single client run, and the result
+     * of each client to {@code [client id].json}, which can be merged with the aggregate task. The statistics
+     * over all clients, followed by the latencies and failures of every CQL statement of the clients, are written to
+     * standard error. If the options set a report interval, the interval log of each client is
+     * {@code [client id]-intervals.csv} in {@code outputDirectory}.
+     *
+     * @param clientIds ids of the clients to run, or null to run every transaction file of the directory
+     */
+    void runClients(String xactDirectory, List<Integer> clientIds, String outputDirectory, RunOptions options)
+            throws Exception {
+        final SortedMap<Integer, File> xactFiles = findXactFiles(new File(xactDirectory), clientIds);
+        if (xactFiles.isEmpty()) {
+            throw new IllegalArgumentException("No transaction file to run in " + xactDirectory);
+        }
+
+        final File outputDir = new File(outputDirectory);
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Unable to create output directory " + outputDirectory);
+        }
+
+        final ExecutorService clients = Executors.newFixedThreadPool(xactFiles.size());
+        final Map<Integer, Statistics> clientStatistics = new TreeMap<>();
+        final Map<Integer, Future<RunResult>> clientRuns = new TreeMap<>();
+
+        final long start = System.currentTimeMillis();
+        xactFiles.forEach((clientId, xactFile) -> {
+            final Statistics statistics = new Statistics();
+            clientStatistics.put(clientId, statistics);
+            clientRuns.put(clientId, clients.submit(() ->
+                    runClient(clientId, xactFile, outputDir, options, statistics)));
+        });
+        clients.shutdown();
+
+        // The clients are measured from the end of the earliest warm-up of the clients that succeeded.
+        long measuredFrom = Long.MAX_VALUE;
+        final List<Integer> failedClients = new ArrayList<>();
+        for (Map.Entry<Integer, Future<RunResult>> clientRun : clientRuns.entrySet()) {
+            try {
+                measuredFrom = Math.min(measuredFrom, clientRun.getValue().get().getStartTime());
+            } catch (Exception e) {
+                LOG.error("Client {} failed: ", clientRun.getKey(), e);
+                failedClients.add(clientRun.getKey());
+            }
+        }
+        final long end = System.currentTimeMillis();
+        measuredFrom = Math.min(Math.max(start, measuredFrom), end);
+
+        final Statistics aggregate = new Statistics();
+        clientStatistics.values().forEach(aggregate::merge);
+
+        System.err.printf("Number of clients: %d\n", xactFiles.size());
+        System.err.printf("Clients: %s\n", xactFiles.keySet());
+        System.err.printf("Failed clients: %s\n", failedClients);
+        aggregate.computeTimeStatistics(TimeUnit.SECONDS.convert(end - measuredFrom, TimeUnit.MILLISECONDS), System.err);
+        statementMetrics.printStatistics(System.err);
+        conditionalUpdater.printStatistics(System.err);
+    }
+
+    private RunResult runClient(int clientId, File xactFile, File outputDir, RunOptions options,
+                                Statistics statistics) throws Exception {
+        try (PrintStream outStream = openOutput(new File(outputDir, clientId + ".out"));
+             OutputSink out = options.getOutputMode().createSink(outStream);
+             PrintStream err = openOutput(new File(outputDir, clientId + ".err"))) {
+            try {
+                final RunOptions clientOptions = options.toBuilder()
+                        .intervalLog(new File(outputDir, clientId + "-intervals.csv").getPath())
+                        .resultFile(new File(outputDir, clientId + ResultAggregator.RESULT_EXTENSION).getPath())
+                        .build();
+                return driver.runQueries(xactFile.getPath(), clientOptions, out, err, statistics);
+            } catch (Exception e) {
+                e.printStackTrace(err);
+                throw e;
+            }
+        }
+    }
+
+    private static PrintStream openOutput(File file) throws FileNotFoundException {
+        return new PrintStream(new BufferedOutputStream(new FileOutputStream(file)), false);
+    }
+
+    private static SortedMap<Integer, File> findXactFiles(File xactDirectory, List<Integer> clientIds)
+            throws FileNotFoundException {
+        if (!xactDirectory.isDirectory()) {
+            throw new FileNotFoundException(xactDirectory + " is not a directory");
+        }
+
+        final SortedMap<Integer, File> xactFiles = new TreeMap<>();
+        if (clientIds != null) {
+            for (int clientId : clientIds) {
+                final File compiledFile = new File(xactDirectory, clientId + XactFileCompiler.COMPILED_EXTENSION);
+                final File textFile = new File(xactDirectory, clientId + XactFileCompiler.TEXT_EXTENSION);
+                if (!compiledFile.isFile() && !textFile.isFile()) {
+                    throw new FileNotFoundException(textFile.getPath());
+                }
+                xactFiles.put(clientId, compiledFile.isFile() ? compiledFile : textFile);
+            }
+            return xactFiles;
+        }
+
+        final File[] files = xactDirectory.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            final Matcher matcher = XACT_FILE_PATTERN.matcher(file.getName());
+            if (file.isFile() && matcher.matches()) {
+                final int clientId = Integer.parseInt(matcher.group(1));
+                // Prefer the compiled file of a client when both files are present.
+                if (file.getName().endsWith(XactFileCompiler.COMPILED_EXTENSION) || !xactFiles.containsKey(clientId)) {
+                    xactFiles.put(clientId, file);
+                }
+            }
+        }
+        return xactFiles;
+    }
+
+    /**
+     * Parses a list of client ids such as {@code 0-7} or {@code 0,5,10,15}. Both forms can be mixed, e.g.
+     * {@code 0-3,8,10-12}.
+     */
+    static List<Integer> parseClientIds(String clientIds) {
+        final List<Integer> ids = new ArrayList<>();
+        for (String part : clientIds.split(",")) {
+            final String[] range = part.trim().split("-");
+            if (range.length == 1) {
+                ids.add(Integer.parseInt(range[0].trim()));
+            } else if (range.length == 2) {
+                final int from = Integer.parseInt(range[0].trim());
+                final int to = Integer.parseInt(range[1].trim());
+                for (int id = from; id <= to; id++) {
+                    ids.add(id);
+                }
+            } else {
+                throw new IllegalArgumentException("Invalid client ids: " + clientIds);
+            }
+        }
+        return ids;
+    }
+}
@@ -1,47 +1,174 @@
 package cs4224;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
+/**
+ * Runs asynchronous steps, e.g. queries executed with {@code CqlSession.executeAsync}, at the same time. No thread
+ * waits on a step while it runs, so the number of steps in flight is not bound by the size of any thread pool.
+ *
+ * Every step is started as soon as it is submitted, and its result is returned with its own type. A step may be given
+ * a timeout, after which it fails with a {@link TimeoutException}. A step that fails or times out makes the others be
+ * cancelled, and cancelling a step cancels the stage it was started with. Only a stage returned by
+ * {@code executeAsync} of the session stops the request of its query; a stage derived from another, e.g. with
+ * {@code thenApply} or {@code thenCompose}, is only completed, and the stages it depends on still run. Cancelling does
+ * not roll back writes already sent, e.g. the order lines and stock updates of an order whose customer read failed.
+ *
+ * An executor is meant for the steps of a single call, and is not reused.
+ */
 public class ParallelExecutor {
-    private static final Logger LOG = LoggerFactory.getLogger(ParallelExecutor.class);
-    final ExecutorService executorService;
-    List<Callable<Object>> tasks;
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "parallel-executor-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Duration timeout;
+    private final List<Step<?>> steps = new ArrayList<>();
+
+    public ParallelExecutor() {
+        this(null);
+    }
 
-    public ParallelExecutor(ExecutorService executorService) {
-        this.executorService = executorService;
-        this.tasks = new ArrayList<>();
+    /**
+     * @param timeout timeout of the steps that are not given their own, or null for none
+     */
+    public ParallelExecutor(Duration timeout) {
+        this.timeout = timeout;
     }
 
-    public ParallelExecutor addTask(final Callable<Object> callable) {
-        this.tasks.add(callable);
-        return this;
+    /**
+     * Starts a step, and returns its result.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<? extends CompletionStage<T>> step) {
+        return submit(step, timeout);
     }
 
-    public List<Object> execute() {
+    /**
+     * Starts a step that times out after the given timeout, or never if it is null, and returns its result.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<? extends CompletionStage<T>> step, Duration timeout) {
+        final Step<T> submitted = new Step<>();
+        synchronized (steps) {
+            steps.add(submitted);
+        }
+
         try {
-            List<Future<Object>> futures = executorService.invokeAll(tasks);
-            List<Object> taskResult = futures.stream().map(future -> {
-                try {
-                    return future.get();
-                } catch (InterruptedException | ExecutionException e) {
-                    LOG.error("Error while executing parallel tasks: ", e);
-                    throw new RuntimeException(e);
+            submitted.stage = step.get().toCompletableFuture();
+        } catch (RuntimeException e) {
+            submitted.result.completeExceptionally(e);
+            return submitted.result;
+        }
+        submitted.stage.whenComplete((value, error) -> {
+            if (error != null) {
+                // A stage cancelled by fail completes the result with the failure rather than the cancellation.
+                final Throwable failure = submitted.failure;
+                submitted.result.completeExceptionally(failure != null ? failure : unwrap(error));
+            } else {
+                submitted.result.complete(value);
+            }
+        });
+
+        if (timeout != null) {
+            final ScheduledFuture<?> timer = TIMER.schedule(() -> submitted.fail(
+                    new TimeoutException("Step did not complete within " + timeout)),
+                    timeout.toNanos(), TimeUnit.NANOSECONDS);
+            submitted.result.whenComplete((value, error) -> timer.cancel(false));
+        }
+        return submitted.result;
+    }
+
+    /**
+     * Returns a stage that completes once every step submitted so far completes, or fails with the first failure of a
+     * step, once the other steps are cancelled.
+     */
+    public CompletableFuture<Void> executeAsync() {
+        final List<Step<?>> submitted;
+        synchronized (steps) {
+            submitted = new ArrayList<>(steps);
+        }
+        final CompletableFuture<Void> all = new CompletableFuture<>();
+        if (submitted.isEmpty()) {
+            all.complete(null);
+            return all;
+        }
+        final AtomicInteger remaining = new AtomicInteger(submitted.size());
+        final AtomicBoolean failed = new AtomicBoolean();
+        // The other steps are cancelled before the first failure is reported, and later failures are ignored.
+        submitted.forEach(step -> step.result.whenComplete((value, error) -> {
+            if (error != null) {
+                if (!failed.compareAndSet(false, true)) {
+                    return;
                 }
-            }).collect(Collectors.toList());
-            this.tasks = new ArrayList<>();
-            return taskResult;
-        } catch (Exception ex) {
-            this.tasks = new ArrayList<>();
-            throw new RuntimeException(ex);
+                cancel();
+                all.completeExceptionally(unwrap(error));
+            } else if (remaining.decrementAndGet() == 0) {
+                all.complete(null);
+            }
+        }));
+        return all;
+    }
+
+    /**
+     * Waits for every step submitted so far, and throws the first failure of a step, once the other steps are
+     * cancelled. The results of the steps are then available without waiting.
+     */
+    public void execute() {
+        try {
+            executeAsync().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Cancels every step that is not complete yet. Writes that the steps already sent are not rolled back.
+     */
+    public void cancel() {
+        final List<Step<?>> submitted;
+        synchronized (steps) {
+            submitted = new ArrayList<>(steps);
+        }
+        submitted.forEach(step -> step.fail(new CancellationException()));
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static class Step<T> {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        // Stage that the step was started with, or null if it could not be started.
+        private volatile CompletableFuture<? extends T> stage;
+        private volatile Throwable failure;
+
+        // Cancels the stage that the step was started with, which only stops a request if the stage is the one of the
+        // request, then fails the step.
+        void fail(Throwable error) {
+            if (result.isDone()) {
+                return;
+            }
+            failure = error;
+            if (stage != null) {
+                stage.cancel(true);
+            }
+            result.completeExceptionally(error);
         }
     }
 }
@@ -0,0 +1,80 @@
+package cs4224;
+
+import cs4224.utils.RunResult;
+import cs4224.utils.Statistics;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Merges the result files of several runs, e.g. of all the clients of a workload, into the statistics of all of them.
+ *
+ * Latencies are merged from the histograms of the runs, so the percentiles are those of all the transactions of the
+ * runs. The throughput is the number of transactions of all the runs over the time from the earliest start to the
+ * latest end of the runs, which assumes that the runs took place at the same time on machines with synchronized
+ * clocks.
+ */
+public class ResultAggregator {
+    public static final String RESULT_EXTENSION = ".json";
+
+    /**
+     * Merges the result files given as a comma separated list of files, or of directories whose {@code .json} files
+     * are all result files, and writes the statistics over all of them to {@code out}.
+     */
+    public void aggregate(String inputs, PrintStream out) throws IOException {
+        final List<File> files = findResultFiles(inputs);
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No result file in " + inputs);
+        }
+
+        final Statistics aggregate = new Statistics();
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        long numSkippedTransactions = 0;
+        double minThroughput = Double.MAX_VALUE;
+        double maxThroughput = 0;
+        double totalThroughput = 0;
+
+        for (File file : files) {
+            final RunResult result = RunResult.read(file);
+            aggregate.merge(result.getStatistics());
+            start = Math.min(start, result.getStartTime());
+            end = Math.max(end, result.getEndTime());
+            numSkippedTransactions += result.getNumSkippedTransactions();
+            minThroughput = Math.min(minThroughput, result.getThroughput());
+            maxThroughput = Math.max(maxThroughput, result.getThroughput());
+            totalThroughput += result.getThroughput();
+        }
+
+        out.printf("Number of results: %d\n", files.size());
+        out.printf("Results: %s\n", files);
+        out.printf("Total Skipped Transactions: %d\n", numSkippedTransactions);
+        out.printf("Throughput of a run: minimum %.2f, maximum %.2f, average %.2f per second\n", minThroughput,
+                maxThroughput, totalThroughput / files.size());
+        aggregate.computeTimeStatistics((end - start) / 1000, out);
+    }
+
+    private static List<File> findResultFiles(String inputs) throws FileNotFoundException {
+        final List<File> files = new ArrayList<>();
+        for (String input : inputs.split(",")) {
+            final File file = new File(input.trim());
+            if (file.isDirectory()) {
+                final File[] results = file.listFiles((directory, name) -> name.endsWith(RESULT_EXTENSION));
+                if (results != null) {
+                    Arrays.sort(results);
+                    files.addAll(Arrays.asList(results));
+                }
+            } else if (file.isFile()) {
+                files.add(file);
+            } else {
+                throw new FileNotFoundException(file.getPath());
+            }
+        }
+        return files;
+    }
+}
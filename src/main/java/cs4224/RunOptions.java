@@ -0,0 +1,105 @@
+package cs4224;
+
+import cs4224.output.OutputMode;
+import cs4224.utils.ArrivalSchedule;
+import lombok.Builder;
+import lombok.Getter;
+import org.apache.commons.cli.CommandLine;
+
+/**
+ * Options of a run of transaction files that are shared by the transaction and clients tasks.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class RunOptions {
+    // Number of transactions executed concurrently by each client.
+    @Builder.Default
+    private final int concurrency = 1;
+    // Target number of transactions per second of each client, or 0 to start every transaction as soon as possible.
+    @Builder.Default
+    private final double targetRate = 0;
+    @Builder.Default
+    private final ArrivalSchedule.Distribution arrivals = ArrivalSchedule.Distribution.FIXED;
+    @Builder.Default
+    private final OutputMode outputMode = OutputMode.FULL;
+    // Seconds between two rows of the interval log, or 0 to not write the interval log.
+    @Builder.Default
+    private final long reportInterval = 0;
+    @Builder.Default
+    private final String intervalLog = "intervals.csv";
+    // Transactions and seconds at the start of the run that are not measured, see MeasurementWindow.
+    @Builder.Default
+    private final long warmUpTransactions = 0;
+    @Builder.Default
+    private final long warmUpSeconds = 0;
+    // Whether to also wait for the throughput to be steady before measuring.
+    @Builder.Default
+    private final boolean detectingSteadyState = false;
+    // File to write the result of the run to, see RunResult, or null to not write it.
+    private final String resultFile;
+
+    public boolean isOpenLoop() {
+        return targetRate > 0;
+    }
+
+    public boolean isReportingIntervals() {
+        return reportInterval > 0;
+    }
+
+    public boolean isWarmingUp() {
+        return warmUpTransactions > 0 || warmUpSeconds > 0 || detectingSteadyState;
+    }
+
+    public static RunOptions fromCommandLine(CommandLine parsedArguments) {
+        final RunOptionsBuilder builder = RunOptions.builder();
+        if (parsedArguments.hasOption("c")) {
+            final int concurrency = Integer.parseInt(parsedArguments.getOptionValue("c"));
+            if (concurrency < 1) {
+                throw new IllegalArgumentException("Concurrency must be at least 1");
+            }
+            builder.concurrency(concurrency);
+        }
+        if (parsedArguments.hasOption("q")) {
+            final double targetRate = Double.parseDouble(parsedArguments.getOptionValue("q"));
+            if (!(targetRate > 0)) {
+                throw new IllegalArgumentException("Rate must be positive");
+            }
+            builder.targetRate(targetRate);
+        }
+        if (parsedArguments.hasOption("a")) {
+            builder.arrivals(ArrivalSchedule.Distribution.fromName(parsedArguments.getOptionValue("a")));
+        }
+        if (parsedArguments.hasOption("m")) {
+            builder.outputMode(OutputMode.fromName(parsedArguments.getOptionValue("m")));
+        }
+        if (parsedArguments.hasOption("s")) {
+            final long reportInterval = Long.parseLong(parsedArguments.getOptionValue("s"));
+            if (reportInterval < 0) {
+                throw new IllegalArgumentException("Report interval must not be negative");
+            }
+            builder.reportInterval(reportInterval);
+        }
+        if (parsedArguments.hasOption("g")) {
+            builder.intervalLog(parsedArguments.getOptionValue("g"));
+        }
+        if (parsedArguments.hasOption("w")) {
+            // A number of transactions, or a number of seconds followed by "s".
+            final String warmUp = parsedArguments.getOptionValue("w").trim().toLowerCase();
+            final long amount = warmUp.endsWith("s")
+                    ? Long.parseLong(warmUp.substring(0, warmUp.length() - 1)) : Long.parseLong(warmUp);
+            if (amount < 0) {
+                throw new IllegalArgumentException("Warm-up must not be negative");
+            }
+            if (warmUp.endsWith("s")) {
+                builder.warmUpSeconds(amount);
+            } else {
+                builder.warmUpTransactions(amount);
+            }
+        }
+        builder.detectingSteadyState(parsedArguments.hasOption("d"));
+        if (parsedArguments.hasOption("j")) {
+            builder.resultFile(parsedArguments.getOptionValue("j"));
+        }
+        return builder.build();
+    }
+}
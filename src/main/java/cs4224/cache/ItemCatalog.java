@@ -0,0 +1,157 @@
+package cs4224.cache;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import cs4224.utils.Money;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-only copy of the item table, which is not modified by any transaction. It is loaded once at startup and then
+ * answers lookups of the name and the price of an item without any query.
+ *
+ * Items are indexed by id, as item ids are dense. Prices are kept in cents, and names are kept one after another in a
+ * single array of characters, so that the catalog only holds a few arrays however many items there are.
+ */
+public class ItemCatalog {
+    private static final Logger LOG = LoggerFactory.getLogger(ItemCatalog.class);
+    // Number of token ranges that the item table is split into, which are all scanned at the same time.
+    private static final int SCAN_SPLITS = 32;
+    // Price of the ids that are not the id of an item.
+    private static final long MISSING = -1;
+
+    private final long[] pricesInCents;
+    // The name of item i is names[nameOffsets[i], nameOffsets[i + 1]).
+    private final int[] nameOffsets;
+    private final char[] names;
+    private final int size;
+
+    ItemCatalog(List<Entry> entries) {
+        int maxId = 0;
+        int namesLength = 0;
+        for (Entry entry : entries) {
+            if (entry.id < 0) {
+                throw new IllegalArgumentException("Invalid item id: " + entry.id);
+            }
+            maxId = Math.max(maxId, entry.id);
+            namesLength += entry.name.length();
+        }
+
+        pricesInCents = new long[maxId + 1];
+        nameOffsets = new int[maxId + 2];
+        names = new char[namesLength];
+        size = entries.size();
+
+        final String[] nameById = new String[maxId + 1];
+        Arrays.fill(pricesInCents, MISSING);
+        for (Entry entry : entries) {
+            pricesInCents[entry.id] = entry.priceInCents;
+            nameById[entry.id] = entry.name;
+        }
+        int offset = 0;
+        for (int id = 0; id <= maxId; id++) {
+            nameOffsets[id] = offset;
+            if (nameById[id] != null) {
+                nameById[id].getChars(0, nameById[id].length(), names, offset);
+                offset += nameById[id].length();
+            }
+        }
+        nameOffsets[maxId + 1] = offset;
+    }
+
+    /**
+     * Loads every item of the item table of the session's keyspace.
+     */
+    public static ItemCatalog load(CqlSession session) {
+        final long start = System.nanoTime();
+        final PreparedStatement scan = session.prepare(
+                "SELECT I_ID, I_NAME, I_PRICE " +
+                        "FROM ITEM " +
+                        "WHERE token(I_ID) > :start_token AND token(I_ID) <= :end_token"
+        );
+
+        // Splits the whole Murmur3 token range, from Long.MIN_VALUE excluded to Long.MAX_VALUE included.
+        final List<List<Entry>> splits = new ArrayList<>();
+        final CompletableFuture<?>[] scans = new CompletableFuture<?>[SCAN_SPLITS];
+        final long width = Long.MAX_VALUE / SCAN_SPLITS * 2;
+        for (int i = 0; i < SCAN_SPLITS; i++) {
+            final long startToken = Long.MIN_VALUE + width * i;
+            final long endToken = i == SCAN_SPLITS - 1 ? Long.MAX_VALUE : startToken + width;
+            final List<Entry> entries = new ArrayList<>();
+            splits.add(entries);
+            scans[i] = scanPages(session.executeAsync(scan.boundStatementBuilder()
+                    .setLong("start_token", startToken)
+                    .setLong("end_token", endToken)
+                    .build()), entries).toCompletableFuture();
+        }
+        CompletableFuture.allOf(scans).join();
+
+        final List<Entry> entries = new ArrayList<>();
+        splits.forEach(entries::addAll);
+        final ItemCatalog catalog = new ItemCatalog(entries);
+        LOG.info("Loaded {} items in {}ms", catalog.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return catalog;
+    }
+
+    private static CompletionStage<Void> scanPages(CompletionStage<AsyncResultSet> page, List<Entry> entries) {
+        return page.thenCompose(resultSet -> {
+            for (Row row : resultSet.currentPage()) {
+                entries.add(new Entry(row.getInt("I_ID"), row.getString("I_NAME"),
+                        Money.toCents(row.getBigDecimal("I_PRICE"))));
+            }
+            return resultSet.hasMorePages()
+                    ? scanPages(resultSet.fetchNextPage(), entries) : CompletableFuture.completedFuture(null);
+        });
+    }
+
+    public boolean contains(int itemId) {
+        return itemId >= 0 && itemId < pricesInCents.length && pricesInCents[itemId] != MISSING;
+    }
+
+    public long getPriceInCents(int itemId) {
+        checkContains(itemId);
+        return pricesInCents[itemId];
+    }
+
+    public BigDecimal getPrice(int itemId) {
+        return Money.fromCents(getPriceInCents(itemId));
+    }
+
+    public String getName(int itemId) {
+        checkContains(itemId);
+        return new String(names, nameOffsets[itemId], nameOffsets[itemId + 1] - nameOffsets[itemId]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void checkContains(int itemId) {
+        if (!contains(itemId)) {
+            throw new IllegalArgumentException("Unknown item: " + itemId);
+        }
+    }
+
+    static final class Entry {
+        private final int id;
+        private final String name;
+        private final long priceInCents;
+
+        Entry(int id, String name, long priceInCents) {
+            this.id = id;
+            this.name = name == null ? "" : name;
+            this.priceInCents = priceInCents;
+        }
+    }
+}
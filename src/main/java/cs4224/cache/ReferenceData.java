@@ -0,0 +1,75 @@
+package cs4224.cache;
+
+import cs4224.dao.DistrictDao;
+import cs4224.dao.WarehouseDao;
+import cs4224.entities.District;
+import cs4224.entities.Warehouse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Static columns of the warehouse and district tables, i.e. their names, addresses and taxes, which are not modified by
+ * any transaction. They are loaded once at startup, so that transactions only read the year to date amounts and the
+ * next order ids from Cassandra.
+ *
+ * The entities returned are shared and must not be modified. Their year to date amounts and next order ids are not
+ * set.
+ */
+public class ReferenceData {
+    private static final Logger LOG = LoggerFactory.getLogger(ReferenceData.class);
+
+    private final Map<Integer, Warehouse> warehouses;
+    private final Map<Long, District> districts;
+
+    ReferenceData(Collection<Warehouse> warehouses, Collection<District> districts) {
+        final Map<Integer, Warehouse> warehousesById = new TreeMap<>();
+        warehouses.forEach(warehouse -> warehousesById.put(warehouse.getId(), warehouse));
+        final Map<Long, District> districtsById = new HashMap<>();
+        districts.forEach(district -> districtsById.put(key(district.getWarehouseId(), district.getId()), district));
+        this.warehouses = Collections.unmodifiableMap(warehousesById);
+        this.districts = Collections.unmodifiableMap(districtsById);
+    }
+
+    public static ReferenceData load(WarehouseDao warehouseDao, DistrictDao districtDao) {
+        final ReferenceData referenceData = new ReferenceData(
+                warehouseDao.getAllReferenceData().map(Warehouse::map).all(),
+                districtDao.getAllReferenceData().map(District::map).all());
+        LOG.info("Loaded {} warehouses and {} districts", referenceData.warehouses.size(),
+                referenceData.districts.size());
+        return referenceData;
+    }
+
+    /**
+     * Returns the ids of all the warehouses, in ascending order.
+     */
+    public Set<Integer> getWarehouseIds() {
+        return warehouses.keySet();
+    }
+
+    public Warehouse getWarehouse(int warehouseId) {
+        final Warehouse warehouse = warehouses.get(warehouseId);
+        if (warehouse == null) {
+            throw new IllegalArgumentException("Unknown warehouse: " + warehouseId);
+        }
+        return warehouse;
+    }
+
+    public District getDistrict(int warehouseId, int districtId) {
+        final District district = districts.get(key(warehouseId, districtId));
+        if (district == null) {
+            throw new IllegalArgumentException("Unknown district: (" + warehouseId + ", " + districtId + ")");
+        }
+        return district;
+    }
+
+    private static long key(int warehouseId, int districtId) {
+        return ((long) warehouseId << Integer.SIZE) | (districtId & 0xFFFFFFFFL);
+    }
+}
@@ -1,12 +1,18 @@
 package cs4224.dao;
 
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
 import com.datastax.oss.driver.api.core.cql.Row;
 import com.datastax.oss.driver.api.mapper.annotations.Dao;
 import com.datastax.oss.driver.api.mapper.annotations.Query;
 import com.datastax.oss.driver.api.mapper.annotations.StatementAttributes;
 import com.datastax.oss.driver.api.mapper.annotations.Update;
 import cs4224.entities.Customer;
-import com.datastax.oss.driver.api.core.cql.ResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import cs4224.utils.Constants;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
 
 import static com.datastax.oss.driver.api.mapper.entity.saving.NullSavingStrategy.DO_NOT_SET;
 
@@ -16,17 +22,31 @@ public interface CustomerDao {
     @Query("SELECT * FROM ${qualifiedTableId} WHERE C_W_ID = :warehouseId AND C_D_ID = :districtId AND C_ID = :id")
     Row getById(int warehouseId, int districtId, int id);
 
-    @Update(customWhereClause = "C_W_ID = :warehouseId AND C_D_ID = :districtId AND C_ID = :id IF c_ytd_payment = :c_ytd",
+    // c_write_id is in the condition so that an update that is not applied returns the update that wrote the balance.
+    @Update(customWhereClause = "C_W_ID = :warehouseId AND C_D_ID = :districtId AND C_ID = :id",
+            customIfClause = "c_balance = :c_balance_before AND c_write_id = :c_write_id_before",
             nullSavingStrategy = DO_NOT_SET)
     @StatementAttributes(timeout = "PT10S")
-    ResultSet updateWhereIdEquals(Customer customer, int warehouseId, int districtId, int id, float c_ytd);
+    BoundStatement updateWhereIdEquals(Customer customer, int warehouseId, int districtId, int id,
+                                       BigDecimal c_balance_before, UUID c_write_id_before);
+
+    @Query("UPDATE customer_counter SET C_YTD_PAYMENT_CENTS = C_YTD_PAYMENT_CENTS + :cents, " +
+            "C_PAYMENT_CNT = C_PAYMENT_CNT + 1 WHERE C_W_ID = :warehouseId AND C_D_ID = :districtId AND C_ID = :id")
+    @StatementAttributes(timeout = "PT10S")
+    CompletionStage<AsyncResultSet> addPayment(int warehouseId, int districtId, int id, long cents);
 
     @Query("SELECT C_FIRST, C_MIDDLE, C_LAST FROM ${qualifiedTableId} WHERE C_W_ID = :warehouseId AND C_D_ID = :districtId " +
             "AND C_ID = :id")
+    @StatementAttributes(executionProfileName = Constants.READ_ONLY_PROFILE, idempotence = true)
     Row getNameById(int warehouseId, int districtId, int id);
 
     @Query("SELECT sum(C_BALANCE) as C_BALANCE, sum(C_YTD_PAYMENT) as C_YTD_PAYMENT, sum(C_PAYMENT_CNT) as C_PAYMENT_CNT, " +
             "sum(C_DELIVERY_CNT) as C_DELIVERY_CNT FROM ${qualifiedTableId}")
     @StatementAttributes(timeout = "PT10S")
     Row getState();
+
+    @Query("SELECT sum(C_YTD_PAYMENT_CENTS) as C_YTD_PAYMENT_CENTS, sum(C_PAYMENT_CNT) as C_PAYMENT_CNT, " +
+            "sum(C_DELIVERY_CNT) as C_DELIVERY_CNT FROM customer_counter")
+    @StatementAttributes(timeout = "PT10S")
+    Row getCounterState();
 }
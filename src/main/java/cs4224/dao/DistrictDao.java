@@ -1,26 +1,26 @@
 package cs4224.dao;
 
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.datastax.oss.driver.api.core.cql.ResultSet;
 import com.datastax.oss.driver.api.core.cql.Row;
 import com.datastax.oss.driver.api.mapper.annotations.Dao;
 import com.datastax.oss.driver.api.mapper.annotations.Query;
 import com.datastax.oss.driver.api.mapper.annotations.StatementAttributes;
 
-import java.math.BigDecimal;
-
 @Dao
 public interface DistrictDao {
 
-    @Query("SELECT * FROM ${qualifiedTableId} WHERE D_W_ID = :warehouseId AND D_ID = :id")
-    Row getById(int warehouseId, int id);
+    @Query("SELECT D_W_ID, D_ID, D_NAME, D_STREET_1, D_STREET_2, D_CITY, D_STATE, D_ZIP, D_TAX " +
+            "FROM ${qualifiedTableId}")
+    ResultSet getAllReferenceData();
 
-    @Query("UPDATE ${qualifiedTableId} SET d_ytd = :updatedYtd WHERE D_W_ID = :warehouseId AND D_ID = :id IF d_ytd = :d_ytd")
+    @Query("UPDATE district_counter SET D_YTD_CENTS = D_YTD_CENTS + :cents WHERE D_W_ID = :warehouseId AND D_ID = :id")
     @StatementAttributes(timeout = "PT10S")
-    ResultSet updateWhereIdEquals(int warehouseId, int id, BigDecimal updatedYtd, BigDecimal d_ytd);
-
-    @Query("SELECT D_NEXT_O_ID FROM ${qualifiedTableId} WHERE D_W_ID = :warehouseId AND D_ID = :id")
-    Row getNextOrderId(int warehouseId, int id);
+    BoundStatement addYtd(int warehouseId, int id, long cents);
 
     @Query("SELECT sum(D_YTD) as D_YTD, sum(D_NEXT_O_ID) as D_NEXT_O_ID FROM ${qualifiedTableId}")
     Row getState();
+
+    @Query("SELECT sum(D_YTD_CENTS) as D_YTD_CENTS FROM district_counter")
+    Row getCounterState();
 }
@@ -3,6 +3,8 @@ package cs4224.dao;
 import com.datastax.oss.driver.api.core.cql.ResultSet;
 import com.datastax.oss.driver.api.mapper.annotations.Dao;
 import com.datastax.oss.driver.api.mapper.annotations.Query;
+import com.datastax.oss.driver.api.mapper.annotations.StatementAttributes;
+import cs4224.utils.Constants;
 
 import java.util.List;
 
@@ -10,6 +12,7 @@ import java.util.List;
 public interface ItemDao {
 
     @Query("SELECT I_ID, I_NAME FROM ${qualifiedTableId} WHERE I_ID IN :ids")
+    @StatementAttributes(executionProfileName = Constants.READ_ONLY_PROFILE, idempotence = true)
     ResultSet getNameById(List<Integer> ids);
 
 }
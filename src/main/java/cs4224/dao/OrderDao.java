@@ -5,12 +5,14 @@ import com.datastax.oss.driver.api.core.cql.Row;
 import com.datastax.oss.driver.api.mapper.annotations.Dao;
 import com.datastax.oss.driver.api.mapper.annotations.Query;
 import com.datastax.oss.driver.api.mapper.annotations.StatementAttributes;
+import cs4224.utils.Constants;
 
 @Dao
 public interface OrderDao {
 
     @Query("SELECT O_ID, O_ENTRY_D, O_C_ID FROM ${qualifiedTableId} WHERE O_W_ID = :warehouseId AND O_D_ID = :districtId " +
             "AND O_ID >= :greaterThanId AND O_ID < :lessThanId")
+    @StatementAttributes(executionProfileName = Constants.READ_ONLY_PROFILE, idempotence = true)
     ResultSet getById(int warehouseId, int districtId, int greaterThanId, int lessThanId);
 
     @Query("SELECT max(O_ID) as O_ID, sum(O_OL_CNT) as O_OL_CNT FROM ${qualifiedTableId}")
@@ -5,6 +5,7 @@ import com.datastax.oss.driver.api.core.cql.Row;
 import com.datastax.oss.driver.api.mapper.annotations.Dao;
 import com.datastax.oss.driver.api.mapper.annotations.Query;
 import com.datastax.oss.driver.api.mapper.annotations.StatementAttributes;
+import cs4224.utils.Constants;
 
 import java.math.BigDecimal;
 
@@ -13,10 +14,12 @@ public interface OrderLineDao {
 
     @Query("SELECT max(OL_QUANTITY) as OL_QUANTITY FROM ${qualifiedTableId} WHERE OL_W_ID = :warehouseId AND " +
             "OL_D_ID = :districtId AND OL_O_ID = :orderId")
+    @StatementAttributes(executionProfileName = Constants.READ_ONLY_PROFILE, idempotence = true)
     Row getOLQuantity(int warehouseId, int districtId, int orderId);
 
     @Query("SELECT OL_I_ID FROM ${qualifiedTableId} WHERE OL_W_ID = :warehouseId AND OL_D_ID = :districtId " +
             "AND OL_O_ID = :orderId AND OL_QUANTITY = :orderLineQuantity ALLOW FILTERING")
+    @StatementAttributes(executionProfileName = Constants.READ_ONLY_PROFILE, idempotence = true)
     ResultSet getOLItemId(int warehouseId, int districtId, int orderId, BigDecimal orderLineQuantity);
 
     @Query("SELECT sum(OL_AMOUNT) as OL_AMOUNT, sum(OL_QUANTITY) as OL_QUANTITY FROM ${qualifiedTableId} " +
@@ -12,4 +12,9 @@ public interface StockDao {
             "sum(S_REMOTE_CNT) as S_REMOTE_CNT FROM ${qualifiedTableId} WHERE S_W_ID = :warehouseId")
     @StatementAttributes(timeout = "PT10S")
     Row getState(int warehouseId);
+
+    @Query("SELECT sum(S_YTD) as S_YTD, sum(S_ORDER_CNT) as S_ORDER_CNT, sum(S_REMOTE_CNT) as S_REMOTE_CNT " +
+            "FROM stock_counter WHERE S_W_ID = :warehouseId")
+    @StatementAttributes(timeout = "PT10S")
+    Row getCounterState(int warehouseId);
 }
@@ -1,26 +1,28 @@
 package cs4224.dao;
 
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.datastax.oss.driver.api.core.cql.ResultSet;
 import com.datastax.oss.driver.api.core.cql.Row;
 import com.datastax.oss.driver.api.mapper.annotations.Dao;
 import com.datastax.oss.driver.api.mapper.annotations.Query;
 import com.datastax.oss.driver.api.mapper.annotations.StatementAttributes;
 
-import java.math.BigDecimal;
-
 @Dao
 public interface WarehouseDao {
 
-    @Query("SELECT * FROM ${qualifiedTableId} WHERE W_ID = :id")
-    Row getById(int id);
+    @Query("SELECT W_ID, W_NAME, W_STREET_1, W_STREET_2, W_CITY, W_STATE, W_ZIP, W_TAX FROM ${qualifiedTableId}")
+    ResultSet getAllReferenceData();
 
-    @Query("UPDATE ${qualifiedTableId} SET w_ytd = :updatedYtd WHERE W_ID = :id IF w_ytd = :w_ytd")
+    @Query("UPDATE warehouse_counter SET W_YTD_CENTS = W_YTD_CENTS + :cents WHERE W_ID = :id")
     @StatementAttributes(timeout = "PT10S")
-    ResultSet updateWhereIdEquals(int id, BigDecimal updatedYtd, BigDecimal w_ytd);
+    BoundStatement addYtd(int id, long cents);
 
     @Query("SELECT W_ID FROM ${qualifiedTableId}")
     ResultSet getAllWarehouseIDs();
 
     @Query("SELECT sum(W_YTD) as W_YTD FROM ${qualifiedTableId}")
     Row getState();
+
+    @Query("SELECT sum(W_YTD_CENTS) as W_YTD_CENTS FROM warehouse_counter")
+    Row getCounterState();
 }
@@ -15,6 +15,7 @@ import lombok.experimental.Accessors;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.UUID;
 
 
 @Data
@@ -93,6 +94,10 @@ public class Customer {
     @CqlName("c_data")
     private String miscData;
 
+    // Random id of the update that last set the balance, see PaymentTransaction.
+    @CqlName("c_write_id")
+    private UUID writeId;
+
     public String toSpecifier() {
         return String.format("(%d, %d, %d)", warehouseId, districtId, id);
     }
@@ -134,6 +139,7 @@ public class Customer {
         customer.setNumPayments(cqlMapper.mapInt(row, "c_payment_cnt"));
         customer.setNumDeliveries(cqlMapper.mapInt(row, "c_delivery_cnt"));
         customer.setMiscData(cqlMapper.mapString(row, "c_data"));
+        customer.setWriteId(cqlMapper.mapUuid(row, "c_write_id"));
 
         return customer;
     }
@@ -4,6 +4,7 @@ import com.datastax.oss.driver.api.core.cql.Row;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.UUID;
 
 public final class CQLMapper {
 
@@ -41,4 +42,11 @@ public final class CQLMapper {
         }
         return null;
     }
+
+    public UUID mapUuid(Row row, String attribute) {
+        if (row.getColumnDefinitions().contains(attribute)) {
+            return row.getUuid(attribute);
+        }
+        return null;
+    }
 }
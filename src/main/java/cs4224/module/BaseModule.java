@@ -8,13 +8,15 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
+import cs4224.cache.ItemCatalog;
+import cs4224.cache.ReferenceData;
 import cs4224.dao.*;
 import cs4224.mapper.*;
 import cs4224.transactions.*;
+import cs4224.utils.ConditionalUpdater;
+import cs4224.utils.StatementMetrics;
 
 import java.net.InetSocketAddress;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import static cs4224.utils.Constants.*;
 
@@ -36,8 +38,16 @@ public class BaseModule extends AbstractModule {
 
     @Provides
     @Singleton
-    public CqlSession provideCqlSession() {
-        final SessionBuilder rawSession = CqlSession.builder().withKeyspace(CqlIdentifier.fromCql(keyspace));
+    public StatementMetrics provideStatementMetrics() {
+        return new StatementMetrics();
+    }
+
+    @Provides
+    @Singleton
+    public CqlSession provideCqlSession(StatementMetrics statementMetrics) {
+        final SessionBuilder rawSession = CqlSession.builder()
+                .withKeyspace(CqlIdentifier.fromCql(keyspace))
+                .withRequestTracker(statementMetrics);
 
         if (ip.isEmpty()) {
             return ((CqlSessionBuilder) rawSession).build();
@@ -95,61 +105,96 @@ public class BaseModule extends AbstractModule {
 
     @Provides
     @Singleton
-    public ExecutorService provideExecutorService() {
-        return Executors.newFixedThreadPool(5);
+    public ItemCatalog provideItemCatalog(CqlSession session) {
+        return ItemCatalog.load(session);
     }
 
     @Provides
-    @Inject
-    public PaymentTransaction providePaymentTransaction(CqlSession session, ExecutorService executorService,
-                                                        WarehouseDao warehouseDao, DistrictDao districtDao,
-                                                        CustomerDao customerDao) {
-        return new PaymentTransaction(session, executorService, warehouseDao, districtDao, customerDao);
+    @Singleton
+    public ReferenceData provideReferenceData(WarehouseDao warehouseDao, DistrictDao districtDao) {
+        return ReferenceData.load(warehouseDao, districtDao);
     }
 
     @Provides
-    @Inject
-    public NewOrderTransaction provideNewOrderTransaction(CqlSession session) {
+    @Singleton
+    public ConditionalUpdater provideConditionalUpdater(CqlSession session, StatementMetrics statementMetrics) {
+        return new ConditionalUpdater(session, statementMetrics, MAX_CAS_ATTEMPTS, CAS_BASE_BACKOFF_MILLIS,
+                CAS_MAX_BACKOFF_MILLIS);
+    }
+
+    @Provides
+    @Singleton
+    public OrderIdAllocator provideOrderIdAllocator(CqlSession session, ConditionalUpdater conditionalUpdater) {
+        return new OrderIdAllocator(session, conditionalUpdater, OrderIdAllocator.DEFAULT_BLOCK_SIZE);
+    }
+
+    @Provides
+    @Singleton
+    public RecentOrderItems provideRecentOrderItems(CqlSession session) {
+        return new RecentOrderItems(session);
+    }
+
+    @Provides
+    @Singleton
+    public PaymentTransaction providePaymentTransaction(CqlSession session, WarehouseDao warehouseDao,
+                                                        DistrictDao districtDao, CustomerDao customerDao,
+                                                        ReferenceData referenceData,
+                                                        ConditionalUpdater conditionalUpdater) {
+        return new PaymentTransaction(session, warehouseDao, districtDao, customerDao, referenceData,
+                conditionalUpdater, PAYMENT_COMBINE_WINDOW_MICROS);
+    }
+
+    @Provides
+    @Singleton
+    public NewOrderTransaction provideNewOrderTransaction(CqlSession session, ItemCatalog itemCatalog,
+                                                          ReferenceData referenceData,
+                                                          OrderIdAllocator orderIdAllocator,
+                                                          RecentOrderItems recentOrderItems,
+                                                          ConditionalUpdater conditionalUpdater) {
 //        System.out.println(session.getContext().getConfigLoader().getInitialConfig()
 //                .getDefaultProfile().getDuration(DefaultDriverOption.REQUEST_TIMEOUT));
-        return new NewOrderTransaction(session);
+        return new NewOrderTransaction(session, itemCatalog, referenceData, orderIdAllocator, recentOrderItems,
+                conditionalUpdater);
     }
 
     @Provides
-    @Inject
-    public DeliveryTransaction provideDeliveryTransaction(CqlSession session) {
-        return new DeliveryTransaction(session);
+    @Singleton
+    public DeliveryTransaction provideDeliveryTransaction(CqlSession session, ConditionalUpdater conditionalUpdater) {
+        return new DeliveryTransaction(session, conditionalUpdater);
     }
 
     @Provides
-    @Inject
+    @Singleton
     public OrderStatusTransaction provideOrderStatusTransaction(CqlSession session) {
         return new OrderStatusTransaction(session);
     }
 
     @Provides
-    @Inject
-    public PopularItemTransaction providePopularItemTransaction(CqlSession session, DistrictDao districtDao,
+    @Singleton
+    public PopularItemTransaction providePopularItemTransaction(CqlSession session, OrderIdAllocator orderIdAllocator,
                                                                 CustomerDao customerDao, OrderDao orderDao,
-                                                                OrderLineDao orderLineDao, ItemDao itemDao) {
-        return new PopularItemTransaction(session, districtDao, customerDao, orderDao, orderLineDao, itemDao);
+                                                                OrderLineDao orderLineDao, ItemDao itemDao,
+                                                                ItemCatalog itemCatalog) {
+        return new PopularItemTransaction(session, orderIdAllocator, customerDao, orderDao, orderLineDao, itemDao,
+                itemCatalog);
     }
 
     @Provides
-    @Inject
-    public RelatedCustomerTransaction provideRelatedCustomerTransaction(CqlSession session, ExecutorService executorService) {
+    @Singleton
+    public RelatedCustomerTransaction provideRelatedCustomerTransaction(CqlSession session) {
         return new RelatedCustomerTransaction(session);
     }
 
     @Provides
-    @Inject
-    public TopBalanceTransaction provideTopBalanceTransaction(CqlSession session, ExecutorService executorService) {
-        return new TopBalanceTransaction(session, executorService);
+    @Singleton
+    public TopBalanceTransaction provideTopBalanceTransaction(CqlSession session, ReferenceData referenceData) {
+        return new TopBalanceTransaction(session, referenceData);
     }
 
     @Provides
-    @Inject
-    public StockLevelTransaction provideStockLevelTransaction(CqlSession session) {
-        return new StockLevelTransaction(session);
+    @Singleton
+    public StockLevelTransaction provideStockLevelTransaction(CqlSession session, OrderIdAllocator orderIdAllocator,
+                                                              RecentOrderItems recentOrderItems) {
+        return new StockLevelTransaction(session, orderIdAllocator, recentOrderItems);
     }
 }
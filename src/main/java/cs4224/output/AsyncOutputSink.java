@@ -0,0 +1,119 @@
+package cs4224.output;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.IllegalFormatException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Hands the output of transactions over to a background thread through a bounded queue. The background thread formats
+ * the output in batches and writes each batch to the stream at once, so that neither formatting nor I/O happen on the
+ * threads that execute transactions. Callers only wait when the queue is full.
+ */
+public class AsyncOutputSink implements OutputSink {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncOutputSink.class);
+    private static final int CAPACITY = 8192;
+    private static final int BATCH_SIZE = 512;
+    private static final Entry CLOSE = new Entry(null, null);
+
+    private final PrintStream target;
+    private final boolean compact;
+    private final BlockingQueue<Entry> entries = new ArrayBlockingQueue<>(CAPACITY);
+    private final Thread writer;
+
+    /**
+     * @param compact whether to only write the summaries of the transactions
+     */
+    public AsyncOutputSink(PrintStream target, boolean compact) {
+        this.target = target;
+        this.compact = compact;
+        this.writer = new Thread(this::write, "output-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void printf(String format, Object... args) {
+        if (!compact) {
+            enqueue(new Entry(format, args));
+        }
+    }
+
+    @Override
+    public void summary(String format, Object... args) {
+        if (compact) {
+            enqueue(new Entry(format, args));
+        }
+    }
+
+    @Override
+    public void close() {
+        enqueue(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        target.flush();
+    }
+
+    private void enqueue(Entry entry) {
+        try {
+            entries.put(entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write() {
+        final List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        final StringBuilder text = new StringBuilder();
+        final Formatter formatter = new Formatter(text);
+
+        while (true) {
+            try {
+                batch.add(entries.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            entries.drainTo(batch, BATCH_SIZE - 1);
+
+            boolean closed = false;
+            for (Entry entry : batch) {
+                if (entry == CLOSE) {
+                    closed = true;
+                    break;
+                }
+                try {
+                    formatter.format(entry.format, entry.args);
+                } catch (IllegalFormatException e) {
+                    LOG.error("Unable to format output \"{}\": ", entry.format, e);
+                }
+            }
+            target.print(text);
+            target.flush();
+            text.setLength(0);
+            batch.clear();
+
+            if (closed) {
+                return;
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final String format;
+        private final Object[] args;
+
+        private Entry(String format, Object[] args) {
+            this.format = format;
+            this.args = args;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package cs4224.output;
+
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+
+/**
+ * Holds the output of one transaction until {@link #writeTo(OutputSink)} writes it to another sink in a single call,
+ * so that the output of transactions that run concurrently does not interleave. The output is only formatted when the
+ * other sink writes it, so an {@link AsyncOutputSink} still formats it on its background thread, and drops it
+ * unformatted in compact mode.
+ */
+public class BufferedOutputSink implements OutputSink {
+    private final List<Entry> entries = new ArrayList<>();
+    private final List<Entry> summaries = new ArrayList<>();
+
+    @Override
+    public synchronized void printf(String format, Object... args) {
+        entries.add(new Entry(format, args));
+    }
+
+    @Override
+    public synchronized void summary(String format, Object... args) {
+        summaries.add(new Entry(format, args));
+    }
+
+    /**
+     * Writes the output held so far to {@code target}, in one call for the output and one call per summary. The sink
+     * must not be used afterwards.
+     */
+    public synchronized void writeTo(OutputSink target) {
+        if (!entries.isEmpty()) {
+            target.printf("%s", new Output(entries));
+        }
+        for (Entry summary : summaries) {
+            target.summary(summary.format, summary.args);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    // Output of a transaction, which is formatted when it is written.
+    private static final class Output {
+        private final List<Entry> entries;
+
+        private Output(List<Entry> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder text = new StringBuilder();
+            final Formatter formatter = new Formatter(text);
+            for (Entry entry : entries) {
+                formatter.format(entry.format, entry.args);
+            }
+            return text.toString();
+        }
+    }
+
+    private static final class Entry {
+        private final String format;
+        private final Object[] args;
+
+        private Entry(String format, Object[] args) {
+            this.format = format;
+            this.args = args;
+        }
+    }
+}
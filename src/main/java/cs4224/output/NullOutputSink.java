@@ -0,0 +1,31 @@
+package cs4224.output;
+
+/**
+ * Drops the output of transactions, for runs that only measure performance.
+ */
+public class NullOutputSink implements OutputSink {
+    public static final NullOutputSink INSTANCE = new NullOutputSink();
+
+    private NullOutputSink() {
+    }
+
+    @Override
+    public void printf(String format, Object... args) {
+    }
+
+    @Override
+    public void println(String line) {
+    }
+
+    @Override
+    public void println() {
+    }
+
+    @Override
+    public void summary(String format, Object... args) {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,38 @@
+package cs4224.output;
+
+import java.io.PrintStream;
+
+public enum OutputMode {
+    // Writes the output of every transaction on the thread that executes it.
+    FULL,
+    // Writes the output of every transaction from a background thread.
+    ASYNC,
+    // Writes one line per transaction from a background thread.
+    COMPACT,
+    // Writes nothing.
+    NULL;
+
+    public OutputSink createSink(PrintStream target) {
+        switch (this) {
+            case FULL:
+                return new PrintStreamSink(target);
+            case ASYNC:
+                return new AsyncOutputSink(target, false);
+            case COMPACT:
+                return new AsyncOutputSink(target, true);
+            case NULL:
+                return NullOutputSink.INSTANCE;
+            default:
+                throw new IllegalArgumentException("Unknown output mode: " + this);
+        }
+    }
+
+    public static OutputMode fromName(String name) {
+        for (OutputMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown output mode: " + name);
+    }
+}
@@ -0,0 +1,36 @@
+package cs4224.output;
+
+/**
+ * Destination of the output of transactions. Depending on the {@link OutputMode}, the output may be written as it
+ * comes, written by a background thread, reduced to one line per transaction or dropped.
+ *
+ * Formatting may be deferred to a background thread, so the arguments passed to a sink must not be modified after the
+ * call. All methods may be called from several threads.
+ */
+public interface OutputSink extends AutoCloseable {
+
+    /**
+     * Writes part of the output of a transaction.
+     */
+    void printf(String format, Object... args);
+
+    default void println(String line) {
+        printf("%s%n", line);
+    }
+
+    default void println() {
+        printf("%n");
+    }
+
+    /**
+     * Writes the one-line summary of a transaction that replaces its output in compact mode. The other modes ignore
+     * it, as the summary repeats what the full output already shows.
+     */
+    void summary(String format, Object... args);
+
+    /**
+     * Writes any pending output. The sink must not be used afterwards.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,38 @@
+package cs4224.output;
+
+import java.io.PrintStream;
+
+/**
+ * Writes the output of transactions to a stream as it comes, on the calling thread.
+ */
+public class PrintStreamSink implements OutputSink {
+    private final PrintStream target;
+
+    public PrintStreamSink(PrintStream target) {
+        this.target = target;
+    }
+
+    @Override
+    public void printf(String format, Object... args) {
+        target.printf(format, args);
+    }
+
+    @Override
+    public void println(String line) {
+        target.println(line);
+    }
+
+    @Override
+    public void println() {
+        target.println();
+    }
+
+    @Override
+    public void summary(String format, Object... args) {
+    }
+
+    @Override
+    public void close() {
+        target.flush();
+    }
+}
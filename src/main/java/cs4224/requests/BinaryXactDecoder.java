@@ -0,0 +1,144 @@
+package cs4224.requests;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Decodes a transaction file compiled by {@link XactFileCompiler} from a memory-mapped buffer.
+ *
+ * A compiled file starts with {@link #MAGIC} and {@link #VERSION}, followed by one record per transaction. A record is
+ * made up of its length in bytes (not counting the length itself), the code of the transaction type, and the
+ * parameters of the transaction in the order of the text format. All the parameters are 4-byte integers, except for
+ * the payment amount of Payment which is an 8-byte double. The order lines of New Order follow its number of items,
+ * each as item id, supplier warehouse id and quantity.
+ */
+class BinaryXactDecoder implements XactDecoder {
+    // Chosen so that it cannot be the start of a text transaction file.
+    static final int MAGIC = 0x89584354;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+
+    private final ByteBuffer buffer;
+    private final String fileName;
+    private final RequestPool pool;
+
+    BinaryXactDecoder(FileChannel channel, String fileName, RequestPool pool) throws IOException {
+        if (channel.size() > Integer.MAX_VALUE) {
+            throw new IOException(fileName + " is too large to be mapped");
+        }
+        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        this.fileName = fileName;
+        this.pool = pool;
+
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException(fileName + " is not a compiled transaction file");
+        }
+        final int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException(String.format("Unsupported version %d of compiled transaction file %s",
+                    version, fileName));
+        }
+    }
+
+    /**
+     * Returns whether the file of the given channel is a compiled transaction file, without changing the position of
+     * the channel.
+     */
+    static boolean isCompiled(FileChannel channel) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                return false;
+            }
+        }
+        return header.getInt(0) == MAGIC;
+    }
+
+    @Override
+    public TransactionRequest next() throws IOException {
+        if (!buffer.hasRemaining()) {
+            return null;
+        }
+
+        final int recordStart = buffer.position();
+        try {
+            final int length = buffer.getInt();
+            final int recordEnd = buffer.position() + length;
+            final TransactionRequest request = decode(TransactionType.fromCode(buffer.get()));
+            if (buffer.position() != recordEnd) {
+                throw new IOException(String.format("Malformed record at offset %d of %s", recordStart, fileName));
+            }
+            return request;
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IOException(String.format("Malformed record at offset %d of %s", recordStart, fileName), e);
+        }
+    }
+
+    private TransactionRequest decode(TransactionType type) {
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown transaction type");
+        }
+
+        switch (type) {
+            case NEW_ORDER: {
+                final NewOrderRequest request = pool.acquire(type);
+                request.setCustomerId(buffer.getInt())
+                        .setWarehouseId(buffer.getInt())
+                        .setDistrictId(buffer.getInt())
+                        .reserve(buffer.getInt());
+                final int[] itemIds = request.getItemIds();
+                final int[] supplierWarehouseIds = request.getSupplierWarehouseIds();
+                final int[] quantities = request.getQuantities();
+                for (int i = 0; i < request.getNumItems(); i++) {
+                    itemIds[i] = buffer.getInt();
+                    supplierWarehouseIds[i] = buffer.getInt();
+                    quantities[i] = buffer.getInt();
+                }
+                return request;
+            }
+            case PAYMENT: {
+                final PaymentRequest request = pool.acquire(type);
+                return request.setWarehouseId(buffer.getInt())
+                        .setDistrictId(buffer.getInt())
+                        .setCustomerId(buffer.getInt())
+                        .setPaymentAmount(buffer.getDouble());
+            }
+            case DELIVERY: {
+                final DeliveryRequest request = pool.acquire(type);
+                return request.setWarehouseId(buffer.getInt())
+                        .setCarrierId(buffer.getInt());
+            }
+            case ORDER_STATUS: {
+                final OrderStatusRequest request = pool.acquire(type);
+                return request.setWarehouseId(buffer.getInt())
+                        .setDistrictId(buffer.getInt())
+                        .setCustomerId(buffer.getInt());
+            }
+            case STOCK_LEVEL: {
+                final StockLevelRequest request = pool.acquire(type);
+                return request.setWarehouseId(buffer.getInt())
+                        .setDistrictId(buffer.getInt())
+                        .setThreshold(buffer.getInt())
+                        .setNumOrders(buffer.getInt());
+            }
+            case POPULAR_ITEM: {
+                final PopularItemRequest request = pool.acquire(type);
+                return request.setWarehouseId(buffer.getInt())
+                        .setDistrictId(buffer.getInt())
+                        .setNumOrders(buffer.getInt());
+            }
+            case TOP_BALANCE:
+                return pool.acquire(type);
+            case RELATED_CUSTOMER: {
+                final RelatedCustomerRequest request = pool.acquire(type);
+                return request.setWarehouseId(buffer.getInt())
+                        .setDistrictId(buffer.getInt())
+                        .setCustomerId(buffer.getInt());
+            }
+            default:
+                throw new IllegalArgumentException("Unknown transaction type: " + type);
+        }
+    }
+}
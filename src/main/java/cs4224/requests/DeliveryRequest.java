@@ -0,0 +1,22 @@
+package cs4224.requests;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+@Getter
+@Setter
+@Accessors(chain = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeliveryRequest extends TransactionRequest {
+    private int warehouseId;
+    private int carrierId;
+
+    @Override
+    public TransactionType getType() {
+        return TransactionType.DELIVERY;
+    }
+}
@@ -0,0 +1,42 @@
+package cs4224.requests;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+@Getter
+@Setter
+@Accessors(chain = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class NewOrderRequest extends TransactionRequest {
+    private int customerId;
+    private int warehouseId;
+    private int districtId;
+    private int numItems;
+    // The i-th order line is made up of the i-th element of each of the arrays below, for i < numItems.
+    private int[] itemIds;
+    private int[] supplierWarehouseIds;
+    private int[] quantities;
+
+    @Override
+    public TransactionType getType() {
+        return TransactionType.NEW_ORDER;
+    }
+
+    /**
+     * Sets the number of order lines, growing the arrays of order lines if they cannot hold that many. The arrays may
+     * be longer than the number of order lines when the request is reused.
+     */
+    public NewOrderRequest reserve(int numItems) {
+        this.numItems = numItems;
+        if (itemIds == null || itemIds.length < numItems) {
+            itemIds = new int[numItems];
+            supplierWarehouseIds = new int[numItems];
+            quantities = new int[numItems];
+        }
+        return this;
+    }
+}
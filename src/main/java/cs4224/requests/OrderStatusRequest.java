@@ -0,0 +1,23 @@
+package cs4224.requests;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+@Getter
+@Setter
+@Accessors(chain = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderStatusRequest extends TransactionRequest {
+    private int warehouseId;
+    private int districtId;
+    private int customerId;
+
+    @Override
+    public TransactionType getType() {
+        return TransactionType.ORDER_STATUS;
+    }
+}
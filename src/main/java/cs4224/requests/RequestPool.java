@@ -0,0 +1,63 @@
+package cs4224.requests;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Free lists of request objects, one per transaction type, so that reading a transaction file does not allocate a new
+ * request for every transaction. Requests are acquired by the reader and released once their transaction has been
+ * executed. It is safe to acquire and release requests from different threads.
+ */
+public class RequestPool {
+    private final Map<TransactionType, BlockingQueue<TransactionRequest>> freeRequests =
+            new EnumMap<>(TransactionType.class);
+
+    /**
+     * @param capacity maximum number of free requests kept for each transaction type. Requests released beyond that
+     *                 are left to the garbage collector.
+     */
+    public RequestPool(int capacity) {
+        for (TransactionType type : TransactionType.values()) {
+            freeRequests.put(type, new ArrayBlockingQueue<>(capacity));
+        }
+    }
+
+    /**
+     * Returns a request of the given type. The fields of the request are left as they were when it was released, so
+     * the caller must set all of them.
+     */
+    @SuppressWarnings("unchecked")
+    public <R extends TransactionRequest> R acquire(TransactionType type) {
+        final TransactionRequest request = freeRequests.get(type).poll();
+        return (R) (request != null ? request : create(type));
+    }
+
+    public void release(TransactionRequest request) {
+        freeRequests.get(request.getType()).offer(request);
+    }
+
+    private static TransactionRequest create(TransactionType type) {
+        switch (type) {
+            case NEW_ORDER:
+                return new NewOrderRequest();
+            case PAYMENT:
+                return new PaymentRequest();
+            case DELIVERY:
+                return new DeliveryRequest();
+            case ORDER_STATUS:
+                return new OrderStatusRequest();
+            case STOCK_LEVEL:
+                return new StockLevelRequest();
+            case POPULAR_ITEM:
+                return new PopularItemRequest();
+            case TOP_BALANCE:
+                return new TopBalanceRequest();
+            case RELATED_CUSTOMER:
+                return new RelatedCustomerRequest();
+            default:
+                throw new IllegalArgumentException("Unknown transaction type: " + type);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package cs4224.requests;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+@Getter
+@Setter
+@Accessors(chain = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockLevelRequest extends TransactionRequest {
+    private int warehouseId;
+    private int districtId;
+    private int threshold;
+    private int numOrders;
+
+    @Override
+    public TransactionType getType() {
+        return TransactionType.STOCK_LEVEL;
+    }
+}
@@ -0,0 +1,252 @@
+package cs4224.requests;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Decodes the lines of a text transaction file byte by byte from a reused buffer, without creating strings.
+ */
+class TextXactDecoder implements XactDecoder {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int EOF = -1;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    private final FileChannel channel;
+    private final String fileName;
+    private final RequestPool pool;
+    private final PrintStream err;
+
+    private final byte[] bytes = new byte[BUFFER_SIZE];
+    private final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    private int position;
+    private int limit;
+    private long lineNumber;
+    // Byte that ended the last field read. Every line starts as if it followed a ','.
+    private int terminator;
+
+    /**
+     * @param err stream to report lines of unknown transaction types to
+     */
+    TextXactDecoder(FileChannel channel, String fileName, RequestPool pool, PrintStream err) {
+        this.channel = channel;
+        this.fileName = fileName;
+        this.pool = pool;
+        this.err = err;
+    }
+
+    @Override
+    public TransactionRequest next() throws IOException {
+        while (true) {
+            final int code = nextByte();
+            if (code == EOF) {
+                return null;
+            }
+            if (code == '\r') {
+                continue;
+            }
+            lineNumber++;
+            if (code == '\n') {
+                continue;
+            }
+
+            int next = nextByte();
+            if (next == '\r') {
+                next = nextByte();
+            }
+            final TransactionType type = next == ',' || next == '\n' || next == EOF
+                    ? TransactionType.fromCode(code) : null;
+            if (type == null) {
+                err.println("Unknown transaction types");
+                skipLine(next);
+                continue;
+            }
+
+            terminator = next;
+            switch (type) {
+                case NEW_ORDER:
+                    return readNewOrder();
+                case PAYMENT: {
+                    final PaymentRequest request = pool.acquire(type);
+                    request.setWarehouseId(readInt())
+                            .setDistrictId(readInt())
+                            .setCustomerId(readInt())
+                            .setPaymentAmount(readDouble());
+                    endLine();
+                    return request;
+                }
+                case DELIVERY: {
+                    final DeliveryRequest request = pool.acquire(type);
+                    request.setWarehouseId(readInt())
+                            .setCarrierId(readInt());
+                    endLine();
+                    return request;
+                }
+                case ORDER_STATUS: {
+                    final OrderStatusRequest request = pool.acquire(type);
+                    request.setWarehouseId(readInt())
+                            .setDistrictId(readInt())
+                            .setCustomerId(readInt());
+                    endLine();
+                    return request;
+                }
+                case STOCK_LEVEL: {
+                    final StockLevelRequest request = pool.acquire(type);
+                    request.setWarehouseId(readInt())
+                            .setDistrictId(readInt())
+                            .setThreshold(readInt())
+                            .setNumOrders(readInt());
+                    endLine();
+                    return request;
+                }
+                case POPULAR_ITEM: {
+                    final PopularItemRequest request = pool.acquire(type);
+                    request.setWarehouseId(readInt())
+                            .setDistrictId(readInt())
+                            .setNumOrders(readInt());
+                    endLine();
+                    return request;
+                }
+                case TOP_BALANCE: {
+                    final TopBalanceRequest request = pool.acquire(type);
+                    endLine();
+                    return request;
+                }
+                case RELATED_CUSTOMER: {
+                    final RelatedCustomerRequest request = pool.acquire(type);
+                    request.setWarehouseId(readInt())
+                            .setDistrictId(readInt())
+                            .setCustomerId(readInt());
+                    endLine();
+                    return request;
+                }
+                default:
+                    throw malformed();
+            }
+        }
+    }
+
+    private NewOrderRequest readNewOrder() throws IOException {
+        final NewOrderRequest request = pool.acquire(TransactionType.NEW_ORDER);
+        request.setCustomerId(readInt())
+                .setWarehouseId(readInt())
+                .setDistrictId(readInt())
+                .reserve(readInt());
+        endLine();
+
+        final int[] itemIds = request.getItemIds();
+        final int[] supplierWarehouseIds = request.getSupplierWarehouseIds();
+        final int[] quantities = request.getQuantities();
+        for (int i = 0; i < request.getNumItems(); i++) {
+            lineNumber++;
+            terminator = ',';
+            itemIds[i] = readInt();
+            supplierWarehouseIds[i] = readInt();
+            quantities[i] = readInt();
+            endLine();
+        }
+        return request;
+    }
+
+    private int readInt() throws IOException {
+        if (terminator != ',') {
+            throw malformed();
+        }
+
+        int c = nextByte();
+        final boolean negative = c == '-';
+        if (negative) {
+            c = nextByte();
+        }
+        if (c < '0' || c > '9') {
+            throw malformed();
+        }
+
+        int value = 0;
+        while (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            c = nextByte();
+        }
+        endField(c);
+        return negative ? -value : value;
+    }
+
+    // The mantissa and the power of ten are both exact, so the division gives the same double as parseDouble.
+    private double readDouble() throws IOException {
+        if (terminator != ',') {
+            throw malformed();
+        }
+
+        int c = nextByte();
+        final boolean negative = c == '-';
+        if (negative) {
+            c = nextByte();
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        while ((c >= '0' && c <= '9') || (c == '.' && scale < 0)) {
+            if (c == '.') {
+                scale = 0;
+            } else {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            }
+            c = nextByte();
+        }
+        if (digits == 0 || digits >= POWERS_OF_TEN.length) {
+            throw malformed();
+        }
+        endField(c);
+
+        final double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private void endField(int c) throws IOException {
+        if (c == '\r') {
+            c = nextByte();
+        }
+        if (c != ',' && c != '\n' && c != EOF) {
+            throw malformed();
+        }
+        terminator = c;
+    }
+
+    // Skips the fields of the current line that are not used.
+    private void endLine() throws IOException {
+        if (terminator == ',') {
+            skipLine(terminator);
+        }
+    }
+
+    private void skipLine(int c) throws IOException {
+        while (c != '\n' && c != EOF) {
+            c = nextByte();
+        }
+    }
+
+    private int nextByte() throws IOException {
+        if (position == limit) {
+            buffer.clear();
+            final int read = channel.read(buffer);
+            if (read <= 0) {
+                return EOF;
+            }
+            position = 0;
+            limit = read;
+        }
+        return bytes[position++] & 0xFF;
+    }
+
+    private IOException malformed() {
+        return new IOException(String.format("Malformed transaction at line %d of %s", lineNumber, fileName));
+    }
+}
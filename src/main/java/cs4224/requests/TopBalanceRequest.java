@@ -0,0 +1,14 @@
+package cs4224.requests;
+
+public class TopBalanceRequest extends TransactionRequest {
+
+    @Override
+    public TransactionType getType() {
+        return TransactionType.TOP_BALANCE;
+    }
+
+    @Override
+    public int getWarehouseId() {
+        return NO_WAREHOUSE;
+    }
+}
@@ -0,0 +1,26 @@
+package cs4224.requests;
+
+/**
+ * Parameters of a single transaction call. Transactions hold no per-call state, so everything that a call needs is
+ * carried by its request.
+ */
+public abstract class TransactionRequest {
+    public static final int NO_WAREHOUSE = -1;
+    public static final int NO_DISTRICT = -1;
+
+    public abstract TransactionType getType();
+
+    /**
+     * Returns the warehouse that the transaction operates on, or {@link #NO_WAREHOUSE} if the transaction is not tied
+     * to a single warehouse.
+     */
+    public abstract int getWarehouseId();
+
+    /**
+     * Returns the district of the warehouse that the transaction operates on, or {@link #NO_DISTRICT} if the
+     * transaction is not tied to a single district.
+     */
+    public int getDistrictId() {
+        return NO_DISTRICT;
+    }
+}
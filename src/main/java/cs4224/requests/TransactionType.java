@@ -0,0 +1,35 @@
+package cs4224.requests;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum TransactionType {
+    NEW_ORDER('N'),
+    PAYMENT('P'),
+    DELIVERY('D'),
+    ORDER_STATUS('O'),
+    STOCK_LEVEL('S'),
+    POPULAR_ITEM('I'),
+    TOP_BALANCE('T'),
+    RELATED_CUSTOMER('R');
+
+    private static final TransactionType[] BY_CODE = new TransactionType[128];
+
+    static {
+        for (TransactionType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    // Code of the transaction type used in the transaction files.
+    private final char code;
+
+    /**
+     * @return the transaction type with the given code, or null if there is none
+     */
+    public static TransactionType fromCode(int code) {
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+}
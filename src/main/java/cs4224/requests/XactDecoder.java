@@ -0,0 +1,14 @@
+package cs4224.requests;
+
+import java.io.IOException;
+
+/**
+ * Decodes the requests of a transaction file one at a time, into requests taken from a {@link RequestPool}.
+ */
+interface XactDecoder {
+
+    /**
+     * @return the next request of the file, or null at the end of the file
+     */
+    TransactionRequest next() throws IOException;
+}
@@ -0,0 +1,196 @@
+package cs4224.requests;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compiles text transaction files into the binary format read by {@link BinaryXactDecoder}. A compiled file is replayed
+ * without any parsing, so that the time to read the transactions does not vary between runs.
+ */
+public class XactFileCompiler {
+    public static final String TEXT_EXTENSION = ".txt";
+    public static final String COMPILED_EXTENSION = ".bin";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final PrintStream out;
+    private final PrintStream err;
+
+    /**
+     * @param out stream to report the compiled files to
+     * @param err stream to report lines of unknown transaction types to
+     */
+    public XactFileCompiler(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Compiles a transaction file, or every {@code .txt} file of a directory.
+     *
+     * @param output the compiled file, or the directory of the compiled files if {@code input} is a directory. If null,
+     *               the compiled files are placed next to the text files, with the {@code .bin} extension.
+     */
+    public void compile(String input, String output) throws IOException {
+        final File inputFile = new File(input);
+        if (!inputFile.isDirectory()) {
+            final File directory = inputFile.getAbsoluteFile().getParentFile();
+            compileFile(inputFile, output != null ? new File(output) : compiledFile(directory, inputFile));
+            return;
+        }
+
+        final File outputDirectory = output != null ? new File(output) : inputFile;
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Unable to create output directory " + outputDirectory);
+        }
+        final File[] files = inputFile.listFiles((directory, name) -> name.endsWith(TEXT_EXTENSION));
+        for (File file : files == null ? new File[0] : files) {
+            compileFile(file, compiledFile(outputDirectory, file));
+        }
+    }
+
+    private void compileFile(File input, File output) throws IOException {
+        final RequestPool pool = new RequestPool(1);
+        long numTransactions = 0;
+
+        try (FileChannel inputChannel = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+             FileChannel outputChannel = FileChannel.open(output.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            if (BinaryXactDecoder.isCompiled(inputChannel)) {
+                throw new IOException(input + " is already compiled");
+            }
+
+            final XactDecoder decoder = new TextXactDecoder(inputChannel, input.getPath(), pool, err);
+            final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.putInt(BinaryXactDecoder.MAGIC).putInt(BinaryXactDecoder.VERSION);
+
+            TransactionRequest request;
+            while ((request = decoder.next()) != null) {
+                final int recordSize = Integer.BYTES + recordLength(request);
+                if (recordSize > buffer.capacity()) {
+                    throw new IOException(String.format("Transaction %d of %s is too large",
+                            numTransactions + 1, input));
+                }
+                if (buffer.remaining() < recordSize) {
+                    flush(buffer, outputChannel);
+                }
+                encode(request, buffer);
+                pool.release(request);
+                numTransactions++;
+            }
+            flush(buffer, outputChannel);
+        }
+
+        out.printf("Compiled %d transactions of %s into %s\n", numTransactions, input, output);
+    }
+
+    private static File compiledFile(File directory, File textFile) {
+        final String name = textFile.getName();
+        final String baseName = name.endsWith(TEXT_EXTENSION)
+                ? name.substring(0, name.length() - TEXT_EXTENSION.length()) : name;
+        return Paths.get(directory.getPath(), baseName + COMPILED_EXTENSION).toFile();
+    }
+
+    private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Length of the record of the request, not counting the length itself.
+    private static int recordLength(TransactionRequest request) {
+        switch (request.getType()) {
+            case NEW_ORDER:
+                return 1 + Integer.BYTES * (4 + 3 * ((NewOrderRequest) request).getNumItems());
+            case PAYMENT:
+                return 1 + Integer.BYTES * 3 + Double.BYTES;
+            case DELIVERY:
+                return 1 + Integer.BYTES * 2;
+            case STOCK_LEVEL:
+                return 1 + Integer.BYTES * 4;
+            case ORDER_STATUS:
+            case POPULAR_ITEM:
+            case RELATED_CUSTOMER:
+                return 1 + Integer.BYTES * 3;
+            case TOP_BALANCE:
+                return 1;
+            default:
+                throw new IllegalArgumentException("Unknown transaction type: " + request.getType());
+        }
+    }
+
+    private static void encode(TransactionRequest request, ByteBuffer buffer) {
+        buffer.putInt(recordLength(request));
+        buffer.put((byte) request.getType().getCode());
+
+        switch (request.getType()) {
+            case NEW_ORDER: {
+                final NewOrderRequest newOrder = (NewOrderRequest) request;
+                buffer.putInt(newOrder.getCustomerId())
+                        .putInt(newOrder.getWarehouseId())
+                        .putInt(newOrder.getDistrictId())
+                        .putInt(newOrder.getNumItems());
+                for (int i = 0; i < newOrder.getNumItems(); i++) {
+                    buffer.putInt(newOrder.getItemIds()[i])
+                            .putInt(newOrder.getSupplierWarehouseIds()[i])
+                            .putInt(newOrder.getQuantities()[i]);
+                }
+                break;
+            }
+            case PAYMENT: {
+                final PaymentRequest payment = (PaymentRequest) request;
+                buffer.putInt(payment.getWarehouseId())
+                        .putInt(payment.getDistrictId())
+                        .putInt(payment.getCustomerId())
+                        .putDouble(payment.getPaymentAmount());
+                break;
+            }
+            case DELIVERY: {
+                final DeliveryRequest delivery = (DeliveryRequest) request;
+                buffer.putInt(delivery.getWarehouseId())
+                        .putInt(delivery.getCarrierId());
+                break;
+            }
+            case ORDER_STATUS: {
+                final OrderStatusRequest orderStatus = (OrderStatusRequest) request;
+                buffer.putInt(orderStatus.getWarehouseId())
+                        .putInt(orderStatus.getDistrictId())
+                        .putInt(orderStatus.getCustomerId());
+                break;
+            }
+            case STOCK_LEVEL: {
+                final StockLevelRequest stockLevel = (StockLevelRequest) request;
+                buffer.putInt(stockLevel.getWarehouseId())
+                        .putInt(stockLevel.getDistrictId())
+                        .putInt(stockLevel.getThreshold())
+                        .putInt(stockLevel.getNumOrders());
+                break;
+            }
+            case POPULAR_ITEM: {
+                final PopularItemRequest popularItem = (PopularItemRequest) request;
+                buffer.putInt(popularItem.getWarehouseId())
+                        .putInt(popularItem.getDistrictId())
+                        .putInt(popularItem.getNumOrders());
+                break;
+            }
+            case TOP_BALANCE:
+                break;
+            case RELATED_CUSTOMER: {
+                final RelatedCustomerRequest relatedCustomer = (RelatedCustomerRequest) request;
+                buffer.putInt(relatedCustomer.getWarehouseId())
+                        .putInt(relatedCustomer.getDistrictId())
+                        .putInt(relatedCustomer.getCustomerId());
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown transaction type: " + request.getType());
+        }
+    }
+}
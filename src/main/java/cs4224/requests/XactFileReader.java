@@ -0,0 +1,98 @@
+package cs4224.requests;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads the requests of a transaction file on a separate thread, so that reading stays off the path of the
+ * transactions. The file is decoded straight into requests taken from a {@link RequestPool}, and the requests are
+ * handed over through a bounded queue. Both text files and files compiled by {@link XactFileCompiler} can be read; the
+ * format is detected from the start of the file.
+ */
+public class XactFileReader implements AutoCloseable {
+    // Put in the queue after the last request of the file.
+    private static final TransactionRequest END_OF_FILE = new TopBalanceRequest();
+
+    private final String fileName;
+    private final RequestPool pool;
+    private final PrintStream err;
+    private final BlockingQueue<TransactionRequest> requests;
+    private final Thread producer;
+
+    private volatile Exception failure;
+
+    /**
+     * @param capacity maximum number of requests read ahead of the consumer
+     * @param err      stream to report lines of unknown transaction types to
+     */
+    public XactFileReader(String fileName, RequestPool pool, int capacity, PrintStream err) {
+        this.fileName = fileName;
+        this.pool = pool;
+        this.err = err;
+        this.requests = new ArrayBlockingQueue<>(capacity);
+        this.producer = new Thread(this::produce, "xact-reader-" + Paths.get(fileName).getFileName());
+        this.producer.setDaemon(true);
+    }
+
+    public void start() {
+        producer.start();
+    }
+
+    /**
+     * Returns the next request of the file, waiting for it to be read if needed. The request should be released to
+     * the pool once it is no longer used.
+     *
+     * @return the next request, or null once every request of the file has been returned
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public TransactionRequest take() throws IOException, InterruptedException {
+        final TransactionRequest request = requests.take();
+        if (request != END_OF_FILE) {
+            return request;
+        }
+
+        // Leave the marker in the queue so that later calls also see the end of the file.
+        requests.offer(END_OF_FILE);
+        if (failure != null) {
+            throw new IOException("Unable to read transaction file " + fileName, failure);
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        producer.interrupt();
+    }
+
+    private void produce() {
+        try (FileChannel fileChannel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            final XactDecoder decoder = openDecoder(fileChannel);
+            TransactionRequest request;
+            while ((request = decoder.next()) != null) {
+                requests.put(request);
+            }
+        } catch (InterruptedException e) {
+            return;
+        } catch (Exception e) {
+            failure = e;
+        }
+
+        try {
+            requests.put(END_OF_FILE);
+        } catch (InterruptedException e) {
+            // The consumer has stopped reading.
+        }
+    }
+
+    private XactDecoder openDecoder(FileChannel channel) throws IOException {
+        if (BinaryXactDecoder.isCompiled(channel)) {
+            return new BinaryXactDecoder(channel, fileName, pool);
+        }
+        return new TextXactDecoder(channel, fileName, pool, err);
+    }
+}
@@ -1,15 +1,42 @@
 package cs4224.transactions;
 
 import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import cs4224.output.OutputSink;
+import cs4224.requests.TransactionRequest;
+import cs4224.utils.Constants;
 
-public abstract class BaseTransaction {
+/**
+ * Base class of all transactions. A transaction holds no per-call state, so a single instance can be shared and
+ * executed by many threads at the same time.
+ */
+public abstract class BaseTransaction<R extends TransactionRequest> {
     protected final CqlSession session;
 
     public BaseTransaction(final CqlSession session) {
         this.session = session;
     }
 
-    public abstract void execute(final String[] dataLines, final String[] parameters);
+    /**
+     * Prepares a query of a read-only transaction. Its statements are idempotent, so that the driver may retry them and
+     * hedge them on another replica, and are executed with the {@link Constants#READ_ONLY_PROFILE} profile.
+     */
+    protected PreparedStatement prepareReadOnly(final String query) {
+        return session.prepare(readOnly(query));
+    }
+
+    static SimpleStatement readOnly(final String query) {
+        return SimpleStatement.builder(query)
+                .setIdempotence(true)
+                .setExecutionProfileName(Constants.READ_ONLY_PROFILE)
+                .build();
+    }
+
+    /**
+     * Executes the transaction described by the given request and writes its result to {@code out}.
+     */
+    public abstract void execute(final R request, final OutputSink out);
 
     public abstract String getType();
 
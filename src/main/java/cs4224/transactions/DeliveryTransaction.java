@@ -1,9 +1,20 @@
 package cs4224.transactions;
 
 import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchStatementBuilder;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
-import com.datastax.oss.driver.api.core.cql.ResultSet;
 import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import cs4224.ParallelExecutor;
+import cs4224.entities.Customer;
+import cs4224.output.OutputSink;
+import cs4224.requests.DeliveryRequest;
+import cs4224.utils.ConditionalUpdateException;
+import cs4224.utils.ConditionalUpdater;
 import cs4224.utils.Constants;
 
 import java.math.BigDecimal;
@@ -11,37 +22,63 @@ import java.text.Format;
 import java.text.SimpleDateFormat;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
-public class DeliveryTransaction extends BaseTransaction {
+public class DeliveryTransaction extends BaseTransaction<DeliveryRequest> {
     private static final int NO_OF_DISTRICTS = 10;
+    // Number of districts that are delivered at the same time.
+    private static final int MAX_CONCURRENT_DISTRICTS = 5;
     private static final Format formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
-    PreparedStatement getOldestYtdOrderQuery;
-    PreparedStatement updateOrderQuery;
-    PreparedStatement updateOrderByCustomerQuery;
-    PreparedStatement getOrderLinesQuery;
-    PreparedStatement updateOrderLinesQuery;
-    PreparedStatement getCustomerDetailsQuery;
-    PreparedStatement updateCustomerDetailsQuery;
-
-    public DeliveryTransaction(CqlSession session) {
+    private final PreparedStatement getNextOrderIdQuery;
+    private final PreparedStatement getOldestYtdOrderQuery;
+    private final PreparedStatement removeUndeliveredOrderQuery;
+    private final PreparedStatement updateOrderQuery;
+    private final PreparedStatement updateOrderByCustomerQuery;
+    private final PreparedStatement updateLatestOrderQuery;
+    private final PreparedStatement getOrderLinesQuery;
+    private final PreparedStatement updateOrderLinesQuery;
+    private final PreparedStatement getCustomerDetailsQuery;
+    private final PreparedStatement updateCustomerDetailsQuery;
+    private final PreparedStatement addCustomerDeliveryQuery;
+    private final ConditionalUpdater conditionalUpdater;
+    // Orders of each district that are known to be delivered, so that the queue is not read from its first id, which
+    // would scan the tombstone of every order delivered since the queue was compacted.
+    private final Map<Long, DeliveredOrders> deliveredOrders = new ConcurrentHashMap<>();
+
+    public DeliveryTransaction(CqlSession session, ConditionalUpdater conditionalUpdater) {
         super(session);
+        this.conditionalUpdater = conditionalUpdater;
 
+        // Every order below the next order id of the district is created, i.e. in the queue unless delivered.
+        getNextOrderIdQuery = session.prepare(
+                "SELECT D_NEXT_O_ID " +
+                        "FROM district " +
+                        "WHERE D_W_ID = :d_w_id and D_ID = :d_id"
+        );
+        // Head of the queue of undelivered orders of the district, after the given order id.
         getOldestYtdOrderQuery = session.prepare(
-                "SELECT * " +
-                        "FROM orders " +
-                        "WHERE O_W_ID = :o_w_id and O_D_ID = :o_d_id and O_CARRIER_ID = -1 " +
+                "SELECT O_ID, O_C_ID " +
+                        "FROM undelivered_order " +
+                        "WHERE O_W_ID = :o_w_id and O_D_ID = :o_d_id and O_ID > :after_o_id " +
                         "LIMIT 1"
         );
+        removeUndeliveredOrderQuery = session.prepare(
+                "DELETE FROM undelivered_order " +
+                        "WHERE O_W_ID = :o_w_id and O_D_ID = :o_d_id and O_ID = :o_id"
+        );
+        // O_DELIVERY_ID is in the condition so that a claim that is not applied returns the delivery that made it.
         updateOrderQuery = session.prepare(
                 "UPDATE orders " +
-                        "SET O_CARRIER_ID = :o_carrier_id " +
+                        "SET O_CARRIER_ID = :o_carrier_id, O_DELIVERY_ID = :o_delivery_id " +
                         "WHERE O_W_ID = :o_w_id AND O_D_ID = :o_d_id AND O_ID = :o_id " +
-                        "IF O_CARRIER_ID = :null_delivery_id"
+                        "IF O_CARRIER_ID = :null_delivery_id AND O_DELIVERY_ID = null"
         );
         updateOrderByCustomerQuery = session.prepare(
                 "UPDATE order_by_customer " +
@@ -49,6 +86,13 @@ public class DeliveryTransaction extends BaseTransaction {
                         "WHERE C_W_ID = :c_w_id AND C_D_ID = :c_d_id " +
                         "AND C_ID = :c_id AND O_ID = :o_id"
         );
+        // Only applies if the order is still the latest order of the customer, as it is written with a lower timestamp.
+        updateLatestOrderQuery = session.prepare(
+                "UPDATE customer_latest_order " +
+                        "USING TIMESTAMP :timestamp " +
+                        "SET O_CARRIER_ID = :o_carrier_id, O_DELIVERY_D = :o_delivery_d " +
+                        "WHERE C_W_ID = :c_w_id AND C_D_ID = :c_d_id AND C_ID = :c_id"
+        );
         getOrderLinesQuery = session.prepare(
                 "SELECT OL_NUMBER, OL_AMOUNT " +
                         "FROM order_line " +
@@ -60,163 +104,275 @@ public class DeliveryTransaction extends BaseTransaction {
                         "WHERE OL_W_ID = :ol_w_id and OL_D_ID = :ol_d_id and OL_O_ID = :ol_o_id and OL_NUMBER = :ol_number"
         );
         getCustomerDetailsQuery = session.prepare(
-                "SELECT C_BALANCE, C_DELIVERY_CNT " +
+                "SELECT C_BALANCE, C_WRITE_ID " +
                         "FROM customer " +
                         "WHERE C_W_ID = :c_w_id and C_D_ID = :c_d_id and C_ID = :c_id"
         );
+        // C_WRITE_ID is in the condition so that an update that is not applied returns the update that wrote the
+        // balance, as payments and deliveries may write the same balance.
         updateCustomerDetailsQuery = session.prepare(
                 "UPDATE customer " +
-                        "SET C_BALANCE = :c_balance, C_DELIVERY_CNT = :c_delivery_cnt " +
+                        "SET C_BALANCE = :c_balance, C_WRITE_ID = :c_write_id " +
                         "WHERE C_W_ID = :c_w_id and C_D_ID = :c_d_id and C_ID = :c_id " +
-                        "IF C_BALANCE = :original_c_balance"
+                        "IF C_BALANCE = :original_c_balance AND C_WRITE_ID = :original_c_write_id"
+        );
+        addCustomerDeliveryQuery = session.prepare(
+                "UPDATE customer_counter " +
+                        "SET C_DELIVERY_CNT = C_DELIVERY_CNT + 1 " +
+                        "WHERE C_W_ID = :c_w_id and C_D_ID = :c_d_id and C_ID = :c_id"
         );
 
     }
 
     @Override
-    public void execute(String[] dataLines, String[] parameters) {
-        final int warehouseId = Integer.parseInt(parameters[1]);
-        final int carrierId = Integer.parseInt(parameters[2]);
+    public void execute(DeliveryRequest request, OutputSink out) {
+        final int warehouseId = request.getWarehouseId();
+        final int carrierId = request.getCarrierId();
 
-        List<Integer> districts = IntStream.rangeClosed(1, NO_OF_DISTRICTS).boxed().collect(Collectors.toList());
+        // Every district is delivered by an asynchronous pipeline, with up to MAX_CONCURRENT_DISTRICTS in flight.
+        final AtomicInteger nextDistrict = new AtomicInteger(1);
+        final ParallelExecutor executor = new ParallelExecutor();
+        for (int i = 0; i < Math.min(MAX_CONCURRENT_DISTRICTS, NO_OF_DISTRICTS); i++) {
+            executor.submit(() -> deliverNextDistricts(warehouseId, carrierId, nextDistrict, out));
+        }
+        executor.execute();
+    }
 
-        districts.parallelStream().forEach(districtNo -> {
-            Row row = getLatestOldestYtdOrder(warehouseId, districtNo);
+    // Delivers the next district that is not taken yet, and then the next ones, one at a time.
+    private CompletionStage<Void> deliverNextDistricts(int warehouseId, int carrierId, AtomicInteger nextDistrict,
+                                                       OutputSink out) {
+        final int districtNo = nextDistrict.getAndIncrement();
+        if (districtNo > NO_OF_DISTRICTS) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return deliverDistrict(warehouseId, districtNo, carrierId, out)
+                .thenCompose(ignored -> deliverNextDistricts(warehouseId, carrierId, nextDistrict, out));
+    }
 
-            if (row == null) {
-                System.out.printf("Skip district (%d, %d) as there is no undelivered order\n",
-                        warehouseId, districtNo);
-                return;
-            }
-            int orderId = row.getInt("O_ID");
-            int customerId = row.getInt("O_C_ID");
-
-            int numRetries = 0;
-            boolean isApplied = false;
-
-            while (numRetries < Constants.MAX_RETRIES && !isApplied) {
-                ResultSet updateResult = updateOrder(warehouseId, districtNo, orderId, carrierId);
-                isApplied = updateResult.wasApplied();
-                if (!isApplied) {
-                    row = getLatestOldestYtdOrder(warehouseId, districtNo);
-                    if (row == null) {
-                        System.out.printf("Skip district (%d, %d) as there is no undelivered order\n",
+    private CompletionStage<Void> deliverDistrict(int warehouseId, int districtNo, int carrierId, OutputSink out) {
+        final DeliveredOrders delivered = deliveredOrders.computeIfAbsent(
+                OrderIdAllocator.key(warehouseId, districtNo), k -> new DeliveredOrders());
+        // Both are read before the queue, so that every order between them is in the queue unless delivered.
+        final int deliveredUpTo = delivered.getUpTo();
+        final int nextOrderId = delivered.getNextOrderId();
+        return claimOldestOrder(warehouseId, districtNo, carrierId, deliveredUpTo, nextOrderId, delivered, 1)
+                .handle((order, error) -> {
+                    if (error != null) {
+                        final Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        if (!(cause instanceof ConditionalUpdateException)) {
+                            throw error instanceof CompletionException
+                                    ? (CompletionException) error : new CompletionException(error);
+                        }
+                        out.printf("Skip district (%d, %d) as its orders were processed by other delivery " +
+                                "transactions\n", warehouseId, districtNo);
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    if (order == null) {
+                        out.printf("Skip district (%d, %d) as there is no undelivered order\n",
                                 warehouseId, districtNo);
-                        return;
+                        return CompletableFuture.<Void>completedFuture(null);
                     }
+                    return deliverOrder(warehouseId, districtNo, order.getInt("O_ID"), order.getInt("O_C_ID"),
+                            carrierId);
+                })
+                .thenCompose(Function.identity());
+    }
 
-                    orderId = row.getInt("O_ID");
-                    customerId = row.getInt("O_C_ID");
-                }
-                numRetries++;
+    /**
+     * Sets the carrier of the oldest undelivered order of the district after the given order id, and returns the order,
+     * or null if there is none. If another delivery takes the order first, the order is delivered, so it is removed from
+     * the queue in case the other delivery did not get to it, and the next undelivered order is taken instead.
+     */
+    private CompletionStage<Row> claimOldestOrder(int warehouseId, int districtNo, int carrierId, int afterOrderId,
+                                                  int nextOrderId, DeliveredOrders delivered, int attempt) {
+        return getLatestOldestYtdOrder(warehouseId, districtNo, afterOrderId).thenCompose(order -> {
+            if (order == null || order.getInt("O_ID") >= nextOrderId) {
+                refreshNextOrderId(warehouseId, districtNo, delivered);
             }
-
-            if (!isApplied) {
-                System.out.printf("Skip order (%d, %d, %d) as it was processed by another delivery transaction\n",
-                        warehouseId, districtNo, orderId);
-                return;
+            if (order == null) {
+                return CompletableFuture.completedFuture(null);
             }
+            final int orderId = order.getInt("O_ID");
+            // Other deliveries may have the same carrier, so only the id of this claim tells that it was applied.
+            final UUID deliveryId = Uuids.random();
+            return conditionalUpdater.updateAsync("Delivery order", order,
+                            o -> updateOrder(warehouseId, districtNo, orderId, carrierId, deliveryId),
+                            (o, current) -> null,
+                            (o, current) -> deliveryId.equals(current.getUuid("O_DELIVERY_ID")))
+                    .thenCompose(claimed -> {
+                        // Either way the order is delivered, by this delivery or by another.
+                        if (orderId < nextOrderId) {
+                            delivered.advance(afterOrderId, orderId);
+                        }
+                        if (claimed != null) {
+                            return CompletableFuture.completedFuture(claimed);
+                        }
+                        // The next order is only taken once the order is removed, so that a failed removal fails the
+                        // delivery of the district.
+                        return removeUndeliveredOrder(warehouseId, districtNo, orderId).thenCompose(ignored -> {
+                            if (attempt >= Constants.MAX_CAS_ATTEMPTS) {
+                                final CompletableFuture<Row> failed = new CompletableFuture<>();
+                                failed.completeExceptionally(
+                                        new ConditionalUpdateException("Delivery order", attempt, null));
+                                return failed;
+                            }
+                            return claimOldestOrder(warehouseId, districtNo, carrierId, orderId, nextOrderId,
+                                    delivered, attempt + 1);
+                        });
+                    });
+        });
+    }
 
-            updateOrderByCustomer(warehouseId, districtNo, orderId, customerId, carrierId);
-
-
-            BigDecimal olAmount = new BigDecimal(0.0);
-            List<Integer> ol_numbers = new ArrayList<>();
-            List<Row> order_lines = session.execute(
-                    getOrderLinesQuery
-                            .boundStatementBuilder()
-                            .setInt("ol_w_id", warehouseId)
-                            .setInt("ol_d_id", districtNo)
-                            .setInt("ol_o_id", orderId)
-                            .build()
-            ).all();
-
-            for (Row ol : order_lines) {
-                olAmount = olAmount.add(ol.getBigDecimal("OL_AMOUNT"));
-                ol_numbers.add(ol.getInt("OL_NUMBER"));
+    // Reads the next order id of the district for the deliveries that read the queue afterwards, as the head of the
+    // queue is past the one read before.
+    private void refreshNextOrderId(int warehouseId, int districtNo, DeliveredOrders delivered) {
+        session.executeAsync(
+                getNextOrderIdQuery
+                        .boundStatementBuilder()
+                        .setInt("d_w_id", warehouseId)
+                        .setInt("d_id", districtNo)
+                        .build()
+        ).thenAccept(resultSet -> {
+            final Row district = resultSet.one();
+            if (district != null) {
+                delivered.setNextOrderId(district.getInt("D_NEXT_O_ID"));
             }
+        });
+    }
 
-            Instant d = (new Date()).toInstant();
-            int finalOrderId = orderId;
-            ol_numbers.parallelStream().forEach(ol_number -> {
-                session.execute(
-                        updateOrderLinesQuery
-                                .boundStatementBuilder()
-                                .setInstant("ol_delivery_d", d)
-                                .setInt("ol_w_id", warehouseId)
-                                .setInt("ol_d_id", districtNo)
-                                .setInt("ol_o_id", finalOrderId)
-                                .setInt("ol_number", ol_number)
-                                .build()
-                );
-            });
-
-            Row cust = session.execute(
-                    getCustomerDetailsQuery
-                            .boundStatementBuilder()
-                            .setInt("c_w_id", warehouseId)
-                            .setInt("c_d_id", districtNo)
-                            .setInt("c_id", customerId)
-                            .build()
-            ).one();
-
-            numRetries = 0;
-            isApplied = false;
-
-
-            while (numRetries < Constants.MAX_RETRIES && !isApplied) {
-                BigDecimal customerBalance = cust.getBigDecimal("C_BALANCE");
-                int newDelCnt = cust.getInt("C_DELIVERY_CNT") + 1;
-                ResultSet updateRes = updateCustomerDetails(warehouseId, districtNo, customerId, newDelCnt, customerBalance, olAmount);
-                isApplied = updateRes.wasApplied();
-                if (!isApplied) {
-                    cust = updateRes.one();
-                }
-                numRetries++;
+    /**
+     * Delivers a claimed order. The order lines are read and updated with one unlogged batch, as they are all in the
+     * partition of the order, while the customer is read, and the balance of the customer is updated once the amount of
+     * the order is known. Everything else only depends on the order, and is executed at the same time.
+     */
+    private CompletionStage<Void> deliverOrder(int warehouseId, int districtNo, int orderId, int customerId,
+                                               int carrierId) {
+        final Instant deliveryDate = Instant.now();
+        final CompletionStage<AsyncResultSet> dequeue = removeUndeliveredOrder(warehouseId, districtNo, orderId);
+        final CompletionStage<AsyncResultSet> orderByCustomer =
+                updateOrderByCustomer(warehouseId, districtNo, orderId, customerId, carrierId);
+        final CompletionStage<AsyncResultSet> latestOrder = session.executeAsync(
+                updateLatestOrderQuery
+                        .boundStatementBuilder()
+                        .setLong("timestamp", NewOrderTransaction.latestOrderTimestamp(orderId) + 1)
+                        .setInt("o_carrier_id", carrierId)
+                        .setInstant("o_delivery_d", deliveryDate)
+                        .setInt("c_w_id", warehouseId)
+                        .setInt("c_d_id", districtNo)
+                        .setInt("c_id", customerId)
+                        .build());
+        // The number of deliveries is a counter, which is incremented without being read.
+        final CompletionStage<AsyncResultSet> delivery = session.executeAsync(
+                addCustomerDeliveryQuery
+                        .boundStatementBuilder()
+                        .setInt("c_w_id", warehouseId)
+                        .setInt("c_d_id", districtNo)
+                        .setInt("c_id", customerId)
+                        .build());
+
+        final CompletionStage<BigDecimal> olAmount = session.executeAsync(
+                getOrderLinesQuery
+                        .boundStatementBuilder()
+                        .setInt("ol_w_id", warehouseId)
+                        .setInt("ol_d_id", districtNo)
+                        .setInt("ol_o_id", orderId)
+                        .build()
+        ).thenCompose(orderLines -> {
+            BigDecimal amount = new BigDecimal(0.0);
+            final BatchStatementBuilder batch = BatchStatement.builder(DefaultBatchType.UNLOGGED);
+            for (Row ol : orderLines.currentPage()) {
+                amount = amount.add(ol.getBigDecimal("OL_AMOUNT"));
+                batch.addStatement(updateOrderLinesQuery
+                        .boundStatementBuilder()
+                        .setInstant("ol_delivery_d", deliveryDate)
+                        .setInt("ol_w_id", warehouseId)
+                        .setInt("ol_d_id", districtNo)
+                        .setInt("ol_o_id", orderId)
+                        .setInt("ol_number", ol.getInt("OL_NUMBER"))
+                        .build());
             }
+            final BigDecimal total = amount;
+            return batch.getStatementsCount() == 0
+                    ? CompletableFuture.completedFuture(total)
+                    : session.executeAsync(batch.build()).thenApply(ignored -> total);
         });
-    }
 
-    private ResultSet updateCustomerDetails(int warehouseId, int districtNo, int customerId, int newDelCnt,
-                                            BigDecimal customerBalance, BigDecimal olAmount) {
-        BigDecimal newAmount = customerBalance.add(olAmount);
-        return session.execute(
-                updateCustomerDetailsQuery
+        final CompletionStage<Customer> customerBalance = session.executeAsync(
+                getCustomerDetailsQuery
                         .boundStatementBuilder()
-                        .setTimeout(Duration.ofSeconds(40))
-                        .setBigDecimal("c_balance", newAmount)
-                        .setInt("c_delivery_cnt", newDelCnt)
                         .setInt("c_w_id", warehouseId)
                         .setInt("c_d_id", districtNo)
                         .setInt("c_id", customerId)
-                        .setBigDecimal("original_c_balance", customerBalance)
                         .build()
-        );
+        ).thenApply(resultSet -> Customer.map(resultSet.one()));
+
+        // A failed update returns the balance and the write id of the customer, which is all that a retry needs.
+        final UUID writeId = Uuids.random();
+        final CompletionStage<Customer> customer = olAmount.thenCombine(customerBalance,
+                (amount, balance) -> conditionalUpdater.updateAsync("Delivery customer", balance,
+                        c -> updateCustomerDetails(warehouseId, districtNo, customerId, c, amount, writeId),
+                        (c, current) -> Customer.map(current),
+                        (c, current) -> writeId.equals(Customer.map(current).getWriteId())))
+                .thenCompose(Function.identity());
+
+        return CompletableFuture.allOf(dequeue.toCompletableFuture(), orderByCustomer.toCompletableFuture(),
+                latestOrder.toCompletableFuture(), delivery.toCompletableFuture(), customer.toCompletableFuture());
     }
 
-    private Row getLatestOldestYtdOrder(int warehouseId, int districtNo) {
-        return session.execute(
+    private BoundStatement updateCustomerDetails(int warehouseId, int districtNo, int customerId, Customer original,
+                                                 BigDecimal olAmount, UUID writeId) {
+        return updateCustomerDetailsQuery
+                .boundStatementBuilder()
+                .setTimeout(Duration.ofSeconds(40))
+                .setBigDecimal("c_balance", original.getBalance().add(olAmount))
+                .setUuid("c_write_id", writeId)
+                .setInt("c_w_id", warehouseId)
+                .setInt("c_d_id", districtNo)
+                .setInt("c_id", customerId)
+                .setBigDecimal("original_c_balance", original.getBalance())
+                .setUuid("original_c_write_id", original.getWriteId())
+                .build();
+    }
+
+    private CompletionStage<Row> getLatestOldestYtdOrder(int warehouseId, int districtNo, int afterOrderId) {
+        return session.executeAsync(
                 getOldestYtdOrderQuery
                         .boundStatementBuilder()
                         .setInt("o_w_id", warehouseId)
                         .setInt("o_d_id", districtNo)
+                        .setInt("after_o_id", afterOrderId)
+                        .build()
+        ).thenApply(AsyncResultSet::one);
+    }
+
+    private CompletionStage<AsyncResultSet> removeUndeliveredOrder(int warehouseId, int districtNo, int orderId) {
+        return session.executeAsync(
+                removeUndeliveredOrderQuery
+                        .boundStatementBuilder()
+                        .setInt("o_w_id", warehouseId)
+                        .setInt("o_d_id", districtNo)
+                        .setInt("o_id", orderId)
                         .build()
-        ).one();
+        );
     }
 
-    private ResultSet updateOrder(int warehouseId, int districtNo, int orderId, int carrierId) {
-        return session.execute(updateOrderQuery
+    private BoundStatement updateOrder(int warehouseId, int districtNo, int orderId, int carrierId,
+                                       UUID deliveryId) {
+        return updateOrderQuery
                 .boundStatementBuilder()
                 .setInt("o_carrier_id", carrierId)
+                .setUuid("o_delivery_id", deliveryId)
                 .setInt("o_w_id", warehouseId)
                 .setInt("o_d_id", districtNo)
                 .setInt("o_id", orderId)
                 .setInt("null_delivery_id", Constants.NULL_DELIVERY_ID)
-                .build());
+                .build();
     }
 
-    private void updateOrderByCustomer(int warehouseId, int districtNo, int orderId, int customerId, int carrierId) {
-        session.execute(
+    private CompletionStage<AsyncResultSet> updateOrderByCustomer(int warehouseId, int districtNo, int orderId,
+                                                                  int customerId, int carrierId) {
+        return session.executeAsync(
                 updateOrderByCustomerQuery
                         .boundStatementBuilder()
                         .setInt("o_carrier_id", carrierId)
@@ -232,4 +388,35 @@ public class DeliveryTransaction extends BaseTransaction {
     public String getType() {
         return "Delivery";
     }
+
+    /**
+     * Orders of a district that are known to be delivered. If the head of the queue after a delivered order is below
+     * a next order id read before the queue, every order between them was in the queue and is delivered, as the next
+     * order id only moves past orders that are created.
+     */
+    private static class DeliveredOrders {
+        // Every order up to this id is delivered.
+        private int upTo;
+        // Next order id of the district, which only grows.
+        private int nextOrderId;
+
+        private synchronized int getUpTo() {
+            return upTo;
+        }
+
+        private synchronized int getNextOrderId() {
+            return nextOrderId;
+        }
+
+        private synchronized void setNextOrderId(int nextOrderId) {
+            this.nextOrderId = Math.max(this.nextOrderId, nextOrderId);
+        }
+
+        // The given order, which was the head of the queue after the other one, is delivered.
+        private synchronized void advance(int afterOrderId, int orderId) {
+            if (upTo >= afterOrderId) {
+                upTo = Math.max(upTo, orderId);
+            }
+        }
+    }
 }
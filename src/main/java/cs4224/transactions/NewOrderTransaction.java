@@ -1,9 +1,21 @@
 package cs4224.transactions;
 
 import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.datastax.oss.driver.api.core.cql.ResultSet;
 import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.data.UdtValue;
+import com.datastax.oss.driver.api.core.type.ListType;
+import com.datastax.oss.driver.api.core.type.UserDefinedType;
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import cs4224.ParallelExecutor;
+import cs4224.cache.ItemCatalog;
+import cs4224.cache.ReferenceData;
+import cs4224.output.OutputSink;
+import cs4224.requests.NewOrderRequest;
+import cs4224.utils.ConditionalUpdater;
 import cs4224.utils.Constants;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
@@ -16,32 +28,42 @@ import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
-public class NewOrderTransaction extends BaseTransaction {
-    private int customerId;
-    private int warehouseId;
-    private int districtId;
-    private int noOfItems;
-    PreparedStatement getDNextOidQuery;
-    PreparedStatement incrementDNextOidQuery;
-    PreparedStatement createOrderQuery;
-    PreparedStatement getStockInfoQuery;
-    List<PreparedStatement> getStockDistrictInfoQueriesList;
-    PreparedStatement updateStockQuery;
-    PreparedStatement getItemInfoQuery;
-    PreparedStatement createOrderLineQuery;
-    PreparedStatement createOrderByItemQuery;
-    PreparedStatement createOrderByCustomerQuery;
-    PreparedStatement getWarehouseInfoQuery;
-    PreparedStatement getCustomerInfoQuery;
-    PreparedStatement checkIfOrderLineExistsQuery;
-    PreparedStatement checkIfOrderByItemExistsQuery;
+public class NewOrderTransaction extends BaseTransaction<NewOrderRequest> {
+    // Number of order lines of a transaction that are processed at the same time. Each of them has up to three queries
+    // in flight, so this bounds the load that a single new order puts on the cluster.
+    private static final int MAX_CONCURRENT_ORDER_LINES = 5;
+
+    private final PreparedStatement createOrderQuery;
+    private final PreparedStatement getStockInfoQuery;
+    private final List<PreparedStatement> getStockDistrictInfoQueriesList;
+    private final PreparedStatement updateStockQuery;
+    private final PreparedStatement addStockOrderQuery;
+    private final PreparedStatement getItemInfoQuery;
+    private final PreparedStatement createOrderLineQuery;
+    private final PreparedStatement createOrderByItemQuery;
+    private final PreparedStatement createOrderByCustomerQuery;
+    private final PreparedStatement enqueueUndeliveredOrderQuery;
+    private final PreparedStatement saveLatestOrderQuery;
+    private final UserDefinedType orderLineItemType;
+    private final PreparedStatement getCustomerInfoQuery;
+    private final PreparedStatement checkIfOrderLineExistsQuery;
+    private final PreparedStatement checkIfOrderByItemExistsQuery;
+    private final ItemCatalog itemCatalog;
+    private final ReferenceData referenceData;
+    private final OrderIdAllocator orderIdAllocator;
+    private final RecentOrderItems recentOrderItems;
+    private final ConditionalUpdater conditionalUpdater;
 
     @RequiredArgsConstructor
     @Accessors(fluent = true) @Getter
-    private class NewOrderLine {
+    private static class NewOrderLine {
         private final int itemId;
         private final int supplierWarehouseId;
         private final int quantity;
@@ -49,14 +71,26 @@ public class NewOrderTransaction extends BaseTransaction {
 
     @RequiredArgsConstructor
     @Accessors(fluent = true) @Getter
-    private class UpdateStockResult {
-        private final BigDecimal originalQuantity;
-        private final boolean isSuccessful;
+    private static class ItemInfo {
+        private final String name;
+        private final BigDecimal price;
     }
 
+    // Values of the stock row that an update of its quantity is computed from.
     @RequiredArgsConstructor
     @Accessors(fluent = true) @Getter
-    private class ItemResultInfo {
+    private static class StockInfo {
+        private final BigDecimal quantity;
+        private final UUID writeId;
+
+        private static StockInfo of(Row row) {
+            return new StockInfo(row.getBigDecimal("S_QUANTITY"), row.getUuid("S_WRITE_ID"));
+        }
+    }
+
+    @RequiredArgsConstructor
+    @Accessors(fluent = true) @Getter
+    private static class ItemResultInfo {
         private final int itemId;
         private final String itemName;
         private final int supplierWarehouseId;
@@ -67,7 +101,7 @@ public class NewOrderTransaction extends BaseTransaction {
 
     @RequiredArgsConstructor
     @Accessors(fluent = true) @Getter
-    private class CustomerInfo {
+    private static class CustomerInfo {
         private final String lastName;
         private final String credit;
         private final BigDecimal discount;
@@ -75,14 +109,7 @@ public class NewOrderTransaction extends BaseTransaction {
 
     @RequiredArgsConstructor
     @Accessors(fluent = true) @Getter
-    private class DistrictInfo {
-        private final Integer nextOid;
-        private final BigDecimal tax;
-    }
-
-    @RequiredArgsConstructor
-    @Accessors(fluent = true) @Getter
-    private class NewOrderSummary {
+    private static class NewOrderSummary {
         private final CustomerInfo customerInfo;
         private final BigDecimal warehouseTax;
         private final BigDecimal districtTax;
@@ -92,21 +119,15 @@ public class NewOrderTransaction extends BaseTransaction {
         private final List<ItemResultInfo> itemResultInfoList;
     }
 
-    public NewOrderTransaction(CqlSession session) {
+    public NewOrderTransaction(CqlSession session, ItemCatalog itemCatalog, ReferenceData referenceData,
+                               OrderIdAllocator orderIdAllocator, RecentOrderItems recentOrderItems,
+                               ConditionalUpdater conditionalUpdater) {
         super(session);
-
-        getDNextOidQuery = session.prepare(
-                "SELECT D_TAX, D_NEXT_O_ID " +
-                        "FROM DISTRICT " +
-                        "WHERE D_W_ID = :d_w_id AND D_ID = :d_id"
-        );
-
-        incrementDNextOidQuery = session.prepare(
-                "UPDATE DISTRICT " +
-                        "SET D_NEXT_O_ID = :d_new_o_id " +
-                        "WHERE D_W_ID = :d_w_id AND D_ID = :d_id " +
-                        "IF D_NEXT_O_ID = :d_next_o_id"
-        );
+        this.itemCatalog = itemCatalog;
+        this.referenceData = referenceData;
+        this.orderIdAllocator = orderIdAllocator;
+        this.recentOrderItems = recentOrderItems;
+        this.conditionalUpdater = conditionalUpdater;
 
         createOrderQuery = session.prepare(
                 "INSERT INTO ORDERS (O_ID, O_D_ID, O_W_ID, O_C_ID, O_ENTRY_D, O_CARRIER_ID, O_OL_CNT, O_ALL_LOCAL) " +
@@ -114,7 +135,7 @@ public class NewOrderTransaction extends BaseTransaction {
         );
 
         getStockInfoQuery = session.prepare(
-                "SELECT S_QUANTITY, S_YTD, S_ORDER_CNT, S_REMOTE_CNT " +
+                "SELECT S_QUANTITY, S_WRITE_ID " +
                         "FROM STOCK " +
                         "WHERE S_W_ID = :s_w_id AND S_I_ID = :s_i_id"
         );
@@ -131,11 +152,20 @@ public class NewOrderTransaction extends BaseTransaction {
             ));
         });
 
+        // S_WRITE_ID is in the condition so that an update that is not applied returns the order line that wrote the
+        // quantity, as different order lines may write the same quantity.
         updateStockQuery = session.prepare(
                 "UPDATE STOCK " +
-                        "SET S_QUANTITY = :s_quantity, S_YTD = :s_ytd, S_ORDER_CNT = :new_s_order_cnt, S_REMOTE_CNT = :s_remote_cnt " +
+                        "SET S_QUANTITY = :s_quantity, S_WRITE_ID = :s_write_id " +
                         "WHERE S_W_ID = :s_w_id AND S_I_ID = :s_i_id " +
-                        "IF S_ORDER_CNT = :original_s_order_cnt"
+                        "IF S_QUANTITY = :original_s_quantity AND S_WRITE_ID = :original_s_write_id"
+        );
+
+        addStockOrderQuery = session.prepare(
+                "UPDATE STOCK_COUNTER " +
+                        "SET S_YTD = S_YTD + :quantity, S_ORDER_CNT = S_ORDER_CNT + 1, " +
+                        "S_REMOTE_CNT = S_REMOTE_CNT + :remote_cnt " +
+                        "WHERE S_W_ID = :s_w_id AND S_I_ID = :s_i_id"
         );
 
         getItemInfoQuery = session.prepare(
@@ -156,17 +186,25 @@ public class NewOrderTransaction extends BaseTransaction {
                         "VALUES (:c_w_id, :c_d_id, :c_id, :o_id, :o_entry_d, :o_carrier_id)"
         );
 
+        enqueueUndeliveredOrderQuery = session.prepare(
+                "INSERT INTO UNDELIVERED_ORDER (O_W_ID, O_D_ID, O_ID, O_C_ID) " +
+                        "VALUES (:o_w_id, :o_d_id, :o_id, :o_c_id)"
+        );
+
+        saveLatestOrderQuery = session.prepare(
+                "INSERT INTO CUSTOMER_LATEST_ORDER " +
+                        "(C_W_ID, C_D_ID, C_ID, O_ID, O_ENTRY_D, O_CARRIER_ID, O_DELIVERY_D, O_LINES) " +
+                        "VALUES (:c_w_id, :c_d_id, :c_id, :o_id, :o_entry_d, :o_carrier_id, :o_delivery_d, :o_lines) " +
+                        "USING TIMESTAMP :timestamp"
+        );
+        orderLineItemType = (UserDefinedType) ((ListType) saveLatestOrderQuery.getVariableDefinitions()
+                .get("o_lines").getType()).getElementType();
+
         createOrderByItemQuery = session.prepare(
                 "INSERT INTO ORDER_BY_ITEM (I_ID, O_W_ID, O_D_ID, O_ID) " +
                         "VALUES (:i_id, :o_w_id, :o_d_id, :o_id)"
         );
 
-        getWarehouseInfoQuery = session.prepare(
-                "SELECT W_TAX " +
-                        "FROM WAREHOUSE " +
-                        "WHERE W_ID = :w_id"
-        );
-
         getCustomerInfoQuery = session.prepare(
                 "SELECT C_LAST, C_CREDIT, C_DISCOUNT " +
                         "FROM CUSTOMER " +
@@ -189,27 +227,43 @@ public class NewOrderTransaction extends BaseTransaction {
     }
 
     @Override
-    public void execute(String[] dataLines, String[] parameters) {
-        customerId = Integer.parseInt(parameters[1]);
-        warehouseId = Integer.parseInt(parameters[2]);
-        districtId = Integer.parseInt(parameters[3]);
-        noOfItems = Integer.parseInt(parameters[4]);
-
-        DistrictInfo nextOidResult = getAndUpdateDistrictNextOid();
-        Integer oid = nextOidResult.nextOid;
+    public void execute(NewOrderRequest request, OutputSink out) {
+        int oid = orderIdAllocator.allocate(request.getWarehouseId(), request.getDistrictId());
 
-        List<NewOrderLine> newOrderLines = parseNewOrderLines(dataLines);
+        List<NewOrderLine> newOrderLines = getNewOrderLines(request);
         Instant now = Instant.now();
-        processNewOrder(oid, now, newOrderLines);
 
-        List<ItemResultInfo> orderLinesResult = IntStream.range(0, newOrderLines.size())
-                .mapToObj(i -> processNewOrderLine(newOrderLines.get(i), oid, i+1))
-                .collect(Collectors.toList());
-
-        BigDecimal districtTax = nextOidResult.tax;
-        BigDecimal warehouseTax = getWarehouseTax();
+        // Everything below only depends on the order id, so it is all executed concurrently.
+        ParallelExecutor executor = new ParallelExecutor();
+        CompletableFuture<Void> newOrder = executor.submit(() -> processNewOrder(request, oid, now, newOrderLines));
+        CompletableFuture<List<ItemResultInfo>> orderLines =
+                executor.submit(() -> processNewOrderLines(request, newOrderLines, oid));
+        CompletableFuture<CustomerInfo> customerInfoResult = executor.submit(() -> getCustomerInfo(request));
+        // The order is only queued for delivery once its order lines are created, so that a delivery sees all of them,
+        // and only published once everything else is written, so that the orders below the next order id exist, and
+        // are in the ring of recent orders of the district.
+        executor.submit(() -> CompletableFuture.allOf(newOrder, orderLines)
+                .thenCompose(ignored -> CompletableFuture.allOf(
+                        enqueueUndeliveredOrder(request, oid).toCompletableFuture(),
+                        recentOrderItems.add(request.getWarehouseId(), request.getDistrictId(), oid,
+                                newOrderLines.stream().map(NewOrderLine::itemId).collect(Collectors.toList()))
+                                .toCompletableFuture(),
+                        saveLatestOrder(request, oid, now, orderLines.join()).toCompletableFuture()))
+                .thenCompose(ignored ->
+                        orderIdAllocator.publish(request.getWarehouseId(), request.getDistrictId(), oid)));
+        try {
+            executor.execute();
+        } catch (RuntimeException e) {
+            // The order will not be created, so its id is published anyway, so that the next order id of the district
+            // does not stop below it, though some of the rows of the order may be written.
+            orderIdAllocator.publish(request.getWarehouseId(), request.getDistrictId(), oid);
+            throw e;
+        }
 
-        CustomerInfo customerInfo = getCustomerInfo();
+        List<ItemResultInfo> orderLinesResult = orderLines.join();
+        CustomerInfo customerInfo = customerInfoResult.join();
+        BigDecimal districtTax = referenceData.getDistrict(request.getWarehouseId(), request.getDistrictId()).getTax();
+        BigDecimal warehouseTax = referenceData.getWarehouse(request.getWarehouseId()).getTax();
 
         BigDecimal totalTax = new BigDecimal(1).add(districtTax).add(warehouseTax);
         BigDecimal percentAfterDiscount = new BigDecimal(1).subtract(customerInfo.discount);
@@ -220,7 +274,8 @@ public class NewOrderTransaction extends BaseTransaction {
                 .multiply(totalTax)
                 .multiply(percentAfterDiscount);
 
-        printSummary(new NewOrderSummary(customerInfo, warehouseTax, districtTax, now, oid, totalAmount, orderLinesResult));
+        printSummary(out, request,
+                new NewOrderSummary(customerInfo, warehouseTax, districtTax, now, oid, totalAmount, orderLinesResult));
     }
 
     @Override
@@ -228,45 +283,10 @@ public class NewOrderTransaction extends BaseTransaction {
         return "New Order";
     }
 
-    private DistrictInfo getAndUpdateDistrictNextOid() {
-        boolean isIncrementSuccessful = false;
-        int dNextOid = -1;
-        BigDecimal dTax = new BigDecimal(-1);
-
-        // Spin loop is needed as the update query may fail if there are other queries that are updating the same row
-        // at the same time.
-        while (!isIncrementSuccessful) {
-            try {
-                ResultSet resultSet = session.execute(getDNextOidQuery.boundStatementBuilder()
-                        .setInt("d_w_id", warehouseId)
-                        .setInt("d_id", districtId)
-                        .build());
-                Row row = resultSet.one();
-
-                dTax = row.getBigDecimal("D_TAX");
-                dNextOid = row.getInt("D_NEXT_O_ID");
-
-                ResultSet updateRow = session.execute(incrementDNextOidQuery.boundStatementBuilder()
-                        .setTimeout(Duration.ofSeconds(20))
-                        .setInt("d_w_id", warehouseId)
-                        .setInt("d_id", districtId)
-                        .setInt("d_next_o_id", dNextOid)
-                        .setInt("d_new_o_id", dNextOid + 1)
-                        .build());
-
-                isIncrementSuccessful = updateRow.wasApplied();
-            } catch (Exception e) {
-            }
-        }
-
-        return new DistrictInfo(dNextOid, dTax);
-    }
-
-    private List<NewOrderLine> parseNewOrderLines(String[] datalines) {
-        return Arrays.stream(datalines)
-                .map(s -> s.split(","))
-                .map(tokens -> new NewOrderLine(Integer.parseInt(tokens[0]), Integer.parseInt(tokens[1]),
-                        Integer.parseInt(tokens[2])))
+    private List<NewOrderLine> getNewOrderLines(NewOrderRequest request) {
+        return IntStream.range(0, request.getNumItems())
+                .mapToObj(i -> new NewOrderLine(request.getItemIds()[i], request.getSupplierWarehouseIds()[i],
+                        request.getQuantities()[i]))
                 .collect(Collectors.toList());
     }
 
@@ -275,248 +295,326 @@ public class NewOrderTransaction extends BaseTransaction {
      * 1) Creating a new entry in orders table
      * 2) Creating a new entry in order_by_customer table
      */
-    private void processNewOrder(int oid, Instant now, List<NewOrderLine> newOrderLines) {
-        createNewOrder(oid, newOrderLines, now);
-        createNewOrderByCustomer(now, oid);
+    private CompletableFuture<Void> processNewOrder(NewOrderRequest request, int oid, Instant now,
+                                                    List<NewOrderLine> newOrderLines) {
+        return CompletableFuture.allOf(
+                createNewOrder(request, oid, newOrderLines, now).toCompletableFuture(),
+                createNewOrderByCustomer(request, now, oid).toCompletableFuture());
     }
 
-    private void createNewOrder(int oid, List<NewOrderLine> newOrderLines, Instant now) {
-        boolean isAllItemsLocal = isAllItemsLocal(newOrderLines);
-        session.execute(createOrderQuery.boundStatementBuilder()
+    private CompletionStage<AsyncResultSet> createNewOrder(NewOrderRequest request, int oid,
+                                                           List<NewOrderLine> newOrderLines, Instant now) {
+        boolean isAllItemsLocal = isAllItemsLocal(request, newOrderLines);
+        return session.executeAsync(createOrderQuery.boundStatementBuilder()
                 .setTimeout(Duration.ofSeconds(20))
                 .setInt("o_id", oid)
-                .setInt("o_d_id", districtId)
-                .setInt("o_w_id", warehouseId)
-                .setInt("o_c_id", customerId)
+                .setInt("o_d_id", request.getDistrictId())
+                .setInt("o_w_id", request.getWarehouseId())
+                .setInt("o_c_id", request.getCustomerId())
                 .setInstant("o_entry_d", now)
                 .setInt("o_carrier_id", Constants.NULL_DELIVERY_ID)
-                .setBigDecimal("o_ol_cnt", new BigDecimal(noOfItems))
+                .setBigDecimal("o_ol_cnt", new BigDecimal(request.getNumItems()))
                 .setBigDecimal("o_all_local", isAllItemsLocal ? new BigDecimal(1) : new BigDecimal(0))
                 .build());
     }
 
-    private boolean isAllItemsLocal(List<NewOrderLine> orderLines) {
-        return orderLines.stream().allMatch(ol -> ol.supplierWarehouseId == warehouseId);
+    private boolean isAllItemsLocal(NewOrderRequest request, List<NewOrderLine> orderLines) {
+        return orderLines.stream().allMatch(ol -> ol.supplierWarehouseId == request.getWarehouseId());
+    }
+
+    private CompletionStage<AsyncResultSet> createNewOrderByCustomer(NewOrderRequest request, Instant now, int oid) {
+        return session.executeAsync(createOrderByCustomerQuery.boundStatementBuilder()
+                .setInt("c_w_id", request.getWarehouseId())
+                .setInt("c_d_id", request.getDistrictId())
+                .setInt("c_id", request.getCustomerId())
+                .setInt("o_id", oid)
+                .setInstant("o_entry_d", now)
+                .setInt("o_carrier_id", Constants.NULL_DELIVERY_ID)
+                .build());
+    }
+
+    /**
+     * Timestamp of the write of an order to customer_latest_order, which is above that of any write for an older order,
+     * and below that of the write of its delivery.
+     */
+    static long latestOrderTimestamp(int oid) {
+        return 2L * oid;
     }
 
-    private void createNewOrderByCustomer(Instant now, int oid) {
-        session.execute(createOrderByCustomerQuery.boundStatementBuilder()
-                .setInt("c_w_id", warehouseId)
-                .setInt("c_d_id", districtId)
-                .setInt("c_id", customerId)
+    private CompletionStage<AsyncResultSet> saveLatestOrder(NewOrderRequest request, int oid, Instant now,
+                                                            List<ItemResultInfo> orderLines) {
+        final List<UdtValue> items = orderLines.stream()
+                .map(result -> orderLineItemType.newValue(result.itemId, result.supplierWarehouseId,
+                        new BigDecimal(result.orderQuantity), result.amount))
+                .collect(Collectors.toList());
+        return session.executeAsync(saveLatestOrderQuery.boundStatementBuilder()
+                .setInt("c_w_id", request.getWarehouseId())
+                .setInt("c_d_id", request.getDistrictId())
+                .setInt("c_id", request.getCustomerId())
                 .setInt("o_id", oid)
                 .setInstant("o_entry_d", now)
                 .setInt("o_carrier_id", Constants.NULL_DELIVERY_ID)
+                // Written as null, so that the delivery date of an older order does not show through.
+                .setToNull("o_delivery_d")
+                .setList("o_lines", items, UdtValue.class)
+                .setLong("timestamp", latestOrderTimestamp(oid))
                 .build());
     }
 
+    private CompletionStage<AsyncResultSet> enqueueUndeliveredOrder(NewOrderRequest request, int oid) {
+        return session.executeAsync(enqueueUndeliveredOrderQuery.boundStatementBuilder()
+                .setInt("o_w_id", request.getWarehouseId())
+                .setInt("o_d_id", request.getDistrictId())
+                .setInt("o_id", oid)
+                .setInt("o_c_id", request.getCustomerId())
+                .build());
+    }
+
+    /**
+     * Processes the order lines with up to {@link #MAX_CONCURRENT_ORDER_LINES} of them in flight at a time. The results
+     * are in the order of the order lines.
+     */
+    private CompletableFuture<List<ItemResultInfo>> processNewOrderLines(NewOrderRequest request,
+                                                                         List<NewOrderLine> newOrderLines, int oid) {
+        final ItemResultInfo[] results = new ItemResultInfo[newOrderLines.size()];
+        final AtomicInteger nextOrderLine = new AtomicInteger();
+        final CompletableFuture<?>[] lanes =
+                new CompletableFuture<?>[Math.min(MAX_CONCURRENT_ORDER_LINES, newOrderLines.size())];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = processNextOrderLines(request, newOrderLines, oid, nextOrderLine, results)
+                    .toCompletableFuture();
+        }
+        return CompletableFuture.allOf(lanes).thenApply(ignored -> Arrays.asList(results));
+    }
+
+    // Processes the next order line that is not taken yet, and then the next ones, one at a time.
+    private CompletionStage<Void> processNextOrderLines(NewOrderRequest request, List<NewOrderLine> newOrderLines,
+                                                        int oid, AtomicInteger nextOrderLine,
+                                                        ItemResultInfo[] results) {
+        final int i = nextOrderLine.getAndIncrement();
+        if (i >= newOrderLines.size()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return processNewOrderLine(request, newOrderLines.get(i), oid, i + 1)
+                .thenCompose(result -> {
+                    results[i] = result;
+                    return processNextOrderLines(request, newOrderLines, oid, nextOrderLine, results);
+                });
+    }
+
     /**
      * Process a given order line by:
      * 1) Updating the stock of the item in the order line
      * 2) Create a new entry in the order_line table
      * 3) Create a new entry in the order_by_item table
+     * The three steps are independent of each other and are executed concurrently. A step that times out is retried,
+     * a bounded number of times.
      */
-    private ItemResultInfo processNewOrderLine(NewOrderLine newOrderLine, int oid, int orderLineNumber) {
-        UpdateStockResult updateStockResult = new UpdateStockResult(new BigDecimal(0), false);
-
-        // Spin loop is needed as updateStock query may fail if there are other queries that are updating the same
-        // row at the same time.
-        while (!updateStockResult.isSuccessful) {
-            // This try-and-catch is needed to deal with "java.lang.IllegalArgumentException: Unsupported error code"
-            // exception that may be thrown sometimes. Not sure if the exception is because of executing the creating of
-            // order lines in parallel.
-            try {
-                updateStockResult = updateStock(newOrderLine);
-            } catch (Exception e) {
-            }
-        }
-
-        ItemResultInfo result = createNewOrderLine(newOrderLine, oid, orderLineNumber, updateStockResult.originalQuantity);
-        createNewOrderByItem(newOrderLine, oid);
-        return result;
+    private CompletionStage<ItemResultInfo> processNewOrderLine(NewOrderRequest request, NewOrderLine newOrderLine,
+                                                                int oid, int orderLineNumber) {
+        final CompletionStage<BigDecimal> originalQuantity = updateStock(request, newOrderLine);
+        final CompletionStage<ItemInfo> itemInfo = conditionalUpdater.retryAsync("New Order line",
+                isRetry -> createNewOrderLine(request, newOrderLine, oid, orderLineNumber, isRetry));
+        final CompletionStage<Boolean> orderByItem = conditionalUpdater.retryAsync("New Order by item",
+                isRetry -> createNewOrderByItem(request, newOrderLine, oid, isRetry));
+
+        return itemInfo
+                .thenCombine(originalQuantity, (item, quantity) -> new ItemResultInfo(
+                        newOrderLine.itemId,
+                        item.name,
+                        newOrderLine.supplierWarehouseId,
+                        newOrderLine.quantity,
+                        itemAmount(newOrderLine, item),
+                        quantity))
+                .thenCombine(orderByItem, (result, ignored) -> result);
     }
 
-    private UpdateStockResult updateStock(NewOrderLine newOrderLine) {
-        Row currentStockInfo = session.execute(getStockInfoQuery.boundStatementBuilder()
-                        .setInt("s_w_id", newOrderLine.supplierWarehouseId)
-                        .setInt("s_i_id", newOrderLine.itemId)
-                        .build())
-                .one();
+    /**
+     * Updates the stock of the item of the order line, and returns its quantity before the update. S_YTD, S_ORDER_CNT
+     * and S_REMOTE_CNT are counters, which are incremented without being read. Increments are not retried, as one that
+     * failed may still have been applied.
+     */
+    private CompletionStage<BigDecimal> updateStock(NewOrderRequest request, NewOrderLine newOrderLine) {
+        final CompletionStage<AsyncResultSet> counters = session.executeAsync(addStockOrderQuery.boundStatementBuilder()
+                .setLong("quantity", newOrderLine.quantity)
+                .setLong("remote_cnt", newOrderLine.supplierWarehouseId != request.getWarehouseId() ? 1 : 0)
+                .setInt("s_w_id", newOrderLine.supplierWarehouseId)
+                .setInt("s_i_id", newOrderLine.itemId)
+                .build());
+        // Other order lines may write the same quantity, so only the write id of this one tells that it was applied.
+        final UUID writeId = Uuids.random();
+        return conditionalUpdater.retryAsync("New Order stock read",
+                        isRetry -> session.executeAsync(getStockInfoQuery.boundStatementBuilder()
+                                        .setInt("s_w_id", newOrderLine.supplierWarehouseId)
+                                        .setInt("s_i_id", newOrderLine.itemId)
+                                        .build())
+                                .thenApply(resultSet -> stockInfo(resultSet.one(), newOrderLine)))
+                .thenCompose(stock -> conditionalUpdater.updateAsync("New Order stock", stock,
+                        original -> updateStockStatement(newOrderLine, original, writeId),
+                        (original, current) -> StockInfo.of(current),
+                        (original, current) -> writeId.equals(current.getUuid("S_WRITE_ID"))))
+                .thenCombine(counters, (original, ignored) -> original.quantity());
+    }
 
-        BigDecimal originalQty = currentStockInfo.getBigDecimal("S_QUANTITY");
-        BigDecimal adjustedQty = originalQty.subtract(new BigDecimal(newOrderLine.quantity));
-        if (adjustedQty.compareTo(new BigDecimal(10)) < 0) {
-            adjustedQty.add(new BigDecimal(100));
+    private static StockInfo stockInfo(Row stock, NewOrderLine newOrderLine) {
+        if (stock == null) {
+            throw new IllegalStateException(String.format("Unknown stock of item %d in warehouse %d",
+                    newOrderLine.itemId, newOrderLine.supplierWarehouseId));
         }
+        return StockInfo.of(stock);
+    }
 
-        boolean isSuccessful = session.execute(updateStockQuery.boundStatementBuilder()
+    /**
+     * Returns the update of the stock quantity from the given stock, which is only applied if the stock still holds it.
+     * A failed update returns the quantity and the write id that the stock holds instead, which is all that a retry
+     * needs.
+     */
+    private BoundStatement updateStockStatement(NewOrderLine newOrderLine, StockInfo original, UUID writeId) {
+        return updateStockQuery.boundStatementBuilder()
                 .setTimeout(Duration.ofSeconds(20))
-                .setBigDecimal("s_quantity", adjustedQty)
-                .setBigDecimal("s_ytd",
-                        currentStockInfo.getBigDecimal("S_YTD").add(new BigDecimal(newOrderLine.quantity)))
-                .setInt("new_s_order_cnt", currentStockInfo.getInt("S_ORDER_CNT") + 1)
-                .setInt("s_remote_cnt", newOrderLine.supplierWarehouseId != warehouseId
-                        ? currentStockInfo.getInt("S_REMOTE_CNT") + 1
-                        : currentStockInfo.getInt("S_REMOTE_CNT"))
+                .setBigDecimal("s_quantity", adjustedQuantity(newOrderLine, original.quantity()))
+                .setUuid("s_write_id", writeId)
                 .setInt("s_w_id", newOrderLine.supplierWarehouseId)
                 .setInt("s_i_id", newOrderLine.itemId)
-                .setInt("original_s_order_cnt", currentStockInfo.getInt("S_ORDER_CNT"))
-                .build()
-        ).wasApplied();
+                .setBigDecimal("original_s_quantity", original.quantity())
+                .setUuid("original_s_write_id", original.writeId())
+                .build();
+    }
 
-        return new UpdateStockResult(originalQty, isSuccessful);
+    private static BigDecimal adjustedQuantity(NewOrderLine newOrderLine, BigDecimal originalQty) {
+        BigDecimal adjustedQty = originalQty.subtract(new BigDecimal(newOrderLine.quantity));
+        if (adjustedQty.compareTo(new BigDecimal(10)) < 0) {
+            adjustedQty.add(new BigDecimal(100));
+        }
+        return adjustedQty;
     }
 
-    private ItemResultInfo createNewOrderLine(NewOrderLine newOrderLine, int orderId, int orderLineNumber,
-                                              BigDecimal originalStockQuantity) {
-        boolean successful = false;
-        boolean retry = false;
-        ItemResultInfo result = null;
-
-        // This while loop is needed to deal with "java.lang.IllegalArgumentException: Unsupported error code"
-        // exception that may be thrown sometimes. Not sure if the exception is because of executing the creating of
-        // order lines in parallel.
-        while (!successful) {
-            try {
-                Row itemInfo = session.execute(getItemInfoQuery.boundStatementBuilder()
-                                .setTimeout(Duration.ofSeconds(30))
-                                .setInt("i_id", newOrderLine.itemId)
-                                .build())
-                        .one();
-                Row stockDistrictInfo = session.execute(getStockDistrictInfoQueriesList
-                                .get(newOrderLine.supplierWarehouseId - 1)
-                                .boundStatementBuilder()
-                                .setInt("s_w_id", newOrderLine.supplierWarehouseId)
-                                .setInt("s_i_id", newOrderLine.itemId)
-                                .build())
-                        .one();
-
-                BigDecimal itemAmount = new BigDecimal(newOrderLine.quantity).multiply(itemInfo.getBigDecimal("I_PRICE"));
-
-                result = new ItemResultInfo(
-                        newOrderLine.itemId,
-                        itemInfo.getString("I_NAME"),
-                        newOrderLine.supplierWarehouseId,
-                        newOrderLine.quantity,
-                        itemAmount,
-                        originalStockQuantity
-                );
-
-                if (retry) {
-                    Row row = session.execute(checkIfOrderLineExistsQuery.boundStatementBuilder()
-                                    .setInt("ol_w_id", warehouseId)
-                                    .setInt("ol_d_id", districtId)
-                                    .setInt("ol_o_id", orderId)
-                                    .setInt("ol_number", orderLineNumber)
-                                    .build())
-                            .one();
-                    // The given order line exists.
-                    if (row != null) {
-                        return result;
-                    }
-                }
-
-                session.execute(createOrderLineQuery.boundStatementBuilder()
-                        .setTimeout(Duration.ofSeconds(30))
-                        .setInt("ol_w_id", warehouseId)
-                        .setInt("ol_d_id", districtId)
+    /**
+     * Creates the entry of the order line in the order_line table, and returns the information of its item. On a
+     * retry, the entry is only created if the previous attempt did not create it.
+     */
+    private CompletionStage<ItemInfo> createNewOrderLine(NewOrderRequest request, NewOrderLine newOrderLine,
+                                                         int orderId, int orderLineNumber, boolean isRetry) {
+        final CompletionStage<ItemInfo> itemInfo = getItemInfo(newOrderLine.itemId);
+        final CompletionStage<Row> stockDistrictInfo = session.executeAsync(getStockDistrictInfoQueriesList
+                        .get(newOrderLine.supplierWarehouseId - 1)
+                        .boundStatementBuilder()
+                        .setInt("s_w_id", newOrderLine.supplierWarehouseId)
+                        .setInt("s_i_id", newOrderLine.itemId)
+                        .build())
+                .thenApply(AsyncResultSet::one);
+        final CompletionStage<Boolean> exists = !isRetry ? CompletableFuture.completedFuture(false)
+                : session.executeAsync(checkIfOrderLineExistsQuery.boundStatementBuilder()
+                        .setInt("ol_w_id", request.getWarehouseId())
+                        .setInt("ol_d_id", request.getDistrictId())
                         .setInt("ol_o_id", orderId)
                         .setInt("ol_number", orderLineNumber)
-                        .setInt("ol_i_id", newOrderLine.itemId)
-                        .setInt("ol_supply_w_id", newOrderLine.supplierWarehouseId)
-                        .setBigDecimal("ol_quantity", new BigDecimal(newOrderLine.quantity))
-                        .setBigDecimal("ol_amount", itemAmount)
-                        .setInstant("ol_delivery_d", null)
-                        .setString("ol_dist_info", stockDistrictInfo.getString(0))
-                        .build()
-                );
-
-                successful = true;
-            } catch (Exception e) {
-                retry = true;
-            }
+                        .build())
+                .thenApply(row -> row.one() != null);
+
+        return itemInfo.thenCombine(stockDistrictInfo, (item, stockDistrict) -> stockDistrict.getString(0))
+                .thenCombine(exists, (distInfo, orderLineExists) -> orderLineExists
+                        ? itemInfo
+                        : itemInfo.thenCompose(item -> session.executeAsync(createOrderLineQuery.boundStatementBuilder()
+                                        .setTimeout(Duration.ofSeconds(30))
+                                        .setInt("ol_w_id", request.getWarehouseId())
+                                        .setInt("ol_d_id", request.getDistrictId())
+                                        .setInt("ol_o_id", orderId)
+                                        .setInt("ol_number", orderLineNumber)
+                                        .setInt("ol_i_id", newOrderLine.itemId)
+                                        .setInt("ol_supply_w_id", newOrderLine.supplierWarehouseId)
+                                        .setBigDecimal("ol_quantity", new BigDecimal(newOrderLine.quantity))
+                                        .setBigDecimal("ol_amount", itemAmount(newOrderLine, item))
+                                        .setInstant("ol_delivery_d", null)
+                                        .setString("ol_dist_info", distInfo)
+                                        .build())
+                                .thenApply(ignored -> item)))
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * Returns the name and the price of an item from the item catalog, or from the item table if the item was added
+     * after the catalog was loaded.
+     */
+    private CompletionStage<ItemInfo> getItemInfo(int itemId) {
+        if (itemCatalog.contains(itemId)) {
+            return CompletableFuture.completedFuture(
+                    new ItemInfo(itemCatalog.getName(itemId), itemCatalog.getPrice(itemId)));
         }
+        return session.executeAsync(getItemInfoQuery.boundStatementBuilder()
+                        .setTimeout(Duration.ofSeconds(30))
+                        .setInt("i_id", itemId)
+                        .build())
+                .thenApply(AsyncResultSet::one)
+                .thenApply(row -> new ItemInfo(row.getString("I_NAME"), row.getBigDecimal("I_PRICE")));
+    }
 
-        return result;
+    private static BigDecimal itemAmount(NewOrderLine newOrderLine, ItemInfo itemInfo) {
+        return new BigDecimal(newOrderLine.quantity).multiply(itemInfo.price);
     }
 
-    private void createNewOrderByItem(NewOrderLine newOrderLine, int oid) {
-        boolean successful = false;
-        boolean retry = false;
-
-        // This while loop is needed to deal with "java.lang.IllegalArgumentException: Unsupported error code"
-        // exception that may be thrown sometimes. Not sure if the exception is because of executing the creating of
-        // order lines in parallel.
-        while (!successful) {
-            try {
-                if (retry) {
-                    Row row = session.execute(checkIfOrderByItemExistsQuery.boundStatementBuilder()
-                            .setInt("i_id", newOrderLine.itemId)
-                            .setInt("o_w_id", warehouseId)
-                            .setInt("o_d_id", districtId)
-                            .setInt("o_id", oid)
-                            .build()
-                    ).one();
-
-                    if (row != null) {
-                        return;
-                    }
-                }
-
-                session.execute(createOrderByItemQuery.boundStatementBuilder()
+    /**
+     * Creates the entry of the order line in the order_by_item table. On a retry, the entry is only created if the
+     * previous attempt did not create it.
+     */
+    private CompletionStage<Boolean> createNewOrderByItem(NewOrderRequest request, NewOrderLine newOrderLine, int oid,
+                                                          boolean isRetry) {
+        final CompletionStage<Boolean> exists = !isRetry ? CompletableFuture.completedFuture(false)
+                : session.executeAsync(checkIfOrderByItemExistsQuery.boundStatementBuilder()
                         .setInt("i_id", newOrderLine.itemId)
-                        .setInt("o_w_id", warehouseId)
-                        .setInt("o_d_id", districtId)
+                        .setInt("o_w_id", request.getWarehouseId())
+                        .setInt("o_d_id", request.getDistrictId())
                         .setInt("o_id", oid)
-                        .build());
-
-                successful = true;
-            } catch (Exception e) {
-                retry = true;
-            }
-        }
-    }
+                        .build())
+                .thenApply(row -> row.one() != null);
 
-    private BigDecimal getWarehouseTax() {
-        return session.execute(getWarehouseInfoQuery.boundStatementBuilder()
-                        .setInt("w_id", warehouseId)
+        return exists.thenCompose(orderByItemExists -> orderByItemExists
+                ? CompletableFuture.completedFuture(true)
+                : session.executeAsync(createOrderByItemQuery.boundStatementBuilder()
+                        .setInt("i_id", newOrderLine.itemId)
+                        .setInt("o_w_id", request.getWarehouseId())
+                        .setInt("o_d_id", request.getDistrictId())
+                        .setInt("o_id", oid)
                         .build())
-                .one()
-                .getBigDecimal("W_TAX");
+                .thenApply(ignored -> true));
     }
 
-    private CustomerInfo getCustomerInfo() {
-        Row row = session.execute(getCustomerInfoQuery.boundStatementBuilder()
-                        .setInt("c_w_id", warehouseId)
-                        .setInt("c_d_id", districtId)
-                        .setInt("c_id", customerId)
+    private CompletableFuture<CustomerInfo> getCustomerInfo(NewOrderRequest request) {
+        return session.executeAsync(getCustomerInfoQuery.boundStatementBuilder()
+                        .setInt("c_w_id", request.getWarehouseId())
+                        .setInt("c_d_id", request.getDistrictId())
+                        .setInt("c_id", request.getCustomerId())
                         .build())
-                .one();
-
-        return new CustomerInfo(
-                row.getString("C_LAST"),
-                row.getString("C_CREDIT"),
-                row.getBigDecimal("C_DISCOUNT"));
+                .thenApply(resultSet -> {
+                    Row row = resultSet.one();
+                    return new CustomerInfo(
+                            row.getString("C_LAST"),
+                            row.getString("C_CREDIT"),
+                            row.getBigDecimal("C_DISCOUNT"));
+                })
+                .toCompletableFuture();
     }
 
-    private void printSummary(NewOrderSummary summary) {
+    private void printSummary(OutputSink out, NewOrderRequest request, NewOrderSummary summary) {
         DateTimeFormatter formatter = DateTimeFormatter.ofLocalizedDateTime( FormatStyle.SHORT )
                 .withLocale( Locale.UK )
                 .withZone( ZoneId.of("UTC+08:00") );
 
-        System.out.printf("New order created\n");
-        System.out.printf("Customer Info => id: (%d, %d, %d); lastname: %s; credit: %s; discount: %s\n",
-                warehouseId, districtId, customerId, summary.customerInfo.lastName, summary.customerInfo.credit,
+        out.printf("New order created\n");
+        out.printf("Customer Info => id: (%d, %d, %d); lastname: %s; credit: %s; discount: %s\n",
+                request.getWarehouseId(), request.getDistrictId(), request.getCustomerId(),
+                summary.customerInfo.lastName, summary.customerInfo.credit,
                 summary.customerInfo.discount);
-        System.out.printf("Tax rate => warehouse: %s, district: %s\n", summary.warehouseTax, summary.districtTax);
-        System.out.printf("Order Info => order number: %d, entry date (SG time): %s\n", summary.oid,
+        out.printf("Tax rate => warehouse: %s, district: %s\n", summary.warehouseTax, summary.districtTax);
+        out.printf("Order Info => order number: %d, entry date (SG time): %s\n", summary.oid,
                 formatter.format(summary.oEntryD()));
-        System.out.printf("Items Info => num items: %d, total amount: %s\n", noOfItems, summary.totalAmount);
-        System.out.printf("Item details =>\n");
+        out.printf("Items Info => num items: %d, total amount: %s\n", request.getNumItems(),
+                summary.totalAmount);
+        out.printf("Item details =>\n");
         IntStream.range(0, summary.itemResultInfoList.size())
                 .forEach(i -> {
                     ItemResultInfo info = summary.itemResultInfoList.get(i);
-                    System.out.printf("%d. item number: %d, item name: %s, supplier warehouse id: %d, " +
+                    out.printf("%d. item number: %d, item name: %s, supplier warehouse id: %d, " +
                                     "quantity: %d, ol_amount: %s, s_quantity: %s\n",
                             i, info.itemId, info.itemName, info.supplierWarehouseId, info.orderQuantity, info.amount,
                             info.orderQuantity);
@@ -0,0 +1,338 @@
+package cs4224.transactions;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.DefaultConsistencyLevel;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import cs4224.utils.ConditionalUpdater;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Allocates the ids of new orders. Rather than one lightweight transaction on the district per order, ids are leased
+ * by blocks of {@code blockSize} with one lightweight transaction on D_O_ID_LEASE, the end of the ids leased so far in
+ * the district, and are then handed out locally until the block runs out. Each lease also writes a random id to
+ * D_O_ID_LEASE_ID, so that an allocator whose lease timed out can tell whether it got the block.
+ *
+ * D_NEXT_O_ID of the district table is the committed end of the order ids: every order below it is created. Once every
+ * id of a block is published, the block is added to the district_created_block table, and D_NEXT_O_ID is moved past
+ * it and past the created blocks that follow with one lightweight transaction per block, but only if it is at the
+ * start of the block. The allocator that publishes a block last moves D_NEXT_O_ID past all of them, as it adds its
+ * block before reading which blocks follow D_NEXT_O_ID. So Stock Level and Popular Item read orders that all exist,
+ * while the orders of the blocks that are still in use are not below D_NEXT_O_ID yet.
+ *
+ * The ids of a block that are not used when the allocator is closed are published as well, so they are skipped. A
+ * client that stops without closing its allocator stops D_NEXT_O_ID of the districts whose block it held.
+ */
+public class OrderIdAllocator implements AutoCloseable {
+    public static final int DEFAULT_BLOCK_SIZE = 10;
+
+    private final CqlSession session;
+    private final ConditionalUpdater conditionalUpdater;
+    private final int blockSize;
+    private final Map<Long, Lease> leases = new ConcurrentHashMap<>();
+
+    private final PreparedStatement getLeaseQuery;
+    private final PreparedStatement updateLeaseQuery;
+    private final PreparedStatement addCreatedBlockQuery;
+    private final PreparedStatement getCreatedBlockQuery;
+    private final PreparedStatement advanceNextOidQuery;
+
+    public OrderIdAllocator(CqlSession session, ConditionalUpdater conditionalUpdater, int blockSize) {
+        this.session = session;
+        this.conditionalUpdater = conditionalUpdater;
+        this.blockSize = blockSize;
+
+        // The next order id is read by the read-only transactions, so its reads use their profile.
+        getLeaseQuery = session.prepare(BaseTransaction.readOnly(
+                "SELECT D_NEXT_O_ID, D_O_ID_LEASE, D_O_ID_LEASE_ID " +
+                        "FROM DISTRICT " +
+                        "WHERE D_W_ID = :d_w_id AND D_ID = :d_id"
+        ));
+
+        // D_O_ID_LEASE_ID is in the condition so that a lease that is not applied returns the lease that was, as every
+        // allocator that read the same end leases the same block.
+        updateLeaseQuery = session.prepare(
+                "UPDATE DISTRICT " +
+                        "SET D_O_ID_LEASE = :d_new_o_id_lease, D_O_ID_LEASE_ID = :d_new_o_id_lease_id " +
+                        "WHERE D_W_ID = :d_w_id AND D_ID = :d_id " +
+                        "IF D_O_ID_LEASE = :d_o_id_lease AND D_O_ID_LEASE_ID = :d_o_id_lease_id"
+        );
+
+        addCreatedBlockQuery = session.prepare(
+                "INSERT INTO DISTRICT_CREATED_BLOCK (D_W_ID, D_ID, BLOCK_START, BLOCK_END) " +
+                        "VALUES (:d_w_id, :d_id, :block_start, :block_end)"
+        );
+
+        getCreatedBlockQuery = session.prepare(
+                "SELECT BLOCK_END " +
+                        "FROM DISTRICT_CREATED_BLOCK " +
+                        "WHERE D_W_ID = :d_w_id AND D_ID = :d_id AND BLOCK_START = :block_start"
+        );
+
+        advanceNextOidQuery = session.prepare(
+                "UPDATE DISTRICT " +
+                        "SET D_NEXT_O_ID = :d_new_next_o_id " +
+                        "WHERE D_W_ID = :d_w_id AND D_ID = :d_id " +
+                        "IF D_NEXT_O_ID = :d_next_o_id"
+        );
+    }
+
+    /**
+     * Returns a new order id of the district, which is not returned by any other allocator. The id must be published
+     * once the order is created, or fails.
+     */
+    public int allocate(int warehouseId, int districtId) {
+        return leaseOf(warehouseId, districtId).next();
+    }
+
+    /**
+     * Publishes that the order with the given id is created, or will not be, so that it can be below the next order id
+     * of the district. The returned stage completes once the next order id is moved past the block of the order, if
+     * the order completed its block. Publishing an id again has no effect.
+     */
+    public CompletionStage<Void> publish(int warehouseId, int districtId, int orderId) {
+        final Block block = leaseOf(warehouseId, districtId).publish(orderId);
+        return block == null ? CompletableFuture.completedFuture(null) : publish(warehouseId, districtId, block);
+    }
+
+    /**
+     * Returns the next order id of the district, below which every order is created.
+     */
+    public int getNextOrderId(int warehouseId, int districtId) {
+        return session.execute(getLeaseQuery.boundStatementBuilder()
+                        .setInt("d_w_id", warehouseId)
+                        .setInt("d_id", districtId)
+                        .build())
+                .one()
+                .getInt("D_NEXT_O_ID");
+    }
+
+    /**
+     * Publishes the ids of the blocks of this allocator that are not handed out yet, so that the next order ids of
+     * their districts move past them. The allocator must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        final List<CompletableFuture<Void>> published = new ArrayList<>();
+        leases.values().forEach(lease -> {
+            final Block block = lease.release();
+            if (block != null) {
+                published.add(publish(lease.warehouseId, lease.districtId, block).toCompletableFuture());
+            }
+        });
+        CompletableFuture.allOf(published.toArray(new CompletableFuture[0])).join();
+    }
+
+    private Lease leaseOf(int warehouseId, int districtId) {
+        return leases.computeIfAbsent(key(warehouseId, districtId), k -> new Lease(warehouseId, districtId));
+    }
+
+    static long key(int warehouseId, int districtId) {
+        return ((long) warehouseId << Integer.SIZE) | (districtId & 0xFFFFFFFFL);
+    }
+
+    // Adds the block to the created blocks, then moves the next order id past it if the blocks before it are created.
+    // Both the block and the blocks that follow the next order id are written and read at QUORUM, so that of two
+    // allocators that publish blocks at the same time, the last one to add its block reads the block of the other.
+    private CompletionStage<Void> publish(int warehouseId, int districtId, Block block) {
+        return conditionalUpdater.retryAsync("Order id block", isRetry -> session.executeAsync(
+                                addCreatedBlockQuery.boundStatementBuilder()
+                                        .setInt("d_w_id", warehouseId)
+                                        .setInt("d_id", districtId)
+                                        .setInt("block_start", block.start)
+                                        .setInt("block_end", block.end)
+                                        .setConsistencyLevel(DefaultConsistencyLevel.QUORUM)
+                                        .build()))
+                .thenCompose(ignored -> session.executeAsync(getLeaseQuery.boundStatementBuilder()
+                        .setInt("d_w_id", warehouseId)
+                        .setInt("d_id", districtId)
+                        .build()))
+                .thenCompose(resultSet ->
+                        advanceNextOrderId(warehouseId, districtId, resultSet.one().getInt("D_NEXT_O_ID")));
+    }
+
+    // Moves the next order id of the district past the created blocks that start at it, one block at a time. A next
+    // order id that was read before another allocator moved it is returned by the lightweight transaction, so the
+    // next order ids that it is moved from only increase, and it stops at the first one that has no created block.
+    private CompletionStage<Void> advanceNextOrderId(int warehouseId, int districtId, int nextOrderId) {
+        return conditionalUpdater.retryAsync("Order id block read", isRetry -> session.executeAsync(
+                                getCreatedBlockQuery.boundStatementBuilder()
+                                        .setInt("d_w_id", warehouseId)
+                                        .setInt("d_id", districtId)
+                                        .setInt("block_start", nextOrderId)
+                                        .setConsistencyLevel(DefaultConsistencyLevel.QUORUM)
+                                        .build()))
+                .thenCompose(blockRow -> {
+                    final Row block = blockRow.one();
+                    if (block == null) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    final int blockEnd = block.getInt("BLOCK_END");
+                    return conditionalUpdater.retryAsync("Next order id", isRetry -> session.executeAsync(
+                                            advanceNextOidQuery.boundStatementBuilder()
+                                                    .setTimeout(Duration.ofSeconds(20))
+                                                    .setInt("d_new_next_o_id", blockEnd)
+                                                    .setInt("d_w_id", warehouseId)
+                                                    .setInt("d_id", districtId)
+                                                    .setInt("d_next_o_id", nextOrderId)
+                                                    .build()))
+                            .thenCompose(resultSet -> advanceNextOrderId(warehouseId, districtId,
+                                    resultSet.wasApplied() ? blockEnd : resultSet.one().getInt("D_NEXT_O_ID")));
+                });
+    }
+
+    /**
+     * End of the ids leased so far in a district, and the id of the lease that set it, which are both null until the
+     * first lease.
+     */
+    private static class LeaseEnd {
+        private final Integer end;
+        private final UUID leaseId;
+
+        LeaseEnd(Integer end, UUID leaseId) {
+            this.end = end;
+            this.leaseId = leaseId;
+        }
+
+        LeaseEnd(Row row) {
+            end = row.isNull("D_O_ID_LEASE") ? null : row.getInt("D_O_ID_LEASE");
+            leaseId = row.getUuid("D_O_ID_LEASE_ID");
+        }
+    }
+
+    /**
+     * Block of ids of a district, and which of them are published.
+     */
+    static class Block {
+        private final int start;
+        private final int end;
+        private final BitSet published;
+
+        Block(int start, int end) {
+            this.start = start;
+            this.end = end;
+            this.published = new BitSet(end - start);
+        }
+
+        boolean contains(int orderId) {
+            return orderId >= start && orderId < end;
+        }
+
+        // Publishes the ids of the block from fromOrderId included to toOrderId excluded, and returns whether this
+        // published the last id of the block.
+        boolean publish(int fromOrderId, int toOrderId) {
+            final boolean wasPublished = isPublished();
+            published.set(fromOrderId - start, toOrderId - start);
+            return !wasPublished && isPublished();
+        }
+
+        boolean isPublished() {
+            return published.cardinality() == end - start;
+        }
+    }
+
+    /**
+     * Block of ids of a district that is leased by this allocator, and the blocks of the district whose ids are not
+     * all published yet.
+     */
+    private class Lease {
+        private final int warehouseId;
+        private final int districtId;
+        private final TreeMap<Integer, Block> unpublished = new TreeMap<>();
+        private int next;
+        private int end;
+        // Whether the values below are read from the district table.
+        private boolean isRead;
+        private int loadedNextOid;
+        private LeaseEnd currentLease;
+
+        Lease(int warehouseId, int districtId) {
+            this.warehouseId = warehouseId;
+            this.districtId = districtId;
+        }
+
+        synchronized int next() {
+            if (next == end) {
+                leaseBlock();
+                unpublished.put(next, new Block(next, end));
+            }
+            return next++;
+        }
+
+        // Returns the block of the order if this published its last id, or null.
+        synchronized Block publish(int orderId) {
+            final Map.Entry<Integer, Block> entry = unpublished.floorEntry(orderId);
+            if (entry == null || !entry.getValue().contains(orderId)) {
+                return null;
+            }
+            return publish(entry.getValue(), orderId, orderId + 1);
+        }
+
+        // Publishes the ids of the current block that are not handed out, and returns the block if this published its
+        // last id, or null.
+        synchronized Block release() {
+            final Block block = unpublished.get(end - blockSize);
+            if (block == null || next == end) {
+                return null;
+            }
+            final int from = next;
+            next = end;
+            return publish(block, from, end);
+        }
+
+        private Block publish(Block block, int fromOrderId, int toOrderId) {
+            if (!block.publish(fromOrderId, toOrderId)) {
+                return null;
+            }
+            unpublished.remove(block.start);
+            return block;
+        }
+
+        // A failed lease returns the current end of the leased ids, so that the district table is only read once.
+        private void leaseBlock() {
+            if (!isRead) {
+                final Row row = session.execute(getLeaseQuery.boundStatementBuilder()
+                        .setInt("d_w_id", warehouseId)
+                        .setInt("d_id", districtId)
+                        .build()).one();
+                loadedNextOid = row.getInt("D_NEXT_O_ID");
+                currentLease = new LeaseEnd(row);
+                isRead = true;
+            }
+
+            final UUID leaseId = Uuids.random();
+            final LeaseEnd lease = conditionalUpdater.update("Order id lease", currentLease,
+                    originalLease -> updateLeaseQuery.boundStatementBuilder()
+                            .setTimeout(Duration.ofSeconds(20))
+                            .setInt("d_new_o_id_lease", start(originalLease) + blockSize)
+                            .setUuid("d_new_o_id_lease_id", leaseId)
+                            .setInt("d_w_id", warehouseId)
+                            .setInt("d_id", districtId)
+                            .set("d_o_id_lease", originalLease.end, Integer.class)
+                            .setUuid("d_o_id_lease_id", originalLease.leaseId)
+                            .build(),
+                    (originalLease, current) -> new LeaseEnd(current),
+                    (originalLease, current) -> leaseId.equals(current.getUuid("D_O_ID_LEASE_ID")));
+            next = start(lease);
+            end = next + blockSize;
+            currentLease = new LeaseEnd(end, leaseId);
+        }
+
+        // First id of the block leased after the given end of the ids leased so far.
+        private int start(LeaseEnd lease) {
+            return lease.end == null ? loadedNextOid : Math.max(lease.end, loadedNextOid);
+        }
+    }
+}
@@ -1,61 +1,84 @@
 package cs4224.transactions;
 
 import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.data.UdtValue;
+import cs4224.ParallelExecutor;
+import cs4224.output.OutputSink;
+import cs4224.requests.OrderStatusRequest;
 
+import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
-public class OrderStatusTransaction extends BaseTransaction {
-    PreparedStatement getCustomerInfoQuery;
-    PreparedStatement getCustomerLastOrderQuery;
-    PreparedStatement getItemFromLastOrderQuery;
+public class OrderStatusTransaction extends BaseTransaction<OrderStatusRequest> {
+    private final PreparedStatement getCustomerInfoQuery;
+    private final PreparedStatement getCustomerLastOrderQuery;
+    private final PreparedStatement getItemFromLastOrderQuery;
+    private final PreparedStatement getLatestOrderQuery;
 
     public OrderStatusTransaction(final CqlSession session) {
 
         super(session);
-        getCustomerInfoQuery = session.prepare(
+        getCustomerInfoQuery = prepareReadOnly(
                     "SELECT C_FIRST, C_MIDDLE, C_LAST, C_BALANCE " +
                         "FROM customer " +
                         "WHERE C_W_ID = :c_w_id and C_D_ID = :c_d_id and C_ID = :c_id"
         );
-        getCustomerLastOrderQuery = session.prepare(
+        getCustomerLastOrderQuery = prepareReadOnly(
                     "SELECT O_ID, O_ENTRY_D, O_CARRIER_ID FROM order_by_customer " +
                         "WHERE C_W_ID = :c_w_id and C_D_ID = :c_d_id and C_ID = :c_id " +
                         "ORDER BY O_ID DESC LIMIT 1"
         );
-        getItemFromLastOrderQuery = session.prepare(
+        getItemFromLastOrderQuery = prepareReadOnly(
                 "SELECT OL_I_ID, OL_SUPPLY_W_ID, OL_QUANTITY, OL_AMOUNT, OL_DELIVERY_D " +
                         "FROM order_line " +
                         "WHERE OL_W_ID = :ol_w_id and OL_D_ID = :ol_d_id and OL_O_ID = :ol_o_id"
         );
+        getLatestOrderQuery = prepareReadOnly(
+                "SELECT O_ID, O_ENTRY_D, O_CARRIER_ID, O_DELIVERY_D, O_LINES " +
+                        "FROM customer_latest_order " +
+                        "WHERE C_W_ID = :c_w_id and C_D_ID = :c_d_id and C_ID = :c_id"
+        );
     }
 
     @Override
-    public void execute(String[] dataLines,  String[] parameters) {
-        final int warehouseId = Integer.parseInt(parameters[1]);
-        final int districtId = Integer.parseInt(parameters[2]);
-        final int customerId = Integer.parseInt(parameters[3]);
+    public void execute(OrderStatusRequest request, OutputSink out) {
+        final int warehouseId = request.getWarehouseId();
+        final int districtId = request.getDistrictId();
+        final int customerId = request.getCustomerId();
 
         /*
             1) Find customer's name, balance
             2) Find info of customer's last order
             3) For each item in the customer's last order, find info
+            The customer and the latest order saved for the customer are read at the same time. Only the customers that
+            have not ordered since the data was loaded have no saved order, and their last order is read from
+            order_by_customer and order_line instead.
          */
-        String queryGetCustomerInfo = String.format(
-                "SELECT C_FIRST, C_MIDDLE, C_LAST, C_BALANCE " +
-                "FROM customer " +
-                "WHERE C_W_ID = %d and C_D_ID = %d and C_ID = %d", warehouseId, districtId, customerId);
-
-        Row customer = session.execute(
+        final ParallelExecutor executor = new ParallelExecutor();
+        final CompletableFuture<Row> customerResult = executor.submit(() -> session.executeAsync(
                 getCustomerInfoQuery
                     .boundStatementBuilder()
                     .setInt("c_w_id", warehouseId)
                     .setInt("c_d_id", districtId)
                     .setInt("c_id", customerId)
                     .build()
-        ).one();
+        ).thenApply(AsyncResultSet::one));
+        final CompletableFuture<Row> latestOrderResult = executor.submit(() -> session.executeAsync(
+                getLatestOrderQuery
+                        .boundStatementBuilder()
+                        .setInt("c_w_id", warehouseId)
+                        .setInt("c_d_id", districtId)
+                        .setInt("c_id", customerId)
+                        .build()
+        ).thenApply(AsyncResultSet::one));
+        executor.execute();
+        Row customer = customerResult.join();
+        Row latestOrder = latestOrderResult.join();
 
         if (customer != null) {
             // 1
@@ -63,16 +86,24 @@ public class OrderStatusTransaction extends BaseTransaction {
             String middle = customer.getString("C_MIDDLE");
             String last = customer.getString("C_LAST");
             Double balance = customer.getBigDecimal("C_BALANCE").doubleValue();
-            System.out.printf("First: %s, second: %s, last: %s \nBalance: %f \n", first, middle, last, balance);
+            out.printf("First: %s, second: %s, last: %s \nBalance: %f \n", first, middle, last, balance);
+
+            // A delivery of an order loaded with the data only writes the carrier and the delivery date.
+            if (latestOrder != null && !latestOrder.isNull("O_ID")) {
+                // 2
+                printLastOrder(out, latestOrder.getInt("O_ID"), latestOrder.getInstant("O_ENTRY_D"),
+                        latestOrder.getInt("O_CARRIER_ID"));
+
+                // 3
+                Instant dDate = latestOrder.getInstant("O_DELIVERY_D");
+                for (UdtValue item : latestOrder.getList("O_LINES", UdtValue.class)) {
+                    printItem(out, item.getInt("OL_I_ID"), item.getInt("OL_SUPPLY_W_ID"),
+                            item.getBigDecimal("OL_QUANTITY"), item.getBigDecimal("OL_AMOUNT"), dDate);
+                }
+                return;
+            }
 
             //2
-            // order_by_customer does not seem any faster here
-            String queryGetCustomerLastOrder = String.format(
-                    "SELECT O_ID, O_ENTRY_D, O_CARRIER_ID FROM order_by_customer " +
-                    "WHERE C_W_ID = %d and C_D_ID = %d and C_ID = %d " +
-                    "ORDER BY O_ID DESC LIMIT 1",
-                    warehouseId, districtId, customerId);
-
             Row lastOrder = session.execute(
                     getCustomerLastOrderQuery
                             .boundStatementBuilder()
@@ -84,15 +115,7 @@ public class OrderStatusTransaction extends BaseTransaction {
 
             if (lastOrder != null ) {
                 int orderNumber = lastOrder.getInt("O_ID");
-                String entryTime = lastOrder.getInstant("O_ENTRY_D").toString();
-                int carrierId = lastOrder.getInt("O_CARRIER_ID");
-                System.out.printf("Last order's ID: %d, entry time: %s, carrier's ID: %s \n",
-                        orderNumber, entryTime, carrierId > -1 ? String.valueOf(carrierId) : "null [Order has not been delivered]");
-
-                String queryGetItemsFromLastOrder = String.format(
-                        "SELECT OL_I_ID, OL_SUPPLY_W_ID, OL_QUANTITY, OL_AMOUNT, OL_DELIVERY_D " +
-                        "FROM order_line " +
-                        "WHERE OL_W_ID = %d and OL_D_ID = %d and OL_O_ID = %d", warehouseId, districtId, orderNumber);
+                printLastOrder(out, orderNumber, lastOrder.getInstant("O_ENTRY_D"), lastOrder.getInt("O_CARRIER_ID"));
 
                 List<Row> items = session.execute(
                         getItemFromLastOrderQuery
@@ -104,28 +127,34 @@ public class OrderStatusTransaction extends BaseTransaction {
                 ).all();
 
                 for (Row item : items) {
-                    int itemId = item.getInt("OL_I_ID");
-                    int supplyWarehouseId = item.getInt("OL_SUPPLY_W_ID");
-                    double quantity = item.getBigDecimal("OL_QUANTITY").doubleValue();
-                    double amount = item.getBigDecimal("OL_AMOUNT").doubleValue();
-
-                    Instant dDate = item.getInstant("OL_DELIVERY_D");
-
-                    String deliveryDate = dDate == null ? "NA" : dDate.toString();
-
-                    System.out.printf(
-                            "Item ID : %s, supply warehouse ID: %s, quantity: %f, amount: %f delivery date: %s \n",
-                            itemId, supplyWarehouseId, quantity, amount, deliveryDate);
+                    printItem(out, item.getInt("OL_I_ID"), item.getInt("OL_SUPPLY_W_ID"),
+                            item.getBigDecimal("OL_QUANTITY"), item.getBigDecimal("OL_AMOUNT"),
+                            item.getInstant("OL_DELIVERY_D"));
                 }
             } else {
-                System.out.println("Customer has no complete order.");
+                out.println("Customer has no complete order.");
             }
 
         } else {
-            System.out.println("Customer not found.");
+            out.println("Customer not found.");
         }
     }
 
+    private static void printLastOrder(OutputSink out, int orderNumber, Instant entryDate, int carrierId) {
+        out.printf("Last order's ID: %d, entry time: %s, carrier's ID: %s \n",
+                orderNumber, entryDate.toString(),
+                carrierId > -1 ? String.valueOf(carrierId) : "null [Order has not been delivered]");
+    }
+
+    private static void printItem(OutputSink out, int itemId, int supplyWarehouseId, BigDecimal quantity,
+                                  BigDecimal amount, Instant dDate) {
+        String deliveryDate = dDate == null ? "NA" : dDate.toString();
+
+        out.printf(
+                "Item ID : %s, supply warehouse ID: %s, quantity: %f, amount: %f delivery date: %s \n",
+                itemId, supplyWarehouseId, quantity.doubleValue(), amount.doubleValue(), deliveryDate);
+    }
+
     @Override
     public String getType() {
         return "Order Status";
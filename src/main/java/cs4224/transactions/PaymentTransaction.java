@@ -1,51 +1,76 @@
 package cs4224.transactions;
 
 import com.datastax.oss.driver.api.core.CqlSession;
-import com.datastax.oss.driver.api.core.cql.ResultSet;
+import com.datastax.oss.driver.api.core.uuid.Uuids;
 import cs4224.ParallelExecutor;
+import cs4224.cache.ReferenceData;
 import cs4224.dao.CustomerDao;
 import cs4224.dao.DistrictDao;
 import cs4224.dao.WarehouseDao;
 import cs4224.entities.Customer;
 import cs4224.entities.District;
 import cs4224.entities.Warehouse;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import cs4224.output.OutputSink;
+import cs4224.requests.PaymentRequest;
+import cs4224.utils.ConditionalUpdater;
+import cs4224.utils.DeltaCombiner;
+import cs4224.utils.Money;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.UUID;
 
-import static cs4224.utils.Constants.MAX_RETRIES;
-
-public class PaymentTransaction extends BaseTransaction {
-    private static final Logger LOG = LoggerFactory.getLogger(PaymentTransaction.class);
-    private final ExecutorService executorService;
+public class PaymentTransaction extends BaseTransaction<PaymentRequest> {
     private final WarehouseDao warehouseDao;
     private final DistrictDao districtDao;
     private final CustomerDao customerDao;
+    private final ReferenceData referenceData;
+    private final ConditionalUpdater conditionalUpdater;
+    // Payments to the same warehouse or district are combined into a single increment, see DeltaCombiner.
+    private final DeltaCombiner<Integer> warehouseYtd;
+    private final DeltaCombiner<List<Integer>> districtYtd;
 
-    public PaymentTransaction(CqlSession session, ExecutorService executorService,
-                              WarehouseDao warehouseDao, DistrictDao districtDao, CustomerDao customerDao) {
+    /**
+     * @param combineWindowMicros how long payments to the same warehouse or district are combined, or 0 to increment
+     *                            their year to date amounts one payment at a time
+     */
+    public PaymentTransaction(CqlSession session, WarehouseDao warehouseDao, DistrictDao districtDao,
+                              CustomerDao customerDao, ReferenceData referenceData,
+                              ConditionalUpdater conditionalUpdater, long combineWindowMicros) {
         super(session);
-        this.executorService = executorService;
         this.warehouseDao = warehouseDao;
         this.districtDao = districtDao;
         this.customerDao = customerDao;
+        this.referenceData = referenceData;
+        this.conditionalUpdater = conditionalUpdater;
+        this.warehouseYtd = new DeltaCombiner<>(combineWindowMicros,
+                (warehouseId, cents) -> session.executeAsync(warehouseDao.addYtd(warehouseId, cents)));
+        this.districtYtd = new DeltaCombiner<>(combineWindowMicros,
+                (district, cents) -> session.executeAsync(districtDao.addYtd(district.get(0), district.get(1), cents)));
     }
 
     @Override
-    public void execute(String[] dataLines, String[] parameters) {
-        final int customerWarehouseId = Integer.parseInt(parameters[1]);
-        final int customerDistrictId = Integer.parseInt(parameters[2]);
-        final int customerId = Integer.parseInt(parameters[3]);
-        final double paymentAmount = Double.parseDouble(parameters[4]);
+    public void execute(PaymentRequest request, OutputSink out) {
+        final int customerWarehouseId = request.getWarehouseId();
+        final int customerDistrictId = request.getDistrictId();
+        final int customerId = request.getCustomerId();
+        final double paymentAmount = request.getPaymentAmount();
+
+        // The year to date amounts and the number of payments are counters, which are incremented without being read.
+        final long paymentCents = Money.toCents(paymentAmount);
+        final ParallelExecutor counters = new ParallelExecutor();
+        counters.submit(() -> warehouseYtd.add(customerWarehouseId, paymentCents));
+        counters.submit(() -> districtYtd.add(Arrays.asList(customerWarehouseId, customerDistrictId), paymentCents));
+        counters.submit(() -> customerDao.addPayment(customerWarehouseId, customerDistrictId, customerId,
+                paymentCents));
 
-        List<Object> entities = getEntities(customerWarehouseId, customerDistrictId, customerId);
-        List<Object> updatedEntities = updateEntities(entities, customerWarehouseId, customerDistrictId, customerId,
-                paymentAmount);
-        printOutput((Warehouse) updatedEntities.get(0), (District) updatedEntities.get(1),
-                (Customer) updatedEntities.get(2), paymentAmount);
+        final Customer customer = updateCustomer(
+                Customer.map(customerDao.getById(customerWarehouseId, customerDistrictId, customerId)),
+                customerWarehouseId, customerDistrictId, customerId, paymentAmount);
+        counters.execute();
+        printOutput(out, referenceData.getWarehouse(customerWarehouseId),
+                referenceData.getDistrict(customerWarehouseId, customerDistrictId), customer, paymentAmount);
     }
 
     @Override
@@ -53,111 +78,30 @@ public class PaymentTransaction extends BaseTransaction {
         return "Payment";
     }
 
-    private List<Object> getEntities(final int customerWarehouseId, final int customerDistrictId,
-                                     final int customerId) {
-        final ParallelExecutor getEntitiesExecutor = new ParallelExecutor(executorService)
-                .addTask(() -> Warehouse.map(warehouseDao.getById(customerWarehouseId)))
-                .addTask(() -> District.map(districtDao.getById(customerWarehouseId, customerDistrictId)))
-                .addTask(() -> Customer.map(customerDao.getById(customerWarehouseId, customerDistrictId, customerId)));
-        return getEntitiesExecutor.execute();
-    }
-
-    private List<Object> updateEntities(final List<Object> entities, final int customerWarehouseId,
-                                        final int customerDistrictId, final int customerId, final double paymentAmount) {
-        final ParallelExecutor parallelExecutor = new ParallelExecutor(executorService)
-                .addTask(() -> updateWarehouse((Warehouse) entities.get(0), customerWarehouseId, paymentAmount))
-                .addTask(() -> updateDistrict((District) entities.get(1), customerWarehouseId, customerDistrictId,
-                        paymentAmount))
-                .addTask(() -> updateCustomer((Customer) entities.get(2), customerWarehouseId, customerDistrictId,
-                        customerId, paymentAmount));
-        return parallelExecutor.execute();
-    }
-
-    private Warehouse updateWarehouse(Warehouse warehouse, final int customerWarehouseId, final double paymentAmount) {
-        final Warehouse updatedWarehouse = new Warehouse();
-        Boolean isApplied = false;
-        int numRetries = 0;
-        while (numRetries < MAX_RETRIES && !isApplied) {
-            try {
-                updatedWarehouse.setAmountPaidYTD(warehouse.getAmountPaidYTD().add(new BigDecimal(paymentAmount)));
-                final ResultSet updateRes = warehouseDao.updateWhereIdEquals(customerWarehouseId,
-                        updatedWarehouse.getAmountPaidYTD(), warehouse.getAmountPaidYTD());
-                isApplied = updateRes.wasApplied();
-                if (!isApplied) {
-                    warehouse = Warehouse.map(updateRes.one());
-                }
-            } catch (Exception ignored) { }
-            numRetries++;
-        }
-        if (numRetries == MAX_RETRIES) {
-            LOG.error("Error while updating warehouse");
-            throw new RuntimeException("Error while updating customer");
-        }
-        warehouse.setAmountPaidYTD(updatedWarehouse.getAmountPaidYTD());
-        return warehouse;
-    }
-
-    private District updateDistrict(District district, final int customerWarehouseId, final int customerDistrictId,
-                                    final double paymentAmount) {
-        final District updatedDistrict = new District();
-        boolean isApplied = false;
-        int numRetries = 0;
-        while (numRetries < MAX_RETRIES && !isApplied) {
-            try {
-                updatedDistrict.setAmountPaidYTD(district.getAmountPaidYTD().add(new BigDecimal(paymentAmount)));
-                final ResultSet updateRes = districtDao.updateWhereIdEquals(customerWarehouseId, customerDistrictId,
-                        updatedDistrict.getAmountPaidYTD(), district.getAmountPaidYTD());
-                isApplied = updateRes.wasApplied();
-                if (!isApplied) {
-                    district = District.map(updateRes.one());
-                }
-            } catch (Exception ignored) { }
-            numRetries++;
-        }
-        if (numRetries == MAX_RETRIES) {
-            LOG.error("Error while updating district");
-            throw new RuntimeException("Error while updating customer");
-        }
-        district.setAmountPaidYTD(updatedDistrict.getAmountPaidYTD());
-        return district;
-    }
-
-    private Customer updateCustomer(Customer customer, final int customerWarehouseId, final int customerDistrictId,
-                                    final int customerId, final double paymentAmount) {
-        final Customer updatedCustomer = new Customer();
-        int numRetries = 0;
-        boolean isApplied = false;
-        while (numRetries < MAX_RETRIES && !isApplied) {
-            try {
-                updatedCustomer.setBalance(customer.getBalance().subtract(new BigDecimal(paymentAmount)))
-                        .setPaymentYTD((float) (customer.getPaymentYTD() + paymentAmount))
-                        .setNumPayments(customer.getNumPayments() + 1);
-                final ResultSet updateRes = customerDao.updateWhereIdEquals(updatedCustomer, customerWarehouseId, customerDistrictId,
-                        customerId, customer.getPaymentYTD());
-                isApplied = updateRes.wasApplied();
-                if (!isApplied) {
-                    customer = Customer.map(updateRes.one());
-                }
-            } catch (Exception ignored) { }
-            numRetries++;
-        }
-        if (numRetries == MAX_RETRIES) {
-            LOG.error("Error while updating customer");
-            throw new RuntimeException("Error while updating customer");
-        }
-        customer.setBalance(updatedCustomer.getBalance()).setPaymentYTD(updatedCustomer.getPaymentYTD())
-                .setNumPayments(updatedCustomer.getNumPayments());
-        return customer;
+    private Customer updateCustomer(final Customer customer, final int customerWarehouseId,
+                                    final int customerDistrictId, final int customerId, final double paymentAmount) {
+        // A failed update returns the balance and the write id of the customer, which is all that a retry needs. Other
+        // payments and deliveries may write the same balance, so only the write id of this one tells that it was
+        // applied.
+        final BigDecimal payment = new BigDecimal(paymentAmount);
+        final UUID writeId = Uuids.random();
+        final Customer original = conditionalUpdater.update("Payment customer", customer,
+                c -> customerDao.updateWhereIdEquals(
+                        new Customer().setBalance(c.getBalance().subtract(payment)).setWriteId(writeId),
+                        customerWarehouseId, customerDistrictId, customerId, c.getBalance(), c.getWriteId()),
+                (c, current) -> Customer.map(current),
+                (c, current) -> writeId.equals(Customer.map(current).getWriteId()));
+        return customer.setBalance(original.getBalance().subtract(payment)).setWriteId(writeId);
     }
 
-    private void printOutput(final Warehouse warehouse, final District district, final Customer customer,
-                             final double paymentAmount) {
-        System.out.printf("\n Customer Identifier (C_W_ID, C_D_ID, C_ID): %s", customer.toSpecifier());
-        System.out.println(customer.toName());
-        System.out.println(customer.toAddress());
-        System.out.println(customer.toOtherInfo());
-        System.out.println(warehouse.toAddress());
-        System.out.println(district.toAddress());
-        System.out.printf(" Payment Amount: %f\n", paymentAmount);
+    private void printOutput(final OutputSink out, final Warehouse warehouse, final District district,
+                             final Customer customer, final double paymentAmount) {
+        out.printf("\n Customer Identifier (C_W_ID, C_D_ID, C_ID): %s", customer.toSpecifier());
+        out.println(customer.toName());
+        out.println(customer.toAddress());
+        out.println(customer.toOtherInfo());
+        out.println(warehouse.toAddress());
+        out.println(district.toAddress());
+        out.printf(" Payment Amount: %f\n", paymentAmount);
     }
 }
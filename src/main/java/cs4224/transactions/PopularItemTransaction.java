@@ -1,8 +1,11 @@
 package cs4224.transactions;
 
 import com.datastax.oss.driver.api.core.CqlSession;
+import cs4224.cache.ItemCatalog;
 import cs4224.dao.*;
 import cs4224.entities.*;
+import cs4224.output.OutputSink;
+import cs4224.requests.PopularItemRequest;
 
 import java.math.BigDecimal;
 import java.util.*;
@@ -10,30 +13,33 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-public class PopularItemTransaction extends BaseTransaction {
-    private final DistrictDao districtDao;
+public class PopularItemTransaction extends BaseTransaction<PopularItemRequest> {
+    private final OrderIdAllocator orderIdAllocator;
     private final CustomerDao customerDao;
     private final OrderDao orderDao;
     private final OrderLineDao orderLineDao;
     private final ItemDao itemDao;
+    private final ItemCatalog itemCatalog;
 
-    public PopularItemTransaction(CqlSession session, DistrictDao districtDao, CustomerDao customerDao,
-                                  OrderDao orderDao, OrderLineDao orderLineDao, ItemDao itemDao) {
+    public PopularItemTransaction(CqlSession session, OrderIdAllocator orderIdAllocator, CustomerDao customerDao,
+                                  OrderDao orderDao, OrderLineDao orderLineDao, ItemDao itemDao,
+                                  ItemCatalog itemCatalog) {
         super(session);
-        this.districtDao = districtDao;
+        this.orderIdAllocator = orderIdAllocator;
         this.customerDao = customerDao;
         this.orderDao = orderDao;
         this.orderLineDao = orderLineDao;
         this.itemDao = itemDao;
+        this.itemCatalog = itemCatalog;
     }
 
     @Override
-    public void execute(String[] dataLines, String[] parameters) {
-        final int warehouseId = Integer.parseInt(parameters[1]);
-        final int districtId = Integer.parseInt(parameters[2]);
-        final int L = Integer.parseInt(parameters[3]);
+    public void execute(PopularItemRequest request, OutputSink out) {
+        final int warehouseId = request.getWarehouseId();
+        final int districtId = request.getDistrictId();
+        final int L = request.getNumOrders();
 
-        final Integer nextOrderId = getDistrict(warehouseId, districtId).getNextOrderId();
+        final int nextOrderId = orderIdAllocator.getNextOrderId(warehouseId, districtId);
         final List<Order> orders = orderDao.getById(warehouseId, districtId,
                 nextOrderId - L, nextOrderId).all().stream()
                 .map(Order::map).collect(Collectors.toList());
@@ -68,7 +74,7 @@ public class PopularItemTransaction extends BaseTransaction {
         List<Item> itemsList = getItems(new ArrayList<>(items));
         itemsList.forEach(item -> itemName.put(item.getId(), item.getName()));
 
-        printOutput(warehouseId, districtId, L, orderQuantity, orderItems, customerMap, itemNumOrders, itemName);
+        printOutput(out, warehouseId, districtId, L, orderQuantity, orderItems, customerMap, itemNumOrders, itemName);
     }
 
     @Override
@@ -76,10 +82,6 @@ public class PopularItemTransaction extends BaseTransaction {
         return "Popular Item";
     }
 
-    private District getDistrict(final int warehouseId, final int districtId) {
-        return District.map(districtDao.getNextOrderId(warehouseId, districtId));
-    }
-
     private BigDecimal getOrderLineMaxQuantity(final int warehouseId, final int districtId, final Order order) {
         return OrderLine.map(orderLineDao
                 .getOLQuantity(warehouseId, districtId, order.getId())).getQuantity();
@@ -92,30 +94,42 @@ public class PopularItemTransaction extends BaseTransaction {
     }
 
     private List<Item> getItems(final List<Integer> itemNums) {
-        return itemDao.getNameById(itemNums).all().stream().map(Item::map)
-                .collect(Collectors.toList());
+        final List<Item> items = new ArrayList<>();
+        final List<Integer> missingItemNums = new ArrayList<>();
+        for (Integer itemNum : itemNums) {
+            if (itemCatalog.contains(itemNum)) {
+                items.add(new Item(itemNum, itemCatalog.getName(itemNum)));
+            } else {
+                missingItemNums.add(itemNum);
+            }
+        }
+        // Items added after the catalog was loaded are read from the item table.
+        if (!missingItemNums.isEmpty()) {
+            itemDao.getNameById(missingItemNums).all().stream().map(Item::map).forEach(items::add);
+        }
+        return items;
     }
 
-    private void printOutput(final int warehouseId, final int districtId, final int L,
+    private void printOutput(final OutputSink out, final int warehouseId, final int districtId, final int L,
                              final Map<Order, BigDecimal> orderQuantity, final Map<Integer, List<Integer>> orderItems,
                              final Map<Integer, Customer> customerMap, final Map<Integer, Long> itemPopularity,
                              final Map<Integer, String> itemName) {
-        System.out.printf(" Warehouse Id: %d, District Id: %d\n", warehouseId, districtId);
-        System.out.printf(" Number of last orders to be examined: %d\n\n", L);
+        out.printf(" Warehouse Id: %d, District Id: %d\n", warehouseId, districtId);
+        out.printf(" Number of last orders to be examined: %d\n\n", L);
 
         orderQuantity.forEach((order, quantity) -> {
-            System.out.printf(" Order number: %d, Entry date and time: %s\n", order.getId(), order.getEntryDateTime());
-            System.out.printf(" Customer%s\n", customerMap.get(order.getCustomerId()).toName());
+            out.printf(" Order number: %d, Entry date and time: %s\n", order.getId(), order.getEntryDateTime());
+            out.printf(" Customer%s\n", customerMap.get(order.getCustomerId()).toName());
             orderItems.get(order.getId()).forEach(item ->
-                    System.out.printf(" Item Name: %s, Order Line Quantity: %f\n", itemName.get(item), quantity));
+                    out.printf(" Item Name: %s, Order Line Quantity: %f\n", itemName.get(item), quantity));
             if (orderItems.get(order.getId()).size() == 0) {
-                System.out.println(" No order lines added for the given order Id yet.");
+                out.println(" No order lines added for the given order Id yet.");
             }
-            System.out.println();
+            out.println();
         });
 
         itemPopularity.forEach((item, numOrders) ->
-                System.out.printf(" Item Name: %s, Percentage orders : %f\n", itemName.get(item),
+                out.printf(" Item Name: %s, Percentage orders : %f\n", itemName.get(item),
                         ((float) numOrders / L)));
     }
 }
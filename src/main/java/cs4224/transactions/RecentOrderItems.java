@@ -0,0 +1,149 @@
+package cs4224.transactions;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Item ids of the most recent orders of each district, so that Stock Level gets the items of the last orders of a
+ * district without scanning their order lines.
+ *
+ * The items of an order are kept in slot O_ID % {@link #RING_SIZE} of a ring per district, both in memory and in the
+ * district_recent_items table, where a slot is a row written with the order id as timestamp, so that an older order
+ * never replaces a newer one. The ring in memory holds the orders created by this process and the rows read from the
+ * table, which are never modified, so that the table is only read when the ring in memory misses an order.
+ *
+ * New Order only publishes an order once its items are in the table, so once the table is read, an order that is
+ * missing from the ring while an older order is in it is taken to not exist, e.g. because its id was leased by another
+ * process that has not created it yet, as the range scan of order_line would not find it either. The orders loaded
+ * with the data are older than every order in the ring, so they are never taken to not exist.
+ */
+public class RecentOrderItems {
+    public static final int RING_SIZE = 64;
+
+    private final CqlSession session;
+    private final Map<Long, Ring> rings = new ConcurrentHashMap<>();
+
+    private final PreparedStatement getRingQuery;
+    private final PreparedStatement addOrderQuery;
+
+    public RecentOrderItems(CqlSession session) {
+        this.session = session;
+
+        getRingQuery = session.prepare(BaseTransaction.readOnly(
+                "SELECT O_ID, I_IDS " +
+                        "FROM DISTRICT_RECENT_ITEMS " +
+                        "WHERE D_W_ID = :d_w_id AND D_ID = :d_id"
+        ));
+
+        addOrderQuery = session.prepare(
+                "INSERT INTO DISTRICT_RECENT_ITEMS (D_W_ID, D_ID, SLOT, O_ID, I_IDS) " +
+                        "VALUES (:d_w_id, :d_id, :slot, :o_id, :i_ids) " +
+                        "USING TIMESTAMP :timestamp"
+        );
+    }
+
+    /**
+     * Adds the items of an order that is created.
+     */
+    public CompletionStage<AsyncResultSet> add(int warehouseId, int districtId, int orderId,
+                                               Collection<Integer> itemIds) {
+        final Set<Integer> distinctItemIds = new HashSet<>(itemIds);
+        ringOf(warehouseId, districtId).add(orderId, distinctItemIds);
+        return session.executeAsync(addOrderQuery.boundStatementBuilder()
+                .setInt("d_w_id", warehouseId)
+                .setInt("d_id", districtId)
+                .setInt("slot", Ring.slotOf(orderId))
+                .setInt("o_id", orderId)
+                .setSet("i_ids", distinctItemIds, Integer.class)
+                .setLong("timestamp", orderId)
+                .build());
+    }
+
+    /**
+     * Returns the distinct ids of the items of the orders of the district from {@code fromOrderId} included to
+     * {@code toOrderId} excluded, or null if the ring cannot tell them, i.e. if there are more than
+     * {@link #RING_SIZE} of them, some of them were loaded with the data, or newer orders replaced some of them.
+     */
+    public Set<Integer> getItemIds(int warehouseId, int districtId, int fromOrderId, int toOrderId) {
+        if (toOrderId - fromOrderId > RING_SIZE) {
+            return null;
+        }
+        final Ring ring = ringOf(warehouseId, districtId);
+        final Set<Integer> itemIds = ring.getItemIds(fromOrderId, toOrderId, false);
+        if (itemIds != null) {
+            return itemIds;
+        }
+
+        for (Row row : session.execute(getRingQuery.boundStatementBuilder()
+                .setInt("d_w_id", warehouseId)
+                .setInt("d_id", districtId)
+                .build())) {
+            ring.add(row.getInt("O_ID"), row.getSet("I_IDS", Integer.class));
+        }
+        return ring.getItemIds(fromOrderId, toOrderId, true);
+    }
+
+    private Ring ringOf(int warehouseId, int districtId) {
+        final long key = ((long) warehouseId << Integer.SIZE) | (districtId & 0xFFFFFFFFL);
+        return rings.computeIfAbsent(key, k -> new Ring());
+    }
+
+    /**
+     * Ring of the items of the most recent orders of a district that are known to this process.
+     */
+    static class Ring {
+        // Order whose items are in each slot, or 0 for none, as order ids start at 1.
+        private final int[] orderIds = new int[RING_SIZE];
+        private final Set<?>[] itemIds = new Set<?>[RING_SIZE];
+
+        static int slotOf(int orderId) {
+            return Math.floorMod(orderId, RING_SIZE);
+        }
+
+        synchronized void add(int orderId, Set<Integer> items) {
+            final int slot = slotOf(orderId);
+            if (orderId > orderIds[slot]) {
+                orderIds[slot] = orderId;
+                itemIds[slot] = items;
+            }
+        }
+
+        // Distinct items of the orders from fromOrderId included to toOrderId excluded, or null if one of them is not
+        // in the ring. If skipMissing, an order that is missing while an older order is in the ring is skipped as one
+        // that does not exist, but one whose slot holds a newer order still gives null.
+        @SuppressWarnings("unchecked")
+        synchronized Set<Integer> getItemIds(int fromOrderId, int toOrderId, boolean skipMissing) {
+            final int oldestOrderId = skipMissing ? oldestOrderId() : Integer.MAX_VALUE;
+            final Set<Integer> items = new HashSet<>();
+            for (int orderId = Math.max(fromOrderId, 1); orderId < toOrderId; orderId++) {
+                final int slot = slotOf(orderId);
+                if (orderIds[slot] == orderId) {
+                    items.addAll((Set<Integer>) itemIds[slot]);
+                } else if (orderIds[slot] > orderId || orderId <= oldestOrderId) {
+                    return null;
+                }
+            }
+            return items;
+        }
+
+        // Oldest order in the ring, or Integer.MAX_VALUE if it is empty.
+        private int oldestOrderId() {
+            int oldest = Integer.MAX_VALUE;
+            for (int orderId : orderIds) {
+                if (orderId != 0) {
+                    oldest = Math.min(oldest, orderId);
+                }
+            }
+            return oldest;
+        }
+    }
+}
@@ -6,34 +6,36 @@ import com.datastax.oss.driver.api.core.cql.ResultSet;
 import com.datastax.oss.driver.api.core.cql.Row;
 import cs4224.entities.Customer;
 import cs4224.entities.Order;
+import cs4224.output.OutputSink;
+import cs4224.requests.RelatedCustomerRequest;
 
 import java.util.*;
 
-public class RelatedCustomerTransaction extends BaseTransaction {
-    PreparedStatement getOrdersOfCustomerQuery;
-    PreparedStatement getItemsOfOrderQuery;
-    PreparedStatement getOrdersOfItemQuery;
-    PreparedStatement getCustomerOfOrderQuery;
+public class RelatedCustomerTransaction extends BaseTransaction<RelatedCustomerRequest> {
+    private final PreparedStatement getOrdersOfCustomerQuery;
+    private final PreparedStatement getItemsOfOrderQuery;
+    private final PreparedStatement getOrdersOfItemQuery;
+    private final PreparedStatement getCustomerOfOrderQuery;
 
     public RelatedCustomerTransaction(CqlSession session) {
         super(session);
 
-        getOrdersOfCustomerQuery = session.prepare(
+        getOrdersOfCustomerQuery = prepareReadOnly(
                 "SELECT O_ID "
                         + "FROM order_by_customer "
                         + "WHERE C_W_ID = :c_w_id AND C_D_ID = :c_d_id AND C_ID = :c_id"
         );
-        getItemsOfOrderQuery = session.prepare(
+        getItemsOfOrderQuery = prepareReadOnly(
                 "SELECT OL_I_ID "
                         + "FROM order_line "
                         + "WHERE OL_W_ID = :ol_w_id AND OL_D_ID = :ol_d_id AND OL_O_ID = :ol_o_id"
         );
-        getOrdersOfItemQuery = session.prepare(
+        getOrdersOfItemQuery = prepareReadOnly(
                 "SELECT O_W_ID, O_D_ID, O_ID "
                         + "FROM order_by_item "
                         + "WHERE I_ID = :i_id"
         );
-        getCustomerOfOrderQuery = session.prepare(
+        getCustomerOfOrderQuery = prepareReadOnly(
                 "SELECT O_C_ID "
                         + "FROM orders "
                         + "WHERE O_W_ID = :ol_w_id AND O_D_ID = :ol_d_id AND O_ID = :o_id"
@@ -41,24 +43,24 @@ public class RelatedCustomerTransaction extends BaseTransaction {
     }
 
     @Override
-    public void execute(String[] dataLines, String[] parameters) {
-        final int customerWarehouseId = Integer.parseInt(parameters[1]);
-        final int customerDistrictId = Integer.parseInt(parameters[2]);
-        final int customerId = Integer.parseInt(parameters[3]);
+    public void execute(RelatedCustomerRequest request, OutputSink out) {
+        final int customerWarehouseId = request.getWarehouseId();
+        final int customerDistrictId = request.getDistrictId();
+        final int customerId = request.getCustomerId();
 
         HashSet<Customer> relatedCustomers = executeAndGetResult(customerWarehouseId, customerDistrictId, customerId);
-        System.out.printf("Number of relatedCustomers: %d\n", relatedCustomers.size());
-        System.out.printf("Related customers (C_W_ID, C_D_ID, C_ID):");
+        out.printf("Number of relatedCustomers: %d\n", relatedCustomers.size());
+        out.printf("Related customers (C_W_ID, C_D_ID, C_ID):");
         int count = 1;
         for (Customer customer : relatedCustomers) {
             if (count == relatedCustomers.size()) {
-                System.out.printf(" %s", customer.toSpecifier());
+                out.printf(" %s", customer.toSpecifier());
             } else {
-                System.out.printf(" %s,", customer.toSpecifier());
+                out.printf(" %s,", customer.toSpecifier());
             }
             count++;
         }
-        System.out.printf("\n");
+        out.printf("\n");
     }
 
     @Override
@@ -3,34 +3,37 @@ package cs4224.transactions;
 import com.datastax.oss.driver.api.core.CqlIdentifier;
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import cs4224.output.OutputSink;
+import cs4224.requests.StockLevelRequest;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
-public class StockLevelTransaction extends BaseTransaction {
+public class StockLevelTransaction extends BaseTransaction<StockLevelRequest> {
 
-    private final PreparedStatement getNextOrderIdOfDistrictQuery;
+    private final OrderIdAllocator orderIdAllocator;
+    private final RecentOrderItems recentOrderItems;
     private final PreparedStatement getItemIdsOfOrdersQuery;
     private final PreparedStatement getStockQuantitiesOfItemsQuery;
 
 
-    public StockLevelTransaction(CqlSession session) {
+    public StockLevelTransaction(CqlSession session, OrderIdAllocator orderIdAllocator,
+                                 RecentOrderItems recentOrderItems) {
         super(session);
 
-        getNextOrderIdOfDistrictQuery = session.prepare(
-                "SELECT D_NEXT_O_ID " +
-                        "FROM district " +
-                        "WHERE D_W_ID = :d_w_id AND D_ID = :d_id"
-        );
+        this.orderIdAllocator = orderIdAllocator;
+        this.recentOrderItems = recentOrderItems;
 
-        getItemIdsOfOrdersQuery = session.prepare(
+        getItemIdsOfOrdersQuery = prepareReadOnly(
                 "SELECT OL_I_ID " +
                         "FROM order_line " +
                         "WHERE OL_W_ID = :ol_w_id AND OL_D_ID = :ol_d_id " +
                         "AND OL_O_ID >= :ol_o_id_min AND OL_O_ID <= :ol_o_id_max"
         );
 
-        getStockQuantitiesOfItemsQuery = session.prepare(
+        getStockQuantitiesOfItemsQuery = prepareReadOnly(
                 "SELECT S_QUANTITY " +
                         "FROM stock " +
                         "WHERE S_W_ID = :s_w_id AND S_I_ID IN :s_i_ids"
@@ -39,21 +42,20 @@ public class StockLevelTransaction extends BaseTransaction {
     }
 
     @Override
-    public void execute(String[] dataLines, String[] parameters) {
-        final int warehouseId = Integer.parseInt(parameters[1]);
-        final int districtId = Integer.parseInt(parameters[2]);
-        final int threshold = Integer.parseInt(parameters[3]);
-        final int numberOfOrders = Integer.parseInt(parameters[4]);
-
-        final int districtNextOrderId = session.execute(
-                getNextOrderIdOfDistrictQuery
-                        .boundStatementBuilder()
-                        .setInt("d_w_id", warehouseId)
-                        .setInt("d_id", districtId)
-                        .build()
-        ).one().getInt(CqlIdentifier.fromCql("D_NEXT_O_ID"));
-
-        final List<Integer> matchingOrderLineItemIds = session
+    public void execute(StockLevelRequest request, OutputSink out) {
+        final int warehouseId = request.getWarehouseId();
+        final int districtId = request.getDistrictId();
+        final int threshold = request.getThreshold();
+        final int numberOfOrders = request.getNumOrders();
+
+        final int districtNextOrderId = orderIdAllocator.getNextOrderId(warehouseId, districtId);
+
+        // The order lines of the last orders are only scanned if they are not all in the ring of recent orders.
+        final Collection<Integer> recentItemIds = recentOrderItems.getItemIds(warehouseId, districtId,
+                districtNextOrderId - numberOfOrders, districtNextOrderId);
+        final List<Integer> matchingOrderLineItemIds = recentItemIds != null
+                ? new ArrayList<>(recentItemIds)
+                : session
                 .execute(
                         getItemIdsOfOrdersQuery
                                 .boundStatementBuilder()
@@ -82,7 +84,7 @@ public class StockLevelTransaction extends BaseTransaction {
                 .filter(row -> row.getBigDecimal(CqlIdentifier.fromCql("S_QUANTITY")).intValue() < threshold)
                 .count();
 
-        System.out.printf("Number of items with stock quantities below the threshold: %d%n", count);
+        out.printf("Number of items with stock quantities below the threshold: %d%n", count);
     }
 
     @Override
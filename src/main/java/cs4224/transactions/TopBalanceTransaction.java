@@ -2,40 +2,33 @@ package cs4224.transactions;
 
 import com.datastax.oss.driver.api.core.CqlIdentifier;
 import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.datastax.oss.driver.api.core.cql.Row;
 import cs4224.ParallelExecutor;
+import cs4224.cache.ReferenceData;
+import cs4224.output.OutputSink;
+import cs4224.requests.TopBalanceRequest;
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
-public class TopBalanceTransaction extends BaseTransaction {
+public class TopBalanceTransaction extends BaseTransaction<TopBalanceRequest> {
 
-    private final ExecutorService executorService;
-    private final Map<Integer, String> allWarehousesNamesMapping;
+    private final ReferenceData referenceData;
     private final PreparedStatement getBalancesOfCustomersQuery;
     private final PreparedStatement getCustomersQuery;
-    private final PreparedStatement getDistrictQuery;
 
-    public TopBalanceTransaction(CqlSession session, ExecutorService executorService) {
+    public TopBalanceTransaction(CqlSession session, ReferenceData referenceData) {
         super(session);
 
-        this.executorService = executorService;
+        this.referenceData = referenceData;
 
-        this.allWarehousesNamesMapping =
-                session.execute("SELECT W_ID, W_NAME FROM warehouse")
-                        .all()
-                        .stream()
-                        .collect(Collectors.toMap(
-                                warehouse -> warehouse.getInt(CqlIdentifier.fromCql("W_ID")),
-                                warehouse -> warehouse.getString(CqlIdentifier.fromCql("W_NAME"))
-                        ));
-
-        this.getBalancesOfCustomersQuery = session.prepare(
+        this.getBalancesOfCustomersQuery = prepareReadOnly(
                 "SELECT C_W_ID, C_BALANCE, C_D_ID, C_ID " +
                         "FROM customer_balance " +
                         "WHERE C_W_ID = :c_w_id " +
@@ -43,33 +36,35 @@ public class TopBalanceTransaction extends BaseTransaction {
                         "LIMIT :n"
         );
 
-        this.getCustomersQuery = session.prepare(
+        this.getCustomersQuery = prepareReadOnly(
                 "SELECT C_W_ID, C_D_ID, C_ID, C_FIRST, C_MIDDLE, C_LAST " +
                         "FROM customer " +
                         "WHERE C_W_ID = :c_w_id AND C_D_ID = :c_d_id AND C_ID IN :c_ids"
         );
-
-        this.getDistrictQuery = session.prepare(
-                "SELECT D_W_ID, D_ID, D_NAME " +
-                        "FROM district " +
-                        "WHERE D_W_ID = :d_w_id AND D_ID = :d_id"
-        );
     }
 
     @Override
-    public void execute(String[] dataLines, String[] parameters) {
-        final List<Row> topTenCustomers = this.allWarehousesNamesMapping
-                .keySet()
+    public void execute(TopBalanceRequest request, OutputSink out) {
+        // The top ten customers of every warehouse are read at the same time.
+        final ParallelExecutor balancesExecutor = new ParallelExecutor();
+        final List<CompletableFuture<List<Row>>> balancesOfWarehouses = this.referenceData
+                .getWarehouseIds()
                 .stream()
-                .map(warehouseId ->
-                        session.execute(
+                .map(warehouseId -> balancesExecutor.submit(() ->
+                        session.executeAsync(
                                 this.getBalancesOfCustomersQuery
                                     .boundStatementBuilder()
                                     .setInt("c_w_id", warehouseId)
                                     .setInt("n", 10)
                                     .build()
-                        ).all()
-                )
+                        ).thenApply(TopBalanceTransaction::rows)
+                ))
+                .collect(Collectors.toList());
+        balancesExecutor.execute();
+
+        final List<Row> topTenCustomers = balancesOfWarehouses
+                .stream()
+                .map(CompletableFuture::join)
                 .flatMap(List<Row>::stream)
                 .sorted(
                         Comparator.comparing(
@@ -85,12 +80,14 @@ public class TopBalanceTransaction extends BaseTransaction {
                 )
         );
 
-        final Callable<Object> topTenCustomersNamesMappingTask = () -> groupedTopTenCustomers
+        // The names of the customers of every district are read at the same time.
+        final ParallelExecutor namesExecutor = new ParallelExecutor();
+        final List<CompletableFuture<List<Row>>> namesOfDistricts = groupedTopTenCustomers
                 .values()
                 .stream()
                 .flatMap(groupsOfCustomers -> groupsOfCustomers.values().stream())
-                .flatMap(groupOfCustomers ->
-                        session.execute(
+                .map(groupOfCustomers -> namesExecutor.submit(() ->
+                        session.executeAsync(
                                 this.getCustomersQuery
                                         .boundStatementBuilder()
                                         .setInt(
@@ -112,8 +109,15 @@ public class TopBalanceTransaction extends BaseTransaction {
                                                 Integer.class
                                         )
                                         .build()
-                        ).all().stream()
-                )
+                        ).thenApply(TopBalanceTransaction::rows)
+                ))
+                .collect(Collectors.toList());
+        namesExecutor.execute();
+
+        final Map<Integer, Map<Integer, Map<Integer, String>>> topTenCustomersNamesMapping = namesOfDistricts
+                .stream()
+                .map(CompletableFuture::join)
+                .flatMap(List<Row>::stream)
                 .collect(
                         Collectors.groupingBy(
                                 (Row customer) -> customer.getInt(CqlIdentifier.fromCql("C_W_ID")),
@@ -132,44 +136,8 @@ public class TopBalanceTransaction extends BaseTransaction {
                         )
                 );
 
-        final Callable<Object> districtNamesMappingTask = () -> groupedTopTenCustomers
-                .keySet()
-                .stream()
-                .flatMap(warehouseId ->
-                        groupedTopTenCustomers
-                                .get(warehouseId)
-                                .keySet()
-                                .stream()
-                                .map(districtId ->
-                                        session.execute(
-                                                this.getDistrictQuery
-                                                        .boundStatementBuilder()
-                                                        .setInt(CqlIdentifier.fromCql("d_w_id"), warehouseId)
-                                                        .setInt(CqlIdentifier.fromCql("d_id"), districtId)
-                                                        .build()
-                                        ).one()
-                                )
-                )
-                .collect(Collectors.groupingBy(
-                        district -> district.getInt(CqlIdentifier.fromCql("D_W_ID")),
-                        Collectors.toMap(
-                                district -> district.getInt(CqlIdentifier.fromCql("D_ID")),
-                                district -> district.getString(CqlIdentifier.fromCql("D_NAME"))
-                        )
-                ));
-
-        List<Object> resultsOfTasks = new ParallelExecutor(this.executorService)
-                .addTask(topTenCustomersNamesMappingTask)
-                .addTask(districtNamesMappingTask)
-                .execute();
-
-        final Map<Integer, Map<Integer, Map<Integer, String>>> topTenCustomersNamesMapping =
-                (Map<Integer, Map<Integer, Map<Integer, String>>>) resultsOfTasks.get(0);
-        final Map<Integer, Map<Integer, String>> districtNamesMapping =
-                (Map<Integer, Map<Integer, String>>) resultsOfTasks.get(1);
-
         topTenCustomers.forEach(customer ->
-                System.out.printf(
+                out.printf(
                         "Name of customer: %s%n" +
                                 "Balance of customer's outstanding payment: %.2f%n" +
                                 "Warehouse name of customer: %s%n" +
@@ -179,14 +147,22 @@ public class TopBalanceTransaction extends BaseTransaction {
                                 .get(customer.getInt(CqlIdentifier.fromCql("C_D_ID")))
                                 .get(customer.getInt(CqlIdentifier.fromCql("C_ID"))),
                         customer.getBigDecimal(CqlIdentifier.fromCql("C_BALANCE")),
-                        this.allWarehousesNamesMapping.get(customer.getInt(CqlIdentifier.fromCql("C_W_ID"))),
-                        districtNamesMapping
-                                .get(customer.getInt(CqlIdentifier.fromCql("C_W_ID")))
-                                .get(customer.getInt(CqlIdentifier.fromCql("C_D_ID")))
+                        this.referenceData.getWarehouse(customer.getInt(CqlIdentifier.fromCql("C_W_ID"))).getName(),
+                        this.referenceData.getDistrict(
+                                customer.getInt(CqlIdentifier.fromCql("C_W_ID")),
+                                customer.getInt(CqlIdentifier.fromCql("C_D_ID"))
+                        ).getName()
                 )
         );
     }
 
+    // Both queries return at most ten rows, which fit in the first page.
+    private static List<Row> rows(AsyncResultSet resultSet) {
+        final List<Row> rows = new ArrayList<>();
+        resultSet.currentPage().forEach(rows::add);
+        return rows;
+    }
+
     @Override
     public String getType() {
         return "Top Balance";
@@ -0,0 +1,50 @@
+package cs4224.utils;
+
+import java.util.SplittableRandom;
+
+/**
+ * Intended start times of the transactions of an open loop run. Transactions arrive at a target rate, either at fixed
+ * intervals or as a Poisson process, regardless of how long the previous transactions take.
+ */
+public class ArrivalSchedule {
+    public enum Distribution {
+        FIXED,
+        POISSON;
+
+        public static Distribution fromName(String name) {
+            for (Distribution distribution : values()) {
+                if (distribution.name().equalsIgnoreCase(name)) {
+                    return distribution;
+                }
+            }
+            throw new IllegalArgumentException("Unknown arrival distribution: " + name);
+        }
+    }
+
+    private final double meanIntervalNanos;
+    private final Distribution distribution;
+    private final SplittableRandom random = new SplittableRandom();
+    // Kept as a double so that rounding errors do not accumulate over the run.
+    private double nextArrival;
+
+    /**
+     * @param ratePerSecond target number of transactions per second
+     * @param startNanos    intended start time of the first transaction, from {@link System#nanoTime()}
+     */
+    public ArrivalSchedule(double ratePerSecond, Distribution distribution, long startNanos) {
+        this.meanIntervalNanos = 1e9 / ratePerSecond;
+        this.distribution = distribution;
+        this.nextArrival = startNanos;
+    }
+
+    /**
+     * Returns the intended start time of the next transaction, from {@link System#nanoTime()}.
+     */
+    public long next() {
+        final long arrival = (long) nextArrival;
+        nextArrival += distribution == Distribution.POISSON
+                ? -Math.log(1 - random.nextDouble()) * meanIntervalNanos
+                : meanIntervalNanos;
+        return arrival;
+    }
+}
@@ -0,0 +1,12 @@
+package cs4224.utils;
+
+/**
+ * Thrown when a conditional update is still not applied after the highest number of attempts.
+ */
+public class ConditionalUpdateException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ConditionalUpdateException(String name, int attempts, Throwable lastError) {
+        super(String.format("%s not applied after %d attempts", name, attempts), lastError);
+    }
+}
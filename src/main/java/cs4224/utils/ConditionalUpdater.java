@@ -0,0 +1,336 @@
+package cs4224.utils;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.DriverTimeoutException;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.ResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.datastax.oss.driver.api.core.servererrors.ReadTimeoutException;
+import com.datastax.oss.driver.api.core.servererrors.WriteTimeoutException;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Executes lightweight transactions that update a row from values read before, retrying them until they are applied.
+ *
+ * An update is computed from a state, i.e. the values of the row it was computed from, and is only applied if the row
+ * still holds them. If it is not applied, the values that the row holds instead, which Cassandra returns with the
+ * result, give the state to retry with, so the row is not read again. If the outcome of an update is unknown, e.g. on a
+ * timeout, the same update is retried: Paxos completes any earlier proposal on the row first, so if the update was
+ * applied, the retry is not, and the values it returns are those written by the update. Any other error, e.g. an
+ * invalid query or too few replicas, fails the update at once, as the update was not applied.
+ *
+ * Retries wait for an exponential backoff with full jitter, so that contending clients spread their retries instead
+ * of retrying at the same time. The attempts, conflicts and failures of each kind of update are counted and written
+ * by {@link #printStatistics(PrintStream)}.
+ *
+ * Idempotent operations that are not conditional, e.g. a read or an insert, are retried with the same backoff by
+ * {@link #retryAsync}, but only when they time out.
+ */
+public class ConditionalUpdater {
+    // Cassandra 4 reports timeouts of lightweight transactions as CAS_WRITE_UNKNOWN, which this driver cannot decode.
+    private static final String CAS_WRITE_UNKNOWN_MESSAGE = "Unsupported error code";
+
+    private final CqlSession session;
+    private final StatementMetrics statementMetrics;
+    private final int maxAttempts;
+    private final long baseBackoffMicros;
+    private final long maxBackoffMicros;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Contention> contentions = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxAttempts       number of attempts of an update before it fails with a
+     *                          {@link ConditionalUpdateException}
+     * @param baseBackoffMillis highest backoff before the first retry, which doubles with every retry
+     * @param maxBackoffMillis  highest backoff before any retry
+     */
+    public ConditionalUpdater(CqlSession session, StatementMetrics statementMetrics, int maxAttempts,
+                              long baseBackoffMillis, long maxBackoffMillis) {
+        this.session = session;
+        this.statementMetrics = statementMetrics;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMicros = TimeUnit.MILLISECONDS.toMicros(baseBackoffMillis);
+        this.maxBackoffMicros = TimeUnit.MILLISECONDS.toMicros(maxBackoffMillis);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "conditional-update-backoff");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Applies an update, and returns the state it was applied with, or null if {@code onConflict} gave up.
+     *
+     * @param name        kind of update, under which its contention is counted
+     * @param state       values of the row that the first update is computed from
+     * @param statement   lightweight transaction that updates the row if it still holds the values of a state
+     * @param onConflict  state to retry with, from a state whose update was not applied and the values that the row
+     *                    holds instead, or null to give up
+     * @param isWrittenBy whether the values of the row are those written by the update of a state, which is only asked
+     *                    when that update may have been applied, so they must be values that no other update writes,
+     *                    e.g. a random id of the update
+     */
+    public <S> S update(String name, S state, Function<S, Statement<?>> statement,
+                        BiFunction<S, Row, S> onConflict, BiPredicate<S, Row> isWrittenBy) {
+        final Contention contention = contentions.computeIfAbsent(name, k -> new Contention());
+        boolean mayBeApplied = false;
+        for (int attempt = 1; ; attempt++) {
+            contention.attempts.increment();
+            final ResultSet resultSet;
+            try {
+                resultSet = session.execute(statement.apply(state));
+            } catch (RuntimeException e) {
+                if (!isTimeout(e)) {
+                    contention.errors.increment();
+                    contention.failed.increment();
+                    throw e;
+                }
+                contention.timeouts.increment();
+                mayBeApplied = true;
+                backOff(name, contention, attempt, e);
+                continue;
+            }
+            if (statementMetrics.wasApplied(resultSet)) {
+                contention.applied.increment();
+                return state;
+            }
+            final Row current = resultSet.one();
+            if (mayBeApplied && isWrittenBy.test(state, current)) {
+                contention.applied.increment();
+                return state;
+            }
+            contention.conflicts.increment();
+            state = onConflict.apply(state, current);
+            if (state == null) {
+                contention.givenUp.increment();
+                return null;
+            }
+            mayBeApplied = false;
+            backOff(name, contention, attempt, null);
+        }
+    }
+
+    /**
+     * Same as {@link #update}, without blocking. {@code onConflict} and {@code isWrittenBy} run on a driver thread, so
+     * they must not block, e.g. by executing a query synchronously.
+     */
+    public <S> CompletionStage<S> updateAsync(String name, S state, Function<S, Statement<?>> statement,
+                                              BiFunction<S, Row, S> onConflict, BiPredicate<S, Row> isWrittenBy) {
+        final Contention contention = contentions.computeIfAbsent(name, k -> new Contention());
+        return new Update<>(name, contention, statement, onConflict, isWrittenBy).attempt(state, 1, false);
+    }
+
+    /**
+     * Runs an idempotent operation, and retries it while it times out, after the same backoff as an update. It fails
+     * with the error of the operation on any other error, and with a {@link ConditionalUpdateException} once its last
+     * attempt times out.
+     *
+     * @param name      kind of operation, under which its attempts are counted
+     * @param operation attempt of the operation, which is told whether an earlier attempt may have been applied
+     */
+    public <T> CompletionStage<T> retryAsync(String name, Function<Boolean, CompletionStage<T>> operation) {
+        final Contention contention = contentions.computeIfAbsent(name, k -> new Contention());
+        return retryAsync(name, contention, operation, 1);
+    }
+
+    private <T> CompletionStage<T> retryAsync(String name, Contention contention,
+                                              Function<Boolean, CompletionStage<T>> operation, int attempt) {
+        contention.attempts.increment();
+        CompletionStage<T> result;
+        try {
+            result = operation.apply(attempt > 1);
+        } catch (RuntimeException e) {
+            result = failed(e);
+        }
+        return result
+                .handle((value, error) -> {
+                    if (error == null) {
+                        contention.applied.increment();
+                        return CompletableFuture.completedFuture(value);
+                    }
+                    final Throwable cause = unwrap(error);
+                    if (!isTimeout(cause) && !(cause instanceof ReadTimeoutException)) {
+                        contention.errors.increment();
+                        contention.failed.increment();
+                        return ConditionalUpdater.<T>failed(cause);
+                    }
+                    contention.timeouts.increment();
+                    return schedule(name, contention, attempt, cause,
+                            () -> retryAsync(name, contention, operation, attempt + 1));
+                })
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * Writes the contention of every kind of update to {@code err}, starting with the one with the most conflicts.
+     */
+    public void printStatistics(PrintStream err) {
+        if (contentions.isEmpty()) {
+            return;
+        }
+        final Map<String, Contention> sorted = new TreeMap<>(contentions);
+        err.println("Contention of lightweight transactions:");
+        sorted.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue().conflicts.sum(), a.getValue().conflicts.sum()))
+                .forEach(entry -> {
+                    final Contention c = entry.getValue();
+                    err.printf("%s: attempts %d, applied %d, conflicts %d, timeouts %d, errors %d, given up %d, " +
+                                    "failed %d, total backoff %dms\n",
+                            entry.getKey(), c.attempts.sum(), c.applied.sum(), c.conflicts.sum(), c.timeouts.sum(),
+                            c.errors.sum(), c.givenUp.sum(), c.failed.sum(),
+                            TimeUnit.MICROSECONDS.toMillis(c.backoffMicros.sum()));
+                });
+    }
+
+    // Sleeps before the next attempt, or throws if the attempt was the last one.
+    private void backOff(String name, Contention contention, int attempt, Throwable cause) {
+        final long backoffMicros = nextBackoffMicros(name, contention, attempt, cause);
+        try {
+            TimeUnit.MICROSECONDS.sleep(backoffMicros);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConditionalUpdateException(name, attempt, e);
+        }
+    }
+
+    // Returns a backoff of up to baseBackoffMicros * 2^(attempt - 1), or throws if the attempt was the last one.
+    private long nextBackoffMicros(String name, Contention contention, int attempt, Throwable cause) {
+        if (attempt >= maxAttempts) {
+            contention.failed.increment();
+            throw new ConditionalUpdateException(name, attempt, cause);
+        }
+        final long backoffMicros = ThreadLocalRandom.current()
+                .nextLong(Math.min(maxBackoffMicros, baseBackoffMicros << Math.min(attempt - 1, 30)) + 1);
+        contention.backoffMicros.add(backoffMicros);
+        return backoffMicros;
+    }
+
+    // Runs the next attempt once the backoff of the given one has passed, or fails if the attempt was the last one.
+    // The next attempt runs on the scheduler, so that an attempt that fails at once does not grow the stack.
+    private <T> CompletionStage<T> schedule(String name, Contention contention, int attempt, Throwable cause,
+                                            Supplier<CompletionStage<T>> next) {
+        final long backoffMicros;
+        try {
+            backoffMicros = nextBackoffMicros(name, contention, attempt, cause);
+        } catch (ConditionalUpdateException e) {
+            return failed(e);
+        }
+        final CompletableFuture<T> retried = new CompletableFuture<>();
+        scheduler.schedule(() -> next.get().whenComplete((value, error) -> {
+            if (error != null) {
+                retried.completeExceptionally(unwrap(error));
+            } else {
+                retried.complete(value);
+            }
+        }), backoffMicros, TimeUnit.MICROSECONDS);
+        return retried;
+    }
+
+    private static <T> CompletionStage<T> failed(Throwable error) {
+        final CompletableFuture<T> failed = new CompletableFuture<>();
+        failed.completeExceptionally(error);
+        return failed;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    // Errors after which a write may or may not have been applied: the timeouts of the replicas, including those of
+    // lightweight transactions, and the client giving up on the request.
+    private static boolean isTimeout(Throwable error) {
+        return error instanceof WriteTimeoutException || error instanceof DriverTimeoutException
+                || error instanceof IllegalArgumentException && error.getMessage() != null
+                && error.getMessage().startsWith(CAS_WRITE_UNKNOWN_MESSAGE);
+    }
+
+    private static class Contention {
+        private final LongAdder attempts = new LongAdder();
+        private final LongAdder applied = new LongAdder();
+        private final LongAdder conflicts = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder givenUp = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder backoffMicros = new LongAdder();
+    }
+
+    private class Update<S> {
+        private final String name;
+        private final Contention contention;
+        private final Function<S, Statement<?>> statement;
+        private final BiFunction<S, Row, S> onConflict;
+        private final BiPredicate<S, Row> isWrittenBy;
+
+        Update(String name, Contention contention, Function<S, Statement<?>> statement,
+               BiFunction<S, Row, S> onConflict, BiPredicate<S, Row> isWrittenBy) {
+            this.name = name;
+            this.contention = contention;
+            this.statement = statement;
+            this.onConflict = onConflict;
+            this.isWrittenBy = isWrittenBy;
+        }
+
+        // mayBeApplied is whether the update of state may have been applied by an earlier attempt.
+        CompletionStage<S> attempt(S state, int attempt, boolean mayBeApplied) {
+            contention.attempts.increment();
+            CompletionStage<AsyncResultSet> result;
+            try {
+                result = session.executeAsync(statement.apply(state));
+            } catch (RuntimeException e) {
+                result = failed(e);
+            }
+            return result
+                    .handle((resultSet, error) -> {
+                        if (error != null) {
+                            final Throwable cause = unwrap(error);
+                            if (!isTimeout(cause)) {
+                                contention.errors.increment();
+                                contention.failed.increment();
+                                return ConditionalUpdater.<S>failed(cause);
+                            }
+                            contention.timeouts.increment();
+                            return retry(state, attempt, true, cause);
+                        }
+                        if (statementMetrics.wasApplied(resultSet)) {
+                            contention.applied.increment();
+                            return CompletableFuture.completedFuture(state);
+                        }
+                        final Row current = resultSet.one();
+                        if (mayBeApplied && isWrittenBy.test(state, current)) {
+                            contention.applied.increment();
+                            return CompletableFuture.completedFuture(state);
+                        }
+                        contention.conflicts.increment();
+                        final S next = onConflict.apply(state, current);
+                        if (next == null) {
+                            contention.givenUp.increment();
+                            return CompletableFuture.<S>completedFuture(null);
+                        }
+                        return retry(next, attempt, false, null);
+                    })
+                    .thenCompose(Function.identity());
+        }
+
+        private CompletionStage<S> retry(S state, int attempt, boolean mayBeApplied, Throwable cause) {
+            return schedule(name, contention, attempt, cause, () -> attempt(state, attempt + 1, mayBeApplied));
+        }
+    }
+}
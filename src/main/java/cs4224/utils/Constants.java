@@ -9,7 +9,14 @@ public final class Constants {
     public final static String ITEM_TABLE = "ITEM";
     public final static String STOCK_TABLE = "STOCK";
     public static int CASSANDRA_PORT = 9042;
-    public static int MAX_RETRIES = 3;
+    // Retries of lightweight transactions, see ConditionalUpdater.
+    public final static int MAX_CAS_ATTEMPTS = 20;
+    public final static long CAS_BASE_BACKOFF_MILLIS = 2;
+    public final static long CAS_MAX_BACKOFF_MILLIS = 100;
+    // Window in which the payments to the same warehouse or district are combined, see DeltaCombiner.
+    public final static long PAYMENT_COMBINE_WINDOW_MICROS = 2000;
+    // Execution profile of application.conf for the queries of the read-only transactions.
+    public final static String READ_ONLY_PROFILE = "read-only";
     public final static int NULL_DELIVERY_ID = -1;
     public final static int NUM_STOCK_DISTRICT = 10;
 }
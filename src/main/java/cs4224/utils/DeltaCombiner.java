@@ -0,0 +1,95 @@
+package cs4224.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Combines the deltas that are added to the same row within a short window into a single write, so that concurrent
+ * transactions on a hot row, e.g. payments to the same warehouse, do not each write it.
+ *
+ * The first delta added to a row opens its window, and every delta added to the row until the window closes is summed
+ * up. The sum is then written at once, and the write completes all the deltas of the window, or fails them all if it
+ * fails. As the write is not retried, it suits writes such as counter increments, which are not idempotent.
+ *
+ * @param <K> key of the row that deltas are added to
+ */
+public class DeltaCombiner<K> {
+    private final long windowMicros;
+    private final BiFunction<K, Long, CompletionStage<?>> write;
+    private final ScheduledExecutorService scheduler;
+    private final Map<K, Window> windows = new HashMap<>();
+
+    /**
+     * @param windowMicros how long deltas are combined after the first one, or 0 to write every delta on its own
+     * @param write        writes the sum of the deltas of a window to the row with the given key
+     */
+    public DeltaCombiner(long windowMicros, BiFunction<K, Long, CompletionStage<?>> write) {
+        this.windowMicros = windowMicros;
+        this.write = write;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "delta-combiner");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds a delta to the row with the given key, and completes once it is written.
+     */
+    public CompletionStage<Void> add(K key, long delta) {
+        if (windowMicros <= 0) {
+            final Window window = new Window();
+            window.delta = delta;
+            return flush(key, window);
+        }
+        synchronized (windows) {
+            Window window = windows.get(key);
+            if (window == null) {
+                window = new Window();
+                windows.put(key, window);
+                scheduler.schedule(() -> flush(key), windowMicros, TimeUnit.MICROSECONDS);
+            }
+            window.delta += delta;
+            // Every delta has its own stage, so that cancelling it does not affect the other deltas of the window.
+            return window.written.thenApply(ignored -> null);
+        }
+    }
+
+    private void flush(K key) {
+        final Window window;
+        synchronized (windows) {
+            window = windows.remove(key);
+        }
+        flush(key, window);
+    }
+
+    private CompletionStage<Void> flush(K key, Window window) {
+        CompletionStage<?> result;
+        try {
+            result = write.apply(key, window.delta);
+        } catch (RuntimeException e) {
+            final CompletableFuture<?> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            result = failed;
+        }
+        result.whenComplete((ignored, error) -> {
+            if (error != null) {
+                window.written.completeExceptionally(error);
+            } else {
+                window.written.complete(null);
+            }
+        });
+        return window.written;
+    }
+
+    private static class Window {
+        private final CompletableFuture<Void> written = new CompletableFuture<>();
+        private long delta;
+    }
+}
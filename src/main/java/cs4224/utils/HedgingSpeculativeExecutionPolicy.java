@@ -0,0 +1,111 @@
+package cs4224.utils;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
+import com.datastax.oss.driver.api.core.config.DriverExecutionProfile;
+import com.datastax.oss.driver.api.core.config.DriverOption;
+import com.datastax.oss.driver.api.core.context.DriverContext;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.session.Request;
+import com.datastax.oss.driver.api.core.specex.SpeculativeExecutionPolicy;
+import com.datastax.oss.driver.api.core.tracker.RequestTracker;
+import com.datastax.oss.driver.internal.core.context.InternalDriverContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Speculative execution policy that hedges a request on another replica once it runs for longer than a percentile of
+ * the latencies of its statement, e.g. because its replica is compacting or paused for garbage collection. The driver
+ * only asks this policy about idempotent requests.
+ *
+ * The latencies are those recorded by the {@link StatementMetrics} of the session, which also counts the hedges and
+ * the hedges that completed first. A statement is not hedged until it has {@code min-samples} executions, so that a
+ * run where every replica is healthy sends few more requests, about 100 - {@code percentile} percent of them.
+ *
+ * It is configured in the {@code advanced.speculative-execution-policy} section of an execution profile:
+ * {@code max-executions} is the highest number of executions of a request, including the first one, {@code delay} the
+ * lowest delay before a hedge, {@code percentile} the percentile after which a request is hedged, and
+ * {@code min-samples} the number of executions of a statement before its requests are hedged.
+ */
+public class HedgingSpeculativeExecutionPolicy implements SpeculativeExecutionPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(HedgingSpeculativeExecutionPolicy.class);
+
+    private final InternalDriverContext context;
+    private final int maxExecutions;
+    private final long minDelayMillis;
+    private final double percentile;
+    private final long minSamples;
+    // Metrics of the session, which are only available once the session is built.
+    private volatile StatementMetrics statementMetrics;
+    private volatile boolean isResolved;
+
+    public HedgingSpeculativeExecutionPolicy(DriverContext context, String profileName) {
+        this.context = (InternalDriverContext) context;
+        final DriverExecutionProfile profile = context.getConfig().getProfile(profileName);
+        maxExecutions = profile.getInt(DefaultDriverOption.SPECULATIVE_EXECUTION_MAX);
+        minDelayMillis = profile.getDuration(DefaultDriverOption.SPECULATIVE_EXECUTION_DELAY).toMillis();
+        percentile = profile.getDouble(Option.PERCENTILE);
+        minSamples = profile.getLong(Option.MIN_SAMPLES);
+        if (maxExecutions < 1) {
+            throw new IllegalArgumentException("max-executions must be at least 1, got " + maxExecutions);
+        }
+        if (percentile <= 0 || percentile >= 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100, got " + percentile);
+        }
+    }
+
+    @Override
+    public long nextExecution(Node node, CqlIdentifier keyspace, Request request, int runningExecutions) {
+        final StatementMetrics metrics = getStatementMetrics();
+        if (metrics == null) {
+            return -1;
+        }
+        // The driver asks for the next execution whenever it starts one, so a later one is a hedge sent to node.
+        if (runningExecutions > 1) {
+            metrics.onHedge(request, node);
+        }
+        if (runningExecutions >= maxExecutions) {
+            return -1;
+        }
+        final long percentileMicros = metrics.getLatencyPercentileMicros(request, percentile, minSamples);
+        if (percentileMicros < 0) {
+            return -1;
+        }
+        return Math.max(minDelayMillis, TimeUnit.MICROSECONDS.toMillis(percentileMicros));
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private StatementMetrics getStatementMetrics() {
+        if (!isResolved) {
+            final RequestTracker tracker = context.getRequestTracker();
+            if (tracker instanceof StatementMetrics) {
+                statementMetrics = (StatementMetrics) tracker;
+            } else {
+                LOG.warn("No statement metrics in the session, requests are not hedged");
+            }
+            isResolved = true;
+        }
+        return statementMetrics;
+    }
+
+    private enum Option implements DriverOption {
+        PERCENTILE("advanced.speculative-execution-policy.percentile"),
+        MIN_SAMPLES("advanced.speculative-execution-policy.min-samples");
+
+        private final String path;
+
+        Option(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package cs4224.utils;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the throughput and latencies of each interval of a run to a CSV time series while the run is in progress.
+ *
+ * Every interval produces one row per transaction type and one row over all types ({@code All}), for service times
+ * and, in an open loop run, for response times. Latencies are in milliseconds.
+ */
+public class IntervalReporter implements AutoCloseable {
+    private static final String HEADER = "time,elapsed_s,latency,type,count,rate_per_s,p50_ms,p95_ms,p99_ms,max_ms";
+    private static final String ALL_TYPES = "All";
+
+    private final Statistics statistics;
+    private final PrintStream log;
+    private final ScheduledExecutorService scheduler;
+    private final long start;
+    private long intervalStart;
+
+    /**
+     * Starts writing a row for every interval of {@code intervalSeconds} seconds to {@code log}, from the latencies
+     * recorded in {@code statistics}. The reporter closes {@code log} when it is closed.
+     */
+    public IntervalReporter(Statistics statistics, long intervalSeconds, PrintStream log) {
+        this.statistics = statistics;
+        this.log = log;
+        this.start = System.nanoTime();
+        this.intervalStart = start;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "interval-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        log.println(HEADER);
+        scheduler.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops reporting, after writing the rows of the last, possibly shorter, interval, and closes the log.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report();
+        log.close();
+    }
+
+    private synchronized void report() {
+        final long now = System.nanoTime();
+        final double intervalSeconds = Math.max(now - intervalStart, 1) / 1e9;
+        final long elapsedSeconds = TimeUnit.NANOSECONDS.toSeconds(now - start);
+        final Instant time = Instant.now();
+        intervalStart = now;
+
+        report(time, elapsedSeconds, intervalSeconds, "service", statistics.takeIntervalServiceTimes());
+        final Map<String, Histogram> responseTimes = statistics.takeIntervalResponseTimes();
+        if (!responseTimes.isEmpty()) {
+            report(time, elapsedSeconds, intervalSeconds, "response", responseTimes);
+        }
+        log.flush();
+    }
+
+    private void report(Instant time, long elapsedSeconds, double intervalSeconds, String latency,
+                        Map<String, Histogram> histograms) {
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            writeRow(time, elapsedSeconds, intervalSeconds, latency, entry.getKey(), entry.getValue());
+        }
+        writeRow(time, elapsedSeconds, intervalSeconds, latency, ALL_TYPES, Statistics.combine(histograms));
+    }
+
+    private void writeRow(Instant time, long elapsedSeconds, double intervalSeconds, String latency, String type,
+                          Histogram histogram) {
+        log.printf("%s,%d,%s,%s,%d,%.2f,%.3f,%.3f,%.3f,%.3f\n", time, elapsedSeconds, latency, type,
+                histogram.getTotalCount(), histogram.getTotalCount() / intervalSeconds,
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(95) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0, histogram.getMaxValue() / 1000.0);
+    }
+}
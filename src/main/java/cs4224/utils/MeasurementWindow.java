@@ -0,0 +1,129 @@
+package cs4224.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which transactions of a run are measured, so that the transactions executed while the client, the driver
+ * and the cluster warm up are left out of the statistics.
+ *
+ * The warm-up lasts for a number of transactions and for a duration, whichever ends last. If steady state detection is
+ * on, the warm-up then goes on until the throughput of the last {@value #STEADY_WINDOWS} windows of one second varies
+ * by at most {@value #MAX_VARIATION} of its mean, or until {@value #MAX_STEADY_STATE_WAIT_SECONDS} seconds have passed.
+ * Every transaction that starts after the warm-up is measured.
+ */
+public class MeasurementWindow {
+    // Windows over which the throughput of the run is computed to detect steady state.
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int STEADY_WINDOWS = 5;
+    // Highest coefficient of variation of the throughput of the windows for the run to be steady.
+    private static final double MAX_VARIATION = 0.1;
+    // Steady state detection gives up after this many seconds, so that the run is always measured.
+    private static final long MAX_STEADY_STATE_WAIT_SECONDS = 120;
+
+    private static final long NOT_STARTED = Long.MAX_VALUE;
+
+    private final long warmUpTransactions;
+    private final long warmUpEnd;
+    private final boolean detectSteadyState;
+    private final long steadyStateDeadline;
+
+    // Time from which transactions are measured, or NOT_STARTED during the warm-up.
+    private volatile long measuredFrom = NOT_STARTED;
+    private volatile boolean warmUpTransactionsStarted;
+
+    // Completed transactions of the windows used to detect steady state, guarded by this.
+    private final long[] windowCounts = new long[STEADY_WINDOWS];
+    private long windowStart;
+    private int numWindows;
+
+    /**
+     * @param warmUpTransactions number of transactions, from the first one, that are not measured
+     * @param warmUpNanos        time from {@code startNanos} during which transactions are not measured
+     * @param detectSteadyState  whether to wait for the throughput to be steady after the warm-up
+     * @param startNanos         start time of the run, from {@link System#nanoTime()}
+     */
+    public MeasurementWindow(long warmUpTransactions, long warmUpNanos, boolean detectSteadyState, long startNanos) {
+        this.warmUpTransactions = warmUpTransactions;
+        this.warmUpEnd = startNanos + warmUpNanos;
+        this.detectSteadyState = detectSteadyState;
+        this.steadyStateDeadline = warmUpEnd + TimeUnit.SECONDS.toNanos(MAX_STEADY_STATE_WAIT_SECONDS);
+        this.windowStart = startNanos;
+        if (warmUpTransactions == 0 && warmUpNanos == 0 && !detectSteadyState) {
+            measuredFrom = startNanos;
+        }
+    }
+
+    /**
+     * Returns whether the transaction with the given id, starting at {@code startNanos}, is measured. Ids start at 1.
+     */
+    public boolean isMeasured(long transactionId, long startNanos) {
+        final long from = measuredFrom;
+        if (from != NOT_STARTED) {
+            return startNanos >= from;
+        }
+        if (transactionId <= warmUpTransactions) {
+            return false;
+        }
+        warmUpTransactionsStarted = true;
+        if (startNanos < warmUpEnd) {
+            return false;
+        }
+        if (detectSteadyState && startNanos < steadyStateDeadline) {
+            return false;
+        }
+        start(startNanos);
+        return true;
+    }
+
+    /**
+     * Records that a transaction, measured or not, completed at {@code endNanos}.
+     */
+    public void completed(long endNanos) {
+        if (!detectSteadyState || measuredFrom != NOT_STARTED) {
+            return;
+        }
+        synchronized (this) {
+            while (endNanos - windowStart >= WINDOW_NANOS) {
+                numWindows++;
+                windowStart += WINDOW_NANOS;
+                if (numWindows >= STEADY_WINDOWS && windowStart >= warmUpEnd && warmUpTransactionsStarted
+                        && isSteady()) {
+                    start(windowStart);
+                    return;
+                }
+                windowCounts[numWindows % STEADY_WINDOWS] = 0;
+            }
+            windowCounts[numWindows % STEADY_WINDOWS]++;
+        }
+    }
+
+    /**
+     * Returns the time from which transactions are measured, or {@code endNanos} if the run ended during the warm-up.
+     */
+    public long getMeasuredFrom(long endNanos) {
+        return Math.min(measuredFrom, endNanos);
+    }
+
+    private synchronized void start(long nanos) {
+        if (measuredFrom == NOT_STARTED) {
+            measuredFrom = nanos;
+        }
+    }
+
+    // Whether the throughput of the last complete windows is steady.
+    private boolean isSteady() {
+        double sum = 0;
+        for (long count : windowCounts) {
+            sum += count;
+        }
+        final double mean = sum / STEADY_WINDOWS;
+        if (mean == 0) {
+            return false;
+        }
+        double squares = 0;
+        for (long count : windowCounts) {
+            squares += (count - mean) * (count - mean);
+        }
+        return Math.sqrt(squares / STEADY_WINDOWS) / mean <= MAX_VARIATION;
+    }
+}
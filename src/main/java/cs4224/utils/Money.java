@@ -0,0 +1,26 @@
+package cs4224.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversions of amounts of money to and from whole cents, in which counters and the item catalog keep them.
+ */
+public final class Money {
+    private static final int CENTS_SCALE = 2;
+
+    private Money() {
+    }
+
+    public static long toCents(BigDecimal amount) {
+        return amount.setScale(CENTS_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static long toCents(double amount) {
+        return toCents(BigDecimal.valueOf(amount));
+    }
+
+    public static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, CENTS_SCALE);
+    }
+}
@@ -0,0 +1,111 @@
+package cs4224.utils;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Result of a run of a transaction file, written as JSON so that the results of many clients can be merged without
+ * parsing the statistics in their {@code .err} files.
+ *
+ * The summaries are for reading only. The result is merged from {@link #histograms}, the encoded latency histograms of
+ * the run, so that percentiles over several clients are exact rather than averages of the percentiles of each client.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class RunResult {
+    public static final String ALL_TYPES = "All";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private String xactFile;
+    // Wall clock times of the start and the end of the run, in milliseconds since the epoch.
+    private long startTime;
+    private long endTime;
+    private long numTransactions;
+    private long numSkippedTransactions;
+    private double throughput;
+    private Map<String, LatencySummary> serviceTimes;
+    private Map<String, LatencySummary> responseTimes;
+    private String histograms;
+
+    /**
+     * Returns the result of a run of {@code xactFile} that recorded its latencies in {@code statistics}.
+     */
+    public static RunResult of(String xactFile, long startTime, long endTime, long numSkippedTransactions,
+                               Statistics statistics) {
+        final RunResult result = new RunResult();
+        result.xactFile = xactFile;
+        result.startTime = startTime;
+        result.endTime = endTime;
+        result.numSkippedTransactions = numSkippedTransactions;
+        final Map<String, Histogram> serviceTimes = statistics.getServiceTimes();
+        result.serviceTimes = summarize(serviceTimes);
+        result.responseTimes = summarize(statistics.getResponseTimes());
+        result.numTransactions = serviceTimes.values().stream().mapToLong(Histogram::getTotalCount).sum();
+        result.throughput = result.numTransactions * 1000.0 / Math.max(endTime - startTime, 1);
+        result.histograms = statistics.encode();
+        return result;
+    }
+
+    public static RunResult read(File file) throws IOException {
+        return MAPPER.readValue(file, RunResult.class);
+    }
+
+    public void write(File file) throws IOException {
+        MAPPER.writeValue(file, this);
+    }
+
+    /**
+     * Returns the latencies of the run, decoded from {@link #histograms}.
+     */
+    @JsonIgnore
+    public Statistics getStatistics() {
+        return Statistics.decode(histograms);
+    }
+
+    private static Map<String, LatencySummary> summarize(Map<String, Histogram> histograms) {
+        final Map<String, LatencySummary> summaries = new TreeMap<>();
+        histograms.forEach((type, histogram) -> summaries.put(type, LatencySummary.of(histogram)));
+        if (!histograms.isEmpty()) {
+            summaries.put(ALL_TYPES, LatencySummary.of(Statistics.combine(histograms)));
+        }
+        return summaries;
+    }
+
+    /**
+     * Latencies of one type of transaction, in milliseconds.
+     */
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    public static class LatencySummary {
+        private long count;
+        private double average;
+        private double median;
+        private double percentile95;
+        private double percentile99;
+        private double maximum;
+
+        static LatencySummary of(Histogram histogram) {
+            final LatencySummary summary = new LatencySummary();
+            summary.count = histogram.getTotalCount();
+            summary.average = histogram.getMean() / 1000;
+            summary.median = histogram.getValueAtPercentile(50) / 1000.0;
+            summary.percentile95 = histogram.getValueAtPercentile(95) / 1000.0;
+            summary.percentile99 = histogram.getValueAtPercentile(99) / 1000.0;
+            summary.maximum = histogram.getMaxValue() / 1000.0;
+            return summary;
+        }
+    }
+}
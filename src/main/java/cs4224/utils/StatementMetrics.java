@@ -0,0 +1,242 @@
+package cs4224.utils;
+
+import com.datastax.oss.driver.api.core.DriverTimeoutException;
+import com.datastax.oss.driver.api.core.config.DriverExecutionProfile;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchableStatement;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.ResultSet;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.servererrors.ReadTimeoutException;
+import com.datastax.oss.driver.api.core.servererrors.WriteTimeoutException;
+import com.datastax.oss.driver.api.core.session.Request;
+import com.datastax.oss.driver.api.core.tracker.RequestTracker;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.PrintStream;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the latencies and the failures of every CQL statement executed by a session, keyed by the text of the
+ * statement, so that the statements that dominate the latency of the transactions can be found.
+ *
+ * The metrics are recorded by the driver, which calls this tracker once a request completes, and once for every node
+ * that a request is sent to. Lightweight transactions that are not applied are not errors to the driver, and are
+ * counted by {@link ConditionalUpdater} through {@link #wasApplied(ResultSet)}. Requests hedged by
+ * {@link HedgingSpeculativeExecutionPolicy} are counted with the number of them that the hedge completed.
+ */
+public class StatementMetrics implements RequestTracker {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final String BATCH_PREFIX = "BATCH ";
+    private static final long PERCENTILE_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Map<String, StatementStats> statements = new ConcurrentHashMap<>();
+    // Node that the hedge of each hedged request in flight is sent to.
+    private final Map<Request, Node> hedges = new ConcurrentHashMap<>();
+
+    @Override
+    public void onSuccess(Request request, long latencyNanos, DriverExecutionProfile executionProfile, Node node,
+                          String requestLogPrefix) {
+        final StatementStats stats = statsOf(request);
+        stats.record(latencyNanos);
+        // The node is the one that the successful execution was sent to.
+        if (!hedges.isEmpty() && node != null && node.equals(hedges.remove(request))) {
+            stats.hedgesWon.increment();
+        }
+    }
+
+    @Override
+    public void onError(Request request, Throwable error, long latencyNanos, DriverExecutionProfile executionProfile,
+                        Node node, String requestLogPrefix) {
+        final StatementStats stats = statsOf(request);
+        stats.record(latencyNanos);
+        stats.errors.increment();
+        if (!hedges.isEmpty()) {
+            hedges.remove(request);
+        }
+        if (isTimeout(error)) {
+            stats.timeouts.increment();
+        }
+    }
+
+    // Called for every attempt on a node that failed, whether the request was then retried or not.
+    @Override
+    public void onNodeError(Request request, Throwable error, long latencyNanos,
+                            DriverExecutionProfile executionProfile, Node node, String requestLogPrefix) {
+        statsOf(request).failedAttempts.increment();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Returns whether the lightweight transaction of the given result was applied, and counts it against its statement
+     * if it was not.
+     */
+    public boolean wasApplied(ResultSet resultSet) {
+        final boolean applied = resultSet.wasApplied();
+        if (!applied) {
+            statsOf(resultSet.getExecutionInfo().getRequest()).notApplied.increment();
+        }
+        return applied;
+    }
+
+    /**
+     * Same as {@link #wasApplied(ResultSet)}, for a result of an asynchronous execution.
+     */
+    public boolean wasApplied(AsyncResultSet resultSet) {
+        final boolean applied = resultSet.wasApplied();
+        if (!applied) {
+            statsOf(resultSet.getExecutionInfo().getRequest()).notApplied.increment();
+        }
+        return applied;
+    }
+
+    /**
+     * Counts that a hedge of the given request is sent to the given node.
+     */
+    public void onHedge(Request request, Node node) {
+        statsOf(request).hedges.increment();
+        hedges.put(request, node);
+    }
+
+    /**
+     * Returns the given percentile of the latencies of the statement of the given request, in microseconds, or -1 if
+     * it has fewer than {@code minSamples} executions. Once it has enough, it is computed again at most once per
+     * second.
+     */
+    public long getLatencyPercentileMicros(Request request, double percentile, long minSamples) {
+        return statsOf(request).getLatencyPercentileMicros(percentile, minSamples);
+    }
+
+    /**
+     * Writes the metrics of every statement to {@code err}, starting with the statement that took the most time in
+     * total.
+     */
+    public void printStatistics(PrintStream err) {
+        final DecimalFormat f = new DecimalFormat("0.00");
+        final Map<String, Histogram> histograms = new HashMap<>();
+        statements.forEach((query, stats) -> histograms.put(query, stats.getHistogram()));
+        final List<String> queries = new ArrayList<>(histograms.keySet());
+        queries.sort(Comparator.comparingDouble((String query) -> totalMicros(histograms.get(query))).reversed());
+
+        err.println("\n======================================================================");
+        err.println("CQL statement measurements (by total time): ");
+        err.println("======================================================================");
+        for (String query : queries) {
+            final StatementStats stats = statements.get(query);
+            final Histogram times = histograms.get(query);
+            err.println(normalize(query));
+            err.printf("-Executions: %d | Errors: %d | Timeouts: %d | Failed node attempts: %d | Not applied: %d\n",
+                    times.getTotalCount(), stats.errors.sum(), stats.timeouts.sum(), stats.failedAttempts.sum(),
+                    stats.notApplied.sum());
+            if (stats.hedges.sum() > 0) {
+                err.printf("-Hedges: %d | Completed by the hedge: %d\n", stats.hedges.sum(), stats.hedgesWon.sum());
+            }
+            err.printf("-Total time: %ss\n", f.format(totalMicros(times) / 1e6));
+            err.printf("-Latency: average %sms | median %sms | 95th %sms | 99th %sms | maximum %sms\n",
+                    f.format(times.getMean() / 1000), f.format(times.getValueAtPercentile(50) / 1000.0),
+                    f.format(times.getValueAtPercentile(95) / 1000.0),
+                    f.format(times.getValueAtPercentile(99) / 1000.0), f.format(times.getMaxValue() / 1000.0));
+        }
+    }
+
+    private static double totalMicros(Histogram histogram) {
+        return histogram.getMean() * histogram.getTotalCount();
+    }
+
+    private StatementStats statsOf(Request request) {
+        return statements.computeIfAbsent(queryOf(request), k -> new StatementStats());
+    }
+
+    // The raw query is used as the key, as it is kept by the prepared statement and its hash code is cached.
+    private static String queryOf(Request request) {
+        if (request instanceof BoundStatement) {
+            return ((BoundStatement) request).getPreparedStatement().getQuery();
+        }
+        if (request instanceof SimpleStatement) {
+            return ((SimpleStatement) request).getQuery();
+        }
+        if (request instanceof BatchStatement) {
+            final BatchStatement batch = (BatchStatement) request;
+            if (batch.size() > 0) {
+                final BatchableStatement<?> first = batch.iterator().next();
+                return BATCH_PREFIX + batch.getBatchType() + ": " + queryOf(first);
+            }
+            return BATCH_PREFIX + batch.getBatchType();
+        }
+        return request.getClass().getSimpleName();
+    }
+
+    private static String normalize(String query) {
+        return query.trim().replaceAll("\\s+", " ");
+    }
+
+    private static boolean isTimeout(Throwable error) {
+        return error instanceof DriverTimeoutException || error instanceof ReadTimeoutException
+                || error instanceof WriteTimeoutException;
+    }
+
+    private static class StatementStats {
+        private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+        private final Histogram histogram = new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder failedAttempts = new LongAdder();
+        private final LongAdder notApplied = new LongAdder();
+        private final LongAdder hedges = new LongAdder();
+        private final LongAdder hedgesWon = new LongAdder();
+        private Histogram recorded;
+        private volatile long percentileAtNanos;
+        private volatile double percentile;
+        private volatile long percentileMicros = -1;
+
+        void record(long nanos) {
+            recorder.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_TRACKABLE_MICROS));
+        }
+
+        synchronized Histogram getHistogram() {
+            drain();
+            return histogram.copy();
+        }
+
+        // Until the statement has minSamples executions, the percentile is computed on every call.
+        long getLatencyPercentileMicros(double percentile, long minSamples) {
+            if (isPercentileStale(percentile)) {
+                synchronized (this) {
+                    if (isPercentileStale(percentile)) {
+                        drain();
+                        percentileMicros = histogram.getTotalCount() >= minSamples
+                                ? histogram.getValueAtPercentile(percentile) : -1;
+                        this.percentile = percentile;
+                        percentileAtNanos = System.nanoTime();
+                    }
+                }
+            }
+            return percentileMicros;
+        }
+
+        private boolean isPercentileStale(double percentile) {
+            return percentileMicros < 0 || percentile != this.percentile
+                    || System.nanoTime() - percentileAtNanos >= PERCENTILE_REFRESH_NANOS;
+        }
+
+        private void drain() {
+            recorded = recorder.getIntervalHistogram(recorded);
+            histogram.add(recorded);
+        }
+    }
+}
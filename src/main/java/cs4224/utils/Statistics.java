@@ -1,88 +1,281 @@
 package cs4224.utils;
 
 
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.*;
+import java.nio.ByteBuffer;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
 
+/**
+ * Collects the latencies of the transactions executed by a client. Every client owns its own instance, and the
+ * instances of several clients can be merged to compute the statistics over all of them.
+ *
+ * The latency of a transaction is its service time, measured from the time that it started. In an open loop run, the
+ * response time of the transaction is collected as well, measured from the time that it was meant to start.
+ *
+ * Latencies are recorded in microseconds into histograms with 3 significant digits, so the memory used does not
+ * depend on the length of the run. Recording does not take any lock and can be done from many threads at once.
+ */
 public class Statistics {
+    // Latencies above an hour are recorded as an hour, which keeps the size of the histograms bounded.
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final byte SERVICE_TIME = 0;
+    private static final byte RESPONSE_TIME = 1;
+
+    private final Map<String, LatencyRecorder> serviceTimes = new ConcurrentHashMap<>();
+    private final Map<String, LatencyRecorder> responseTimes = new ConcurrentHashMap<>();
 
-    private HashMap<String, ArrayList<Long>> timeMap = new HashMap<>();
+    /**
+     * Records the service time of a transaction of the given type.
+     */
+    public void ingestTime(String transactionType, long transactionTimeNanos) {
+        serviceTimes.computeIfAbsent(transactionType, k -> new LatencyRecorder()).record(transactionTimeNanos);
+    }
 
-    private static Statistics calculator = new Statistics();
-    private Statistics(){}
+    /**
+     * Records the response time of a transaction of the given type, in an open loop run.
+     */
+    public void ingestResponseTime(String transactionType, long responseTimeNanos) {
+        responseTimes.computeIfAbsent(transactionType, k -> new LatencyRecorder()).record(responseTimeNanos);
+    }
 
-    public static Statistics getStatisticsCalculator() {
-        return calculator;
+    /**
+     * Adds the latencies collected by {@code other} to this instance.
+     */
+    public void merge(Statistics other) {
+        merge(serviceTimes, other.serviceTimes);
+        merge(responseTimes, other.responseTimes);
     }
 
-    public void ingestTime(String transactionType, long transactionTime) {
-        if (!timeMap.containsKey(transactionType)) {
-            timeMap.put(transactionType, new ArrayList<>());
+    /**
+     * Returns the service times recorded since the previous call, by transaction type.
+     */
+    public Map<String, Histogram> takeIntervalServiceTimes() {
+        return takeIntervals(serviceTimes);
+    }
+
+    /**
+     * Returns the response times recorded since the previous call, by transaction type.
+     */
+    public Map<String, Histogram> takeIntervalResponseTimes() {
+        return takeIntervals(responseTimes);
+    }
+
+    private static Map<String, Histogram> takeIntervals(Map<String, LatencyRecorder> recorders) {
+        final Map<String, Histogram> histograms = new TreeMap<>();
+        recorders.forEach((type, recorder) -> histograms.put(type, recorder.takeInterval()));
+        return histograms;
+    }
+
+    private static void merge(Map<String, LatencyRecorder> recorders, Map<String, LatencyRecorder> otherRecorders) {
+        otherRecorders.forEach((type, recorder) ->
+                recorders.computeIfAbsent(type, k -> new LatencyRecorder()).add(recorder.getHistogram()));
+    }
+
+    /**
+     * Encodes the latencies collected so far as a compact string, which can be turned back into an instance with
+     * {@link #decode(String)}.
+     */
+    public String encode() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream data = new DataOutputStream(bytes)) {
+            encode(data, SERVICE_TIME, serviceTimes);
+            encode(data, RESPONSE_TIME, responseTimes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        timeMap.get(transactionType).add(transactionTime);
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
     }
 
-    private static double computeMedian(List<Long> lst) {
-        if (lst.size() == 0) return 0;
-        long mid = lst.get(lst.size() / 2);
-        if (lst.size() % 2 != 0) return mid;
-        long mid_ = lst.get(lst.size() / 2 - 1);
-        return  (mid+mid_)/2.0;
+    private static void encode(DataOutputStream data, byte kind, Map<String, LatencyRecorder> recorders)
+            throws IOException {
+        for (Map.Entry<String, Histogram> entry : getHistograms(recorders).entrySet()) {
+            final Histogram histogram = entry.getValue();
+            final ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+            final int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+
+            data.writeByte(kind);
+            data.writeUTF(entry.getKey());
+            data.writeInt(length);
+            data.write(buffer.array(), 0, length);
+        }
     }
 
-    private static long computePercentile(List<Long> lst, int ptl) {
+    public static Statistics decode(String encoded) {
+        final Statistics statistics = new Statistics();
+        final byte[] bytes = Base64.getDecoder().decode(encoded);
+        try (DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            while (data.available() > 0) {
+                final byte kind = data.readByte();
+                final String type = data.readUTF();
+                final byte[] histogram = new byte[data.readInt()];
+                data.readFully(histogram);
 
-        int i = lst.size() * ptl / 100;
-        i = Math.min(i, lst.size());
-        return lst.get(i);
+                final Map<String, LatencyRecorder> recorders =
+                        kind == RESPONSE_TIME ? statistics.responseTimes : statistics.serviceTimes;
+                recorders.computeIfAbsent(type, k -> new LatencyRecorder())
+                        .add(Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(histogram), 0));
+            }
+        } catch (IOException | DataFormatException e) {
+            throw new IllegalArgumentException("Invalid encoded statistics", e);
+        }
+        return statistics;
     }
 
-    public void computeTimeStatistics(long totalTime) {
-        DecimalFormat f = new DecimalFormat("##.00");
-        ArrayList<Long> transactionTimes = new ArrayList<>();
-        timeMap.values().forEach(transactionTimes::addAll);
+    public void computeTimeStatistics(long totalTime, PrintStream err) {
+        DecimalFormat f = new DecimalFormat("0.00");
+        final Map<String, Histogram> histograms = getHistograms(serviceTimes);
+        final Histogram transactionTimes = combine(histograms);
         // Prevents division by a small number
         totalTime = Math.max(totalTime, 1);
-        Collections.sort(transactionTimes);
-        long totalTransactionTime = transactionTimes.stream().reduce(Long::sum).orElse(0L);
-        double noOfTransactions = transactionTimes.size();
-
-        double throughput =  noOfTransactions/totalTime;
-        double avgLatency = totalTransactionTime/noOfTransactions;
-        double medianLatency = computeMedian(transactionTimes);
-        long ninetyFivePtlLatency = computePercentile(transactionTimes, 95);
-        long ninetyNinePtlLatency = computePercentile(transactionTimes, 99);
-
-
-        System.err.println("\n======================================================================");
-        System.err.println("Performance measurements: ");
-        System.err.printf("a. Number of executed transactions: %d\n", (int) noOfTransactions);
-        System.err.printf("b. Total transaction execution time: %ds\n", totalTime);
-        System.err.printf("c. Transaction throughput: %s per second\n", f.format(throughput));
-        System.err.printf("d. Average transaction latency: %sms\n", f.format(avgLatency));
-        System.err.printf("e. Median transaction latency: %sms\n", f.format(medianLatency));
-        System.err.printf("f. 95th percentile transaction latency: %dms\n", ninetyFivePtlLatency);
-        System.err.printf("g. 99th percentile transaction latency: %dms\n", ninetyNinePtlLatency);
-        System.err.println("======================================================================");
-
-        System.err.println("Measurements for each transaction: ");
-
-        for (String key : timeMap.keySet()) {
-            System.err.println(key);
-            ArrayList<Long> times = timeMap.get(key);
-            Collections.sort(times);
-            double total = times.stream().reduce(Long::sum).orElse(0L);
-            int n = times.size();
-            System.err.printf("-Transaction count: %d\n", n);
-            System.err.printf("-Minimum transaction latency: %dms\n", Collections.min(times));
-            System.err.printf("-Maximum transaction latency: %dms\n", Collections.max(times));
-            System.err.printf("-Average transaction latency: %sms\n", f.format(total/n));
-            System.err.printf("-Median transaction latency: %sms\n", f.format(computeMedian(times)));
-            System.err.printf("-95th percentile transaction latency: %dms\n", computePercentile(times, 95));
-            System.err.printf("-99th percentile transaction latency: %dms\n", computePercentile(times, 99));
+        long noOfTransactions = transactionTimes.getTotalCount();
+
+        double throughput = (double) noOfTransactions / totalTime;
+
+        err.println("\n======================================================================");
+        err.println("Performance measurements: ");
+        err.printf("a. Number of executed transactions: %d\n", noOfTransactions);
+        err.printf("b. Total transaction execution time: %ds\n", totalTime);
+        err.printf("c. Transaction throughput: %s per second\n", f.format(throughput));
+        err.printf("d. Average transaction latency: %sms\n", f.format(toMillis(transactionTimes.getMean())));
+        err.printf("e. Median transaction latency: %sms\n", f.format(percentile(transactionTimes, 50)));
+        err.printf("f. 95th percentile transaction latency: %sms\n", f.format(percentile(transactionTimes, 95)));
+        err.printf("g. 99th percentile transaction latency: %sms\n", f.format(percentile(transactionTimes, 99)));
+        err.println("======================================================================");
+
+        err.println("Measurements for each transaction: ");
+
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            err.println(entry.getKey());
+            Histogram times = entry.getValue();
+            err.printf("-Transaction count: %d\n", times.getTotalCount());
+            err.printf("-Minimum transaction latency: %sms\n", f.format(toMillis(times.getMinValue())));
+            err.printf("-Maximum transaction latency: %sms\n", f.format(toMillis(times.getMaxValue())));
+            err.printf("-Average transaction latency: %sms\n", f.format(toMillis(times.getMean())));
+            err.printf("-Median transaction latency: %sms\n", f.format(percentile(times, 50)));
+            err.printf("-95th percentile transaction latency: %sms\n", f.format(percentile(times, 95)));
+            err.printf("-99th percentile transaction latency: %sms\n", f.format(percentile(times, 99)));
+        }
+
+        if (!responseTimes.isEmpty()) {
+            computeResponseTimeStatistics(f, err);
+        }
+    }
+
+    // Printed after the measurements above so that scripts reading them by line are not affected.
+    private void computeResponseTimeStatistics(DecimalFormat f, PrintStream err) {
+        final Map<String, Histogram> histograms = getHistograms(responseTimes);
+        final Histogram all = combine(histograms);
+
+        err.println("\n======================================================================");
+        err.println("Response time measurements (from intended start time): ");
+        err.printf("a. Average transaction response time: %sms\n", f.format(toMillis(all.getMean())));
+        err.printf("b. Median transaction response time: %sms\n", f.format(percentile(all, 50)));
+        err.printf("c. 95th percentile transaction response time: %sms\n", f.format(percentile(all, 95)));
+        err.printf("d. 99th percentile transaction response time: %sms\n", f.format(percentile(all, 99)));
+        err.printf("e. Maximum transaction response time: %sms\n", f.format(toMillis(all.getMaxValue())));
+        err.println("======================================================================");
+
+        err.println("Response times for each transaction: ");
+
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            err.println(entry.getKey());
+            Histogram times = entry.getValue();
+            err.printf("-Average transaction response time: %sms\n", f.format(toMillis(times.getMean())));
+            err.printf("-Median transaction response time: %sms\n", f.format(percentile(times, 50)));
+            err.printf("-95th percentile transaction response time: %sms\n", f.format(percentile(times, 95)));
+            err.printf("-99th percentile transaction response time: %sms\n", f.format(percentile(times, 99)));
+            err.printf("-Maximum transaction response time: %sms\n", f.format(toMillis(times.getMaxValue())));
+        }
+    }
+
+    /**
+     * Returns the service times recorded so far, by transaction type.
+     */
+    public Map<String, Histogram> getServiceTimes() {
+        return getHistograms(serviceTimes);
+    }
+
+    /**
+     * Returns the response times recorded so far, by transaction type. Only open loop runs record response times.
+     */
+    public Map<String, Histogram> getResponseTimes() {
+        return getHistograms(responseTimes);
+    }
+
+    private static Map<String, Histogram> getHistograms(Map<String, LatencyRecorder> recorders) {
+        final Map<String, Histogram> histograms = new TreeMap<>();
+        recorders.forEach((type, recorder) -> histograms.put(type, recorder.getHistogram()));
+        return histograms;
+    }
+
+    /**
+     * Returns a histogram of the latencies of all the given histograms.
+     */
+    public static Histogram combine(Map<String, Histogram> histograms) {
+        final Histogram combined = new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+        histograms.values().forEach(combined::add);
+        return combined;
+    }
+
+    private static double percentile(Histogram histogram, double percentile) {
+        return toMillis(histogram.getValueAtPercentile(percentile));
+    }
+
+    private static double toMillis(double micros) {
+        return micros / 1000;
+    }
+
+    /**
+     * Latencies of one type of transaction. Latencies are recorded without locking into a {@link Recorder}, and moved
+     * into the histogram of the whole run, and into the histogram of the current interval, whenever the latencies are
+     * read.
+     */
+    private static class LatencyRecorder {
+        private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+        private final Histogram histogram = new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+        private final Histogram interval = new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+        private Histogram recorded;
+
+        void record(long nanos) {
+            recorder.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_TRACKABLE_MICROS));
+        }
+
+        synchronized void add(Histogram other) {
+            histogram.add(other);
+        }
+
+        /**
+         * Returns a copy of the histogram of all the latencies recorded so far.
+         */
+        synchronized Histogram getHistogram() {
+            drain();
+            return histogram.copy();
+        }
+
+        /**
+         * Returns the histogram of the latencies recorded since the previous call.
+         */
+        synchronized Histogram takeInterval() {
+            drain();
+            final Histogram copy = interval.copy();
+            interval.reset();
+            return copy;
+        }
+
+        private void drain() {
+            recorded = recorder.getIntervalHistogram(recorded);
+            histogram.add(recorded);
+            interval.add(recorded);
         }
     }
 }
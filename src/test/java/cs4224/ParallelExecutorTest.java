@@ -0,0 +1,60 @@
+package cs4224;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParallelExecutorTest {
+
+    @Test
+    public void testStepsReturnTypedResults() {
+        final ParallelExecutor executor = new ParallelExecutor();
+        final CompletableFuture<Integer> pending = new CompletableFuture<>();
+        final CompletableFuture<String> name = executor.submit(() -> CompletableFuture.completedFuture("pencil"));
+        final CompletableFuture<Integer> quantity = executor.submit(() -> pending);
+
+        final CompletableFuture<Void> all = executor.executeAsync();
+        assertEquals("pencil", name.join());
+        pending.complete(12);
+        all.join();
+        assertEquals(12, quantity.join());
+    }
+
+    @Test
+    public void testFailureCancelsOtherSteps() {
+        final ParallelExecutor executor = new ParallelExecutor();
+        final IllegalStateException failure = new IllegalStateException("query failed");
+        final CompletableFuture<Integer> pending = new CompletableFuture<>();
+        final CompletableFuture<Integer> slow = executor.submit(() -> pending);
+        executor.submit(() -> {
+            final CompletableFuture<Integer> failed = new CompletableFuture<>();
+            failed.completeExceptionally(failure);
+            return failed;
+        });
+
+        assertSame(failure, assertThrows(IllegalStateException.class, executor::execute));
+        assertTrue(slow.isCancelled());
+        // Cancelling a step cancels the stage it was started with.
+        assertTrue(pending.isCancelled());
+    }
+
+    @Test
+    public void testStepTimesOut() {
+        final ParallelExecutor executor = new ParallelExecutor();
+        final CompletableFuture<Integer> pending = new CompletableFuture<>();
+        executor.submit(() -> pending, Duration.ofMillis(20));
+
+        final CompletionException e = assertThrows(CompletionException.class, executor::execute);
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        assertTrue(pending.isCancelled());
+    }
+}
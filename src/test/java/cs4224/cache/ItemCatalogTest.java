@@ -0,0 +1,35 @@
+package cs4224.cache;
+
+import cs4224.utils.Money;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ItemCatalogTest {
+
+    @Test
+    public void testLookUpItemsInAnyOrderWithGaps() {
+        final ItemCatalog catalog = new ItemCatalog(Arrays.asList(
+                new ItemCatalog.Entry(5, "eraser", Money.toCents(new BigDecimal("1.5"))),
+                new ItemCatalog.Entry(1, "pencil", Money.toCents(new BigDecimal("12.34"))),
+                new ItemCatalog.Entry(2, "", Money.toCents(new BigDecimal("100.00")))));
+
+        assertEquals(3, catalog.size());
+        assertEquals("pencil", catalog.getName(1));
+        assertEquals("", catalog.getName(2));
+        assertEquals("eraser", catalog.getName(5));
+        assertEquals(1234, catalog.getPriceInCents(1));
+        assertEquals(new BigDecimal("1.50"), catalog.getPrice(5));
+        assertTrue(catalog.contains(2));
+        assertFalse(catalog.contains(0));
+        assertFalse(catalog.contains(3));
+        assertFalse(catalog.contains(6));
+        assertThrows(IllegalArgumentException.class, () -> catalog.getName(4));
+    }
+}
@@ -0,0 +1,31 @@
+package cs4224.cache;
+
+import cs4224.entities.District;
+import cs4224.entities.Warehouse;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ReferenceDataTest {
+
+    @Test
+    public void testLookUpWarehousesAndDistricts() {
+        final ReferenceData referenceData = new ReferenceData(
+                Arrays.asList(Warehouse.builder().id(2).name("south").tax(new BigDecimal("0.1")).build(),
+                        Warehouse.builder().id(1).name("north").tax(new BigDecimal("0.2")).build()),
+                Arrays.asList(District.builder().warehouseId(1).id(2).name("d12").build(),
+                        District.builder().warehouseId(2).id(1).name("d21").build()));
+
+        assertEquals(Arrays.asList(1, 2), Arrays.asList(referenceData.getWarehouseIds().toArray()));
+        assertEquals("south", referenceData.getWarehouse(2).getName());
+        assertEquals(new BigDecimal("0.2"), referenceData.getWarehouse(1).getTax());
+        assertEquals("d12", referenceData.getDistrict(1, 2).getName());
+        assertEquals("d21", referenceData.getDistrict(2, 1).getName());
+        assertThrows(IllegalArgumentException.class, () -> referenceData.getDistrict(1, 1));
+        assertThrows(IllegalArgumentException.class, () -> referenceData.getWarehouse(3));
+    }
+}
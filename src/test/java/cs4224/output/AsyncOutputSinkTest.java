@@ -0,0 +1,45 @@
+package cs4224.output;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AsyncOutputSinkTest {
+
+    @Test
+    public void testWriteAllOutputInOrder() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final PrintStream target = new PrintStream(bytes, false, "UTF-8");
+
+        try (OutputSink sink = new AsyncOutputSink(target, false)) {
+            for (int i = 0; i < 10000; i++) {
+                sink.printf("%d,", i);
+            }
+            sink.summary("summary");
+            sink.println();
+        }
+
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            expected.append(i).append(',');
+        }
+        expected.append(System.lineSeparator());
+        assertEquals(expected.toString(), bytes.toString("UTF-8"));
+    }
+
+    @Test
+    public void testWriteOnlySummariesInCompactMode() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final PrintStream target = new PrintStream(bytes, false, "UTF-8");
+
+        try (OutputSink sink = new AsyncOutputSink(target, true)) {
+            sink.println("Transaction output");
+            sink.summary("Transaction ID: %d | Time taken: %d\n", 1, 12);
+        }
+
+        assertEquals("Transaction ID: 1 | Time taken: 12\n", bytes.toString("UTF-8"));
+    }
+}
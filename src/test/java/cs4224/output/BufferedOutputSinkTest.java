@@ -0,0 +1,46 @@
+package cs4224.output;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BufferedOutputSinkTest {
+
+    @Test
+    public void testWriteOutputOfEachTransactionAtOnce() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final PrintStream target = new PrintStream(bytes, false, "UTF-8");
+
+        try (OutputSink sink = new AsyncOutputSink(target, false)) {
+            final BufferedOutputSink first = new BufferedOutputSink();
+            final BufferedOutputSink second = new BufferedOutputSink();
+            first.println("Transaction ID: 1");
+            second.println("Transaction ID: 2");
+            first.printf("Time taken: %d\n", 12);
+            second.printf("Time taken: %d\n", 34);
+            second.writeTo(sink);
+            first.writeTo(sink);
+        }
+
+        assertEquals(String.format("Transaction ID: 2%nTime taken: 34\nTransaction ID: 1%nTime taken: 12\n"),
+                bytes.toString("UTF-8"));
+    }
+
+    @Test
+    public void testWriteOnlySummariesInCompactMode() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final PrintStream target = new PrintStream(bytes, false, "UTF-8");
+
+        try (OutputSink sink = new AsyncOutputSink(target, true)) {
+            final BufferedOutputSink buffer = new BufferedOutputSink();
+            buffer.println("Transaction output");
+            buffer.summary("Transaction ID: %d | Time taken: %d\n", 1, 12);
+            buffer.writeTo(sink);
+        }
+
+        assertEquals("Transaction ID: 1 | Time taken: 12\n", bytes.toString("UTF-8"));
+    }
+}
@@ -0,0 +1,133 @@
+package cs4224.requests;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class XactFileReaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testReadAllTransactionTypes() throws Exception {
+        final Path file = write("N,1267,8,1,2\n"
+                + "68195,8,5\n"
+                + "26567,1,10\n"
+                + "P,8,1,1267,122.34\r\n"
+                + "D,3,7\n"
+                + "X,1,2\n"
+                + "O,8,1,1267\n"
+                + "\n"
+                + "S,8,1,15,50\n"
+                + "I,8,1,27\n"
+                + "T\n"
+                + "R,1,1,1");
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final RequestPool pool = new RequestPool(4);
+
+        try (XactFileReader reader = new XactFileReader(file.toString(), pool, 2,
+                new PrintStream(err, true, "UTF-8"))) {
+            reader.start();
+
+            final NewOrderRequest newOrder = (NewOrderRequest) reader.take();
+            assertEquals(1267, newOrder.getCustomerId());
+            assertEquals(8, newOrder.getWarehouseId());
+            assertEquals(1, newOrder.getDistrictId());
+            assertEquals(2, newOrder.getNumItems());
+            assertEquals(26567, newOrder.getItemIds()[1]);
+            assertEquals(1, newOrder.getSupplierWarehouseIds()[1]);
+            assertEquals(10, newOrder.getQuantities()[1]);
+
+            final PaymentRequest payment = (PaymentRequest) reader.take();
+            assertEquals(1267, payment.getCustomerId());
+            assertEquals(Double.parseDouble("122.34"), payment.getPaymentAmount());
+
+            final DeliveryRequest delivery = (DeliveryRequest) reader.take();
+            assertEquals(7, delivery.getCarrierId());
+
+            assertEquals(TransactionType.ORDER_STATUS, reader.take().getType());
+
+            final StockLevelRequest stockLevel = (StockLevelRequest) reader.take();
+            assertEquals(15, stockLevel.getThreshold());
+            assertEquals(50, stockLevel.getNumOrders());
+
+            assertEquals(TransactionType.POPULAR_ITEM, reader.take().getType());
+            assertEquals(TransactionType.TOP_BALANCE, reader.take().getType());
+
+            final RelatedCustomerRequest relatedCustomer = (RelatedCustomerRequest) reader.take();
+            assertEquals(1, relatedCustomer.getCustomerId());
+
+            assertNull(reader.take());
+            assertNull(reader.take());
+        }
+        assertEquals("Unknown transaction types", err.toString("UTF-8").trim());
+    }
+
+    @Test
+    public void testReuseReleasedRequests() throws Exception {
+        final Path file = write("D,1,1\nD,2,2\n");
+        final RequestPool pool = new RequestPool(4);
+
+        try (XactFileReader reader = new XactFileReader(file.toString(), pool, 1, System.err)) {
+            reader.start();
+            final TransactionRequest first = reader.take();
+            final TransactionRequest second = reader.take();
+            assertNotSame(first, second);
+            assertEquals(2, second.getWarehouseId());
+
+            pool.release(first);
+            assertSame(first, pool.acquire(TransactionType.DELIVERY));
+            assertNotSame(first, pool.acquire(TransactionType.DELIVERY));
+        }
+    }
+
+    @Test
+    public void testReadCompiledFile() throws Exception {
+        final Path file = write("N,1267,8,1,2\n68195,8,5\n26567,1,10\nP,8,1,1267,122.34\nT\nD,3,7\n");
+        final Path compiledFile = directory.resolve("0.bin");
+        new XactFileCompiler(System.out, System.err).compile(file.toString(), null);
+
+        try (XactFileReader reader = new XactFileReader(compiledFile.toString(), new RequestPool(4), 2,
+                System.err)) {
+            reader.start();
+
+            final NewOrderRequest newOrder = (NewOrderRequest) reader.take();
+            assertEquals(1267, newOrder.getCustomerId());
+            assertEquals(2, newOrder.getNumItems());
+            assertEquals(68195, newOrder.getItemIds()[0]);
+            assertEquals(10, newOrder.getQuantities()[1]);
+
+            final PaymentRequest payment = (PaymentRequest) reader.take();
+            assertEquals(Double.parseDouble("122.34"), payment.getPaymentAmount());
+
+            assertEquals(TransactionType.TOP_BALANCE, reader.take().getType());
+            assertEquals(7, ((DeliveryRequest) reader.take()).getCarrierId());
+            assertNull(reader.take());
+        }
+    }
+
+    @Test
+    public void testMalformedFile() throws Exception {
+        final Path file = write("P,8,1\n");
+
+        try (XactFileReader reader = new XactFileReader(file.toString(), new RequestPool(1), 1, System.err)) {
+            reader.start();
+            assertThrows(IOException.class, reader::take);
+        }
+    }
+
+    private Path write(String content) throws IOException {
+        final Path file = directory.resolve("0.txt");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
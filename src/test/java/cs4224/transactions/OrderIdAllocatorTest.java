@@ -0,0 +1,34 @@
+package cs4224.transactions;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OrderIdAllocatorTest {
+
+    @Test
+    public void testBlockIsPublishedOnceEveryIdIs() {
+        final OrderIdAllocator.Block block = new OrderIdAllocator.Block(3001, 3004);
+
+        assertFalse(block.publish(3002, 3003));
+        assertFalse(block.publish(3001, 3002));
+        // Publishing an id again does not publish the block.
+        assertFalse(block.publish(3002, 3003));
+        assertFalse(block.isPublished());
+        assertTrue(block.publish(3003, 3004));
+        assertTrue(block.isPublished());
+        assertFalse(block.publish(3003, 3004));
+    }
+
+    @Test
+    public void testUnusedIdsArePublishedAtOnce() {
+        final OrderIdAllocator.Block block = new OrderIdAllocator.Block(11, 21);
+
+        assertFalse(block.publish(11, 12));
+        assertFalse(block.publish(12, 13));
+        assertTrue(block.publish(13, 21));
+        assertFalse(block.contains(21));
+        assertTrue(block.contains(11));
+    }
+}
@@ -1,6 +1,7 @@
 package cs4224.transactions;
 
 import com.datastax.oss.driver.api.core.CqlSession;
+import cs4224.cache.ReferenceData;
 import cs4224.dao.CustomerDao;
 import cs4224.dao.DistrictDao;
 import cs4224.dao.WarehouseDao;
@@ -8,13 +9,15 @@ import cs4224.extensions.InitializationExtension;
 import cs4224.mapper.CustomerMapperBuilder;
 import cs4224.mapper.DistrictMapperBuilder;
 import cs4224.mapper.WarehouseMapperBuilder;
+import cs4224.output.PrintStreamSink;
+import cs4224.requests.PaymentRequest;
+import cs4224.utils.ConditionalUpdater;
+import cs4224.utils.StatementMetrics;
 import cs4224.utils.Utils;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
-import java.util.concurrent.ExecutorService;
-
 import static cs4224.utils.Constants.*;
 
 @ExtendWith({InitializationExtension.class})
@@ -31,11 +34,15 @@ public class PaymentTransactionTest {
         final WarehouseDao warehouseDao = new WarehouseMapperBuilder(session).build().dao(WAREHOUSE_TABLE);
         final DistrictDao districtDao = new DistrictMapperBuilder(session).build().dao(DISTRICT_TABLE);;
         final CustomerDao customerDao = new CustomerMapperBuilder(session).build().dao(CUSTOMER_TABLE);
-        final ExecutorService executorService = InitializationExtension.executorService;
 
-        PaymentTransaction transaction = new PaymentTransaction(session, executorService, warehouseDao, districtDao,
-                customerDao);
-        transaction.execute(new String[0], new String[]{"P","8","1","1267","122.34"});
+        final StatementMetrics statementMetrics = new StatementMetrics();
+        final ConditionalUpdater conditionalUpdater = new ConditionalUpdater(session, statementMetrics,
+                MAX_CAS_ATTEMPTS, CAS_BASE_BACKOFF_MILLIS, CAS_MAX_BACKOFF_MILLIS);
+
+        PaymentTransaction transaction = new PaymentTransaction(session, warehouseDao, districtDao,
+                customerDao, ReferenceData.load(warehouseDao, districtDao), conditionalUpdater,
+                PAYMENT_COMBINE_WINDOW_MICROS);
+        transaction.execute(new PaymentRequest(8, 1, 1267, 122.34), new PrintStreamSink(System.out));
     }
 }
 
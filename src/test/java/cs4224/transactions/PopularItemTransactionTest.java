@@ -1,9 +1,14 @@
 package cs4224.transactions;
 
 import com.datastax.oss.driver.api.core.CqlSession;
+import cs4224.cache.ItemCatalog;
 import cs4224.dao.*;
 import cs4224.extensions.InitializationExtension;
 import cs4224.mapper.*;
+import cs4224.output.PrintStreamSink;
+import cs4224.requests.PopularItemRequest;
+import cs4224.utils.ConditionalUpdater;
+import cs4224.utils.StatementMetrics;
 import cs4224.utils.Utils;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -22,15 +27,17 @@ public class PopularItemTransactionTest {
     @Test
     public void testExecutePopularItemTransaction() {
         final CqlSession session = InitializationExtension.session;
-        final DistrictDao districtDao = new DistrictMapperBuilder(session).build().dao(DISTRICT_TABLE);
+        final OrderIdAllocator orderIdAllocator = new OrderIdAllocator(session,
+                new ConditionalUpdater(session, new StatementMetrics(), MAX_CAS_ATTEMPTS, CAS_BASE_BACKOFF_MILLIS,
+                        CAS_MAX_BACKOFF_MILLIS), OrderIdAllocator.DEFAULT_BLOCK_SIZE);
         final CustomerDao customerDao = new CustomerMapperBuilder(session).build().dao(CUSTOMER_TABLE);
         final OrderDao orderDao = new OrderMapperBuilder(session).build().dao(ORDER_TABLE);
         final OrderLineDao orderLineDao = new OrderLineMapperBuilder(session).build().dao(ORDER_LINE_TABLE);
         final ItemDao itemDao = new ItemMapperBuilder(session).build().dao(ITEM_TABLE);
 
-        PopularItemTransaction transaction = new PopularItemTransaction(session, districtDao, customerDao, orderDao,
-                orderLineDao, itemDao);
-        transaction.execute(new String[0], new String[]{"I","8","1","27"});
+        PopularItemTransaction transaction = new PopularItemTransaction(session, orderIdAllocator, customerDao, orderDao,
+                orderLineDao, itemDao, ItemCatalog.load(session));
+        transaction.execute(new PopularItemRequest(8, 1, 27), new PrintStreamSink(System.out));
     }
 }
 
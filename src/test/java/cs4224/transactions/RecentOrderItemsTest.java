@@ -0,0 +1,66 @@
+package cs4224.transactions;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class RecentOrderItemsTest {
+
+    @Test
+    public void testRingReturnsDistinctItemsOfOrders() {
+        final RecentOrderItems.Ring ring = new RecentOrderItems.Ring();
+        ring.add(1, items(1, 2));
+        ring.add(2, items(2, 3));
+        ring.add(3, items(4));
+
+        assertEquals(items(1, 2, 3), ring.getItemIds(1, 3, false));
+        assertEquals(items(2, 3, 4), ring.getItemIds(2, 4, false));
+        // Orders below the first one do not exist.
+        assertEquals(items(1, 2, 3, 4), ring.getItemIds(-5, 4, false));
+        assertNull(ring.getItemIds(2, 5, false));
+    }
+
+    @Test
+    public void testRingKeepsNewestOrderOfSlot() {
+        final RecentOrderItems.Ring ring = new RecentOrderItems.Ring();
+        final int newer = 5 + RecentOrderItems.RING_SIZE;
+        ring.add(newer, items(7));
+        ring.add(5, items(6));
+
+        assertEquals(items(7), ring.getItemIds(newer, newer + 1, false));
+        assertNull(ring.getItemIds(5, 6, false));
+        assertNull(ring.getItemIds(5, 6, true));
+    }
+
+    @Test
+    public void testRingSkipsMissingOrdersNewerThanOldestOrder() {
+        final RecentOrderItems.Ring ring = new RecentOrderItems.Ring();
+        ring.add(10, items(1));
+        ring.add(12, items(2));
+        ring.add(13, items(3));
+
+        assertNull(ring.getItemIds(10, 14, false));
+        // Order 11 was never created, and orders 14 and 15 are not created yet.
+        assertEquals(items(1, 2, 3), ring.getItemIds(10, 16, true));
+        // Orders below the oldest one may have been loaded with the data.
+        assertNull(ring.getItemIds(9, 11, true));
+
+        final int lapped = 11 + RecentOrderItems.RING_SIZE;
+        ring.add(lapped, items(4));
+        ring.add(lapped + 2, items(5));
+
+        // Order lapped + 1 has the slot of order 12, which is older.
+        assertEquals(items(4, 5), ring.getItemIds(lapped, lapped + 3, true));
+        // Order 13 was replaced by a newer order.
+        assertNull(ring.getItemIds(12, 14, true));
+    }
+
+    private static Set<Integer> items(Integer... itemIds) {
+        return new HashSet<>(Arrays.asList(itemIds));
+    }
+}
@@ -0,0 +1,68 @@
+package cs4224.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DeltaCombinerTest {
+    private static final long WINDOW_MICROS = TimeUnit.MILLISECONDS.toMicros(50);
+
+    @Test
+    public void testDeltasOfTheSameKeyAreCombined() {
+        final List<String> writes = Collections.synchronizedList(new ArrayList<>());
+        final DeltaCombiner<Integer> combiner = new DeltaCombiner<>(WINDOW_MICROS, (key, delta) -> {
+            writes.add(key + "+" + delta);
+            return CompletableFuture.completedFuture(null);
+        });
+
+        final CompletableFuture<Void> first = combiner.add(1, 10).toCompletableFuture();
+        final CompletableFuture<Void> second = combiner.add(1, 5).toCompletableFuture();
+        final CompletableFuture<Void> other = combiner.add(2, 7).toCompletableFuture();
+        assertFalse(first.isDone());
+        CompletableFuture.allOf(first, second, other).join();
+
+        writes.sort(null);
+        assertEquals(Arrays.asList("1+15", "2+7"), writes);
+        // A delta added after its window is written opens a new window.
+        combiner.add(1, 3).toCompletableFuture().join();
+        assertEquals("1+3", writes.get(2));
+    }
+
+    @Test
+    public void testFailedWriteFailsEveryDeltaOfTheWindow() {
+        final DeltaCombiner<Integer> combiner = new DeltaCombiner<>(WINDOW_MICROS, (key, delta) -> {
+            final CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("write failed"));
+            return failed;
+        });
+
+        final CompletableFuture<Void> first = combiner.add(1, 10).toCompletableFuture();
+        final CompletableFuture<Void> second = combiner.add(1, 5).toCompletableFuture();
+        assertThrows(CompletionException.class, first::join);
+        assertThrows(CompletionException.class, second::join);
+    }
+
+    @Test
+    public void testNoWindowWritesEveryDelta() {
+        final List<Long> writes = new ArrayList<>();
+        final DeltaCombiner<Integer> combiner = new DeltaCombiner<>(0, (key, delta) -> {
+            writes.add(delta);
+            return CompletableFuture.completedFuture(null);
+        });
+
+        assertTrue(combiner.add(1, 10).toCompletableFuture().isDone());
+        assertTrue(combiner.add(1, 5).toCompletableFuture().isDone());
+        assertEquals(Arrays.asList(10L, 5L), writes);
+    }
+}
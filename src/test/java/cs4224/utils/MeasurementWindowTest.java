@@ -0,0 +1,48 @@
+package cs4224.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MeasurementWindowTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testWarmUpEndsAfterTransactionsAndDuration() {
+        final MeasurementWindow window = new MeasurementWindow(10, 5 * SECOND, false, 0);
+        assertFalse(window.isMeasured(10, 6 * SECOND));
+        assertFalse(window.isMeasured(11, 4 * SECOND));
+        assertTrue(window.isMeasured(12, 5 * SECOND));
+        // Once the warm-up is over, every transaction that starts afterwards is measured.
+        assertTrue(window.isMeasured(13, 5 * SECOND));
+        assertEquals(5 * SECOND, window.getMeasuredFrom(20 * SECOND));
+    }
+
+    @Test
+    public void testSteadyStateStartsOnceThroughputIsSteady() {
+        final MeasurementWindow window = new MeasurementWindow(0, 0, true, 0);
+        long transactionId = 0;
+        // The throughput ramps up over the first seconds, then stays at 100 transactions per second.
+        for (int second = 0; second < 20; second++) {
+            final int transactions = second < 3 ? 10 * (second + 1) : 100;
+            for (int i = 0; i < transactions; i++) {
+                final long time = second * SECOND + i * (SECOND / transactions);
+                window.isMeasured(++transactionId, time);
+                window.completed(time);
+            }
+        }
+        assertEquals(8 * SECOND, window.getMeasuredFrom(20 * SECOND));
+        assertTrue(window.isMeasured(transactionId + 1, 20 * SECOND));
+    }
+
+    @Test
+    public void testNoWarmUpMeasuresEverything() {
+        final MeasurementWindow window = new MeasurementWindow(0, 0, false, 0);
+        assertTrue(window.isMeasured(1, 0));
+        assertEquals(0, window.getMeasuredFrom(SECOND));
+    }
+}
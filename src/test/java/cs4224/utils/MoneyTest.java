@@ -0,0 +1,25 @@
+package cs4224.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MoneyTest {
+
+    @Test
+    public void testToCentsRoundsHalfUp() {
+        assertEquals(1234, Money.toCents(new BigDecimal("12.34")));
+        assertEquals(150, Money.toCents(new BigDecimal("1.5")));
+        assertEquals(1235, Money.toCents(new BigDecimal("12.345")));
+        // Doubles are converted from their shortest decimal representation rather than their binary value.
+        assertEquals(12234, Money.toCents(122.34));
+    }
+
+    @Test
+    public void testFromCents() {
+        assertEquals(new BigDecimal("12.34"), Money.fromCents(1234));
+        assertEquals(new BigDecimal("-0.05"), Money.fromCents(-5));
+    }
+}
@@ -0,0 +1,61 @@
+package cs4224.utils;
+
+import cs4224.ResultAggregator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RunResultTest {
+
+    @Test
+    public void testWriteAndReadResult(@TempDir Path directory) throws Exception {
+        final Statistics statistics = new Statistics();
+        for (int i = 1; i <= 100; i++) {
+            statistics.ingestTime("Payment", TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        final File file = directory.resolve("0.json").toFile();
+        RunResult.of("0.txt", 1_000, 11_000, 2, statistics).write(file);
+
+        final RunResult result = RunResult.read(file);
+        assertEquals("0.txt", result.getXactFile());
+        assertEquals(100, result.getNumTransactions());
+        assertEquals(2, result.getNumSkippedTransactions());
+        assertEquals(10.0, result.getThroughput(), 1e-9);
+        assertEquals(100, result.getServiceTimes().get("Payment").getCount());
+        assertEquals(100, result.getServiceTimes().get(RunResult.ALL_TYPES).getCount());
+        assertTrue(result.getResponseTimes().isEmpty());
+        assertEquals(100, result.getStatistics().getServiceTimes().get("Payment").getTotalCount());
+    }
+
+    @Test
+    public void testAggregatePercentilesOverAllResults(@TempDir Path directory) throws Exception {
+        // Each run alone has a 99th percentile of 1ms, while 99% of the transactions of both runs take up to 500ms.
+        final Statistics fast = new Statistics();
+        final Statistics slow = new Statistics();
+        for (int i = 0; i < 100; i++) {
+            fast.ingestTime("Payment", TimeUnit.MILLISECONDS.toNanos(1));
+            slow.ingestTime("Payment", TimeUnit.MILLISECONDS.toNanos(i < 98 ? 500 : 1));
+        }
+        RunResult.of("0.txt", 0, 10_000, 0, fast).write(directory.resolve("0.json").toFile());
+        RunResult.of("1.txt", 5_000, 20_000, 1, slow).write(directory.resolve("1.json").toFile());
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new ResultAggregator().aggregate(directory.toString(), new PrintStream(bytes, true, "UTF-8"));
+        final String report = bytes.toString("UTF-8");
+
+        assertTrue(report.contains("Number of results: 2\n"), report);
+        assertTrue(report.contains("Total Skipped Transactions: 1\n"), report);
+        assertTrue(report.contains("a. Number of executed transactions: 200\n"), report);
+        assertTrue(report.contains("b. Total transaction execution time: 20s\n"), report);
+        assertTrue(report.contains("c. Transaction throughput: 10.00 per second\n"), report);
+        assertTrue(report.contains("g. 99th percentile transaction latency: 500.22ms\n"), report);
+    }
+}
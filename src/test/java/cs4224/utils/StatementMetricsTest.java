@@ -0,0 +1,28 @@
+package cs4224.utils;
+
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class StatementMetricsTest {
+
+    @Test
+    public void testLatencyPercentileNeedsMinSamples() {
+        final StatementMetrics metrics = new StatementMetrics();
+        final SimpleStatement statement = SimpleStatement.newInstance("SELECT * FROM item WHERE I_ID = ?", 1);
+        for (int i = 1; i <= 99; i++) {
+            metrics.onSuccess(statement, TimeUnit.MILLISECONDS.toNanos(i), null, null, "");
+        }
+        assertEquals(-1, metrics.getLatencyPercentileMicros(statement, 95.0, 100));
+
+        // Other requests of the same statement count towards its latencies.
+        metrics.onSuccess(SimpleStatement.newInstance("SELECT * FROM item WHERE I_ID = ?", 2),
+                TimeUnit.MILLISECONDS.toNanos(100), null, null, "");
+        assertEquals(95, TimeUnit.MICROSECONDS.toMillis(metrics.getLatencyPercentileMicros(statement, 95.0, 100)));
+        assertEquals(-1, metrics.getLatencyPercentileMicros(
+                SimpleStatement.newInstance("SELECT * FROM stock"), 95.0, 100));
+    }
+}
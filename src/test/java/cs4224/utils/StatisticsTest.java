@@ -0,0 +1,61 @@
+package cs4224.utils;
+
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StatisticsTest {
+
+    @Test
+    public void testMergeAndEncodeSubMillisecondLatencies() throws Exception {
+        final Statistics first = new Statistics();
+        final Statistics second = new Statistics();
+        for (int i = 0; i < 100; i++) {
+            first.ingestTime("Order Status", TimeUnit.MICROSECONDS.toNanos(420));
+            second.ingestTime("Order Status", TimeUnit.MICROSECONDS.toNanos(650));
+        }
+        second.ingestTime("New Order", TimeUnit.MILLISECONDS.toNanos(25));
+
+        final Statistics merged = new Statistics();
+        merged.merge(first);
+        merged.merge(Statistics.decode(second.encode()));
+
+        final String report = report(merged);
+        assertTrue(report.contains("a. Number of executed transactions: 201\n"), report);
+        assertTrue(report.contains("Order Status\n-Transaction count: 200\n-Minimum transaction latency: 0.42ms\n"
+                + "-Maximum transaction latency: 0.65ms\n"), report);
+        assertTrue(report.contains("New Order\n-Transaction count: 1\n"), report);
+    }
+
+    @Test
+    public void testTakeIntervalOnlyReturnsLatenciesSincePreviousInterval() throws Exception {
+        final Statistics statistics = new Statistics();
+        statistics.ingestTime("Payment", TimeUnit.MILLISECONDS.toNanos(3));
+        statistics.ingestTime("Payment", TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(2, statistics.takeIntervalServiceTimes().get("Payment").getTotalCount());
+
+        statistics.ingestTime("Payment", TimeUnit.MILLISECONDS.toNanos(7));
+        statistics.ingestTime("Delivery", TimeUnit.MILLISECONDS.toNanos(40));
+        final Map<String, Histogram> interval = statistics.takeIntervalServiceTimes();
+        assertEquals(1, interval.get("Payment").getTotalCount());
+        assertEquals(1, interval.get("Delivery").getTotalCount());
+        assertEquals(2, Statistics.combine(interval).getTotalCount());
+        assertTrue(statistics.takeIntervalResponseTimes().isEmpty());
+
+        // Taking intervals does not remove latencies from the statistics of the whole run.
+        assertTrue(report(statistics).contains("a. Number of executed transactions: 4\n"));
+    }
+
+    private static String report(Statistics statistics) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        statistics.computeTimeStatistics(10, new PrintStream(bytes, true, "UTF-8"));
+        return bytes.toString("UTF-8");
+    }
+}